@@ -7,6 +7,12 @@
 # Mantieni entità Room (aggiungi qui tutte le tue entity)
 -keep class com.gianmarco.securenotes.note.Note { *; }
 -keep class com.gianmarco.securenotes.file.SecureFile { *; }
+-keep class com.gianmarco.securenotes.note.NoteFts { *; }
+-keep class com.gianmarco.securenotes.search.TrigramEntry { *; }
+-keep class com.gianmarco.securenotes.note.NoteChunk { *; }
+-keep class com.gianmarco.securenotes.note.NoteRevision { *; }
+-keep class com.gianmarco.securenotes.note.Tag { *; }
+-keep class com.gianmarco.securenotes.note.NoteTag { *; }
 
 # Mantieni i metodi annotati Room (costruttori, DAO, ecc)
 -keepclassmembers class * {
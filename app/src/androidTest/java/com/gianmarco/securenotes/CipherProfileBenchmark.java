@@ -0,0 +1,115 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.gianmarco.securenotes.note.Note;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Carica lo stesso corpus sintetico con ogni {@link CipherProfile} e misura apertura, inserimento,
+ * scansione completa e letture puntuali. I tempi sono riportati nel logcat con il tag
+ * CipherProfileBenchmark; il seed fisso rende le esecuzioni confrontabili.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CipherProfileBenchmark {
+
+    private static final String TAG = "CipherProfileBenchmark";
+    private static final String DB_NAME = "profile_benchmark.db";
+    private static final int NOTES = 5_000;
+    private static final int LOOKUPS = 500;
+    private static final int OPENS = 5;
+    private static final byte[] KEY = PassphraseManager.toRawKey(new byte[32]);
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void measureProfiles() {
+        for (CipherProfile profile : CipherProfile.values()) {
+            measure(profile);
+        }
+    }
+
+    private void measure(CipherProfile profile) {
+        context.deleteDatabase(DB_NAME);
+        Random random = new Random(42);
+        List<Note> corpus = new ArrayList<>(NOTES);
+        for (int i = 0; i < NOTES; i++) {
+            Note note = new Note();
+            note.setTitle("Nota " + i);
+            note.setContent(randomText(random, 80 + random.nextInt(400)));
+            note.setLastModified(i);
+            corpus.add(note);
+        }
+
+        SecureNoteDB db = open(profile);
+        long start = System.nanoTime();
+        long[] ids = db.noteDao().insertAll(corpus);
+        long insert = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int scanned = db.noteDao().getAllNotesSync().size();
+        long scan = System.nanoTime() - start;
+        assertEquals(NOTES, scanned);
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            db.noteDao().getNoteByIdSync(ids[random.nextInt(ids.length)]);
+        }
+        long lookup = (System.nanoTime() - start) / LOOKUPS;
+        db.close();
+
+        long[] opens = new long[OPENS];
+        for (int i = 0; i < OPENS; i++) {
+            start = System.nanoTime();
+            db = open(profile);
+            db.noteDao().getNoteByIdSync(ids[0]);
+            opens[i] = System.nanoTime() - start;
+            db.close();
+        }
+        Arrays.sort(opens);
+
+        Log.i(TAG, String.format("%s: apertura=%.1fms inserimento=%.1fms scansione=%.1fms lettura puntuale=%.3fms",
+                profile, millis(opens[OPENS / 2]), millis(insert), millis(scan), millis(lookup)));
+    }
+
+    private SecureNoteDB open(CipherProfile profile) {
+        return SecureNoteDB.configure(Room.databaseBuilder(context, SecureNoteDB.class, DB_NAME), KEY.clone(), profile)
+                .build();
+    }
+
+    private static String randomText(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            int length = 2 + random.nextInt(9);
+            for (int c = 0; c < length; c++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            sb.append(i % 12 == 11 ? '\n' : ' ');
+        }
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
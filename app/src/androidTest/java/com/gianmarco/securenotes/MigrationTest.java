@@ -0,0 +1,148 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.room.migration.Migration;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.gianmarco.securenotes.note.NoteSearchResult;
+import com.gianmarco.securenotes.search.TrigramEntry;
+
+import net.sqlcipher.database.SupportFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Porta alla versione attuale un database della versione 3, l'ultima pubblicata, con i dati
+ * inseriti come faceva quella versione. Dopo ogni migrazione si controllano gli oggetti creati a
+ * mano (indice full-text, trigger, chiavi di ordinamento); alla fine MigrationTestHelper confronta le
+ * tabelle con lo schema esportato da Room e il database viene aperto con la configurazione dell'app.
+ * Lo schema della versione 3 (schemas/.../3.json) è stato scritto a mano dalle entità di quella versione.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+
+    private static final String DB_NAME = "migration_test.db";
+    private static final int CURRENT_VERSION = 14;
+    private static final byte[] PASSPHRASE = "migrazione".getBytes(StandardCharsets.UTF_8);
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+    // Il database viene aperto più volte: la passphrase non va azzerata dopo il primo uso
+    @Rule
+    public final MigrationTestHelper helper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            SecureNoteDB.class, new ArrayList<>(), new SupportFactory(PASSPHRASE, null, false));
+
+    private interface StepCheck {
+        void verify(SupportSQLiteDatabase db);
+    }
+
+    @Test
+    public void migratesFromVersion3ToCurrent() {
+        context.deleteDatabase(DB_NAME);
+        try (SupportSQLiteDatabase db = helper.createDatabase(DB_NAME, 3)) {
+            db.execSQL("INSERT INTO notes (id, title, content, lastModified) " +
+                    "VALUES (1, 'Èlite', 'appunti sulla migrazione del gabbiano', 1000)");
+            db.execSQL("INSERT INTO secure_files (id, fileId, originalFileName, mimeType, fileSize, uploadDate) " +
+                    "VALUES (1, 'file-1', 'Zeta.pdf', 'application/pdf', 10, 1000)");
+        }
+
+        // Le tabelle dell'indice full-text non sono entità Room: non vanno segnalate come tabelle in più
+        try (SupportSQLiteDatabase db = helper.runMigrationsAndValidate(DB_NAME, CURRENT_VERSION, false, checkedMigrations())) {
+            // I trigger dei tag funzionano sui dati migrati
+            db.execSQL("INSERT INTO tags (id, name) VALUES (1, 'viaggi')");
+            db.execSQL("INSERT INTO note_tags (noteId, tagId, lastModified) VALUES (1, 1, 1000)");
+            assertEquals(1, count(db, "SELECT * FROM tags WHERE id = 1 AND noteCount = 1"));
+            db.execSQL("UPDATE notes SET deletedAt = 2000 WHERE id = 1");
+            assertEquals(1, count(db, "SELECT * FROM tags WHERE id = 1 AND noteCount = 0"));
+            db.execSQL("UPDATE notes SET deletedAt = NULL WHERE id = 1");
+        }
+
+        SecureNoteDB db = SecureNoteDB.configure(Room.databaseBuilder(context, SecureNoteDB.class, DB_NAME),
+                PASSPHRASE.clone()).build();
+        helper.closeWhenFinished(db);
+        List<NoteSearchResult> results = db.noteDao().search("gabbiano*");
+        assertEquals(1, results.size());
+        assertEquals(1, results.get(0).getId());
+    }
+
+    // Le migrazioni dell'app, ciascuna seguita dai controlli sugli oggetti che crea
+    private Migration[] checkedMigrations() {
+        return new Migration[]{
+                step(SecureNoteDB.MIGRATION_3_4, db -> {
+                    assertObjects(db, "table", "notes_fts", "notes_fts_text");
+                    assertObjects(db, "view", "notes_fts_content");
+                    assertEquals(1, count(db, "SELECT rowid FROM notes_fts WHERE notes_fts MATCH 'gabbiano'"));
+                }),
+                step(SecureNoteDB.MIGRATION_4_5, db -> {
+                    assertTrue(count(db, "SELECT * FROM trigrams WHERE kind = " + TrigramEntry.KIND_NOTE + " AND ownerId = 1") > 0);
+                    assertTrue(count(db, "SELECT * FROM trigrams WHERE kind = " + TrigramEntry.KIND_FILE + " AND ownerId = 1") > 0);
+                }),
+                step(SecureNoteDB.MIGRATION_5_6, db ->
+                        assertEquals("appunti sulla migrazione del gabbiano", string(db, "SELECT preview FROM notes WHERE id = 1"))),
+                step(SecureNoteDB.MIGRATION_6_7, db ->
+                        assertObjects(db, "index", "index_notes_lastModified_id", "index_secure_files_fileId")),
+                step(SecureNoteDB.MIGRATION_7_8, db -> {
+                }),
+                step(SecureNoteDB.MIGRATION_8_9, db -> assertObjects(db, "table", "note_chunks")),
+                step(SecureNoteDB.MIGRATION_9_10, db ->
+                        assertObjects(db, "index", "index_note_revisions_noteId_createdAt", "index_note_revisions_noteId_id")),
+                step(SecureNoteDB.MIGRATION_10_11, db ->
+                        assertObjects(db, "trigger", "note_tags_ai", "note_tags_ad", "notes_tags_ai", "notes_tags_au",
+                                "notes_tags_ad", "tags_ad")),
+                step(SecureNoteDB.MIGRATION_11_12, db -> {
+                    // Minuscole calcolate in Java: lower() di SQLite lascerebbe "È"
+                    assertEquals("èlite", string(db, "SELECT titleKey FROM notes WHERE id = 1"));
+                    assertEquals("zeta.pdf", string(db, "SELECT nameKey FROM secure_files WHERE id = 1"));
+                }),
+                step(SecureNoteDB.MIGRATION_12_13, db ->
+                        assertObjects(db, "trigger", "notes_tags_ad", "notes_tags_trash", "notes_tags_restore")),
+                step(SecureNoteDB.MIGRATION_13_14, db ->
+                        assertObjects(db, "trigger", "notes_attachments_ad", "secure_files_attachments_ad")),
+        };
+    }
+
+    private static Migration step(Migration migration, StepCheck check) {
+        return new Migration(migration.startVersion, migration.endVersion) {
+            @Override
+            public void migrate(@NonNull SupportSQLiteDatabase db) {
+                migration.migrate(db);
+                check.verify(db);
+            }
+        };
+    }
+
+    private static void assertObjects(SupportSQLiteDatabase db, String type, String... names) {
+        for (String name : names) {
+            assertEquals(type + " " + name, 1,
+                    count(db, "SELECT * FROM sqlite_master WHERE type = '" + type + "' AND name = '" + name + "'"));
+        }
+    }
+
+    private static int count(SupportSQLiteDatabase db, String query) {
+        try (Cursor cursor = db.query(query)) {
+            return cursor.getCount();
+        }
+    }
+
+    private static String string(SupportSQLiteDatabase db, String query) {
+        try (Cursor cursor = db.query(query)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+}
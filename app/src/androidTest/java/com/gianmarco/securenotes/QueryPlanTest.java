@@ -0,0 +1,264 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.paging.PagingSource;
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.gianmarco.securenotes.file.FileListQuery;
+import com.gianmarco.securenotes.file.NoteAttachmentDao;
+import com.gianmarco.securenotes.file.SecureFileDao;
+import com.gianmarco.securenotes.note.Note;
+import com.gianmarco.securenotes.note.NoteChunkDao;
+import com.gianmarco.securenotes.note.NoteDao;
+import com.gianmarco.securenotes.note.NoteListQuery;
+import com.gianmarco.securenotes.note.NoteRevisionDao;
+import com.gianmarco.securenotes.note.TagDao;
+import com.gianmarco.securenotes.search.TrigramDao;
+
+import net.sqlcipher.database.SupportFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import kotlin.coroutines.EmptyCoroutineContext;
+import kotlinx.coroutines.BuildersKt;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Esegue ogni metodo dei DAO, cattura le query generate da Room e ne verifica il piano
+ * con EXPLAIN QUERY PLAN: una scansione completa di tabella o un ordinamento in un
+ * B-tree temporaneo fanno fallire il test. Un nuovo DAO va aggiunto a {@link #daos()}; le
+ * query costruite a runtime ({@code @RawQuery}) sono coperte da test dedicati.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+    // Query che possono leggere tutta la tabella: la compressione una tantum delle note esistenti,
+    // eseguita in background a blocchi
+    private static final List<String> FULL_SCAN_ALLOWED = Collections.singletonList(
+            "WHERE contentBlob IS NULL AND length(content) >");
+
+    private SecureNoteDB db;
+    private final List<CapturedQuery> captured = Collections.synchronizedList(new ArrayList<>());
+
+    private static class CapturedQuery {
+        final String sql;
+        final Object[] args;
+
+        CapturedQuery(String sql, List<Object> args) {
+            this.sql = sql;
+            this.args = args.toArray();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(context, SecureNoteDB.class)
+                .openHelperFactory(new SupportFactory("query-plan".getBytes(StandardCharsets.UTF_8)))
+                .setQueryCallback((sql, args) -> captured.add(new CapturedQuery(sql, args)), Runnable::run)
+                .build();
+        for (int i = 0; i < 20; i++) {
+            Note note = new Note();
+            note.setTitle("Nota " + i);
+            note.setContent("Contenuto della nota " + i);
+            note.setLastModified(i);
+            db.noteDao().insert(note);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private List<Object> daos() {
+        return Arrays.asList(db.noteDao(), db.secureFileDao(), db.trigramDao(), db.noteChunkDao(),
+                db.noteRevisionDao(), db.tagDao(), db.noteAttachmentDao());
+    }
+
+    private List<Class<?>> daoInterfaces() {
+        return Arrays.asList(NoteDao.class, SecureFileDao.class, TrigramDao.class, NoteChunkDao.class,
+                NoteRevisionDao.class, TagDao.class, NoteAttachmentDao.class);
+    }
+
+    @Test
+    public void everyDaoQueryUsesAnIndex() throws Exception {
+        List<Object> daos = daos();
+        List<Class<?>> interfaces = daoInterfaces();
+        for (int i = 0; i < daos.size(); i++) {
+            for (Method method : interfaces.get(i).getMethods()) {
+                if (!takesRawQuery(method)) {
+                    invoke(daos.get(i), method);
+                }
+            }
+        }
+        assertCapturedQueriesUseIndexes();
+    }
+
+    @Test
+    public void everyNoteListQueryUsesAnIndex() throws Exception {
+        Long[][] ranges = {{null, null}, {5L, 15L}};
+        for (ListSort sort : ListSort.values()) {
+            for (Long tagId : new Long[]{null, 1L}) {
+                for (Long[] range : ranges) {
+                    NoteListQuery query = new NoteListQuery(sort, tagId, range[0], range[1]);
+                    loadFirstPage(db.noteDao().getNoteSummariesFiltered(query.build()));
+                }
+            }
+        }
+        assertCapturedQueriesUseIndexes();
+    }
+
+    @Test
+    public void everyFileListQueryUsesAnIndex() throws Exception {
+        Long[][] ranges = {{null, null}, {5L, 15L}};
+        for (ListSort sort : ListSort.values()) {
+            for (String mimeFamily : new String[]{null, "image/"}) {
+                for (Long[] range : ranges) {
+                    FileListQuery query = new FileListQuery(sort, mimeFamily, range[0], range[1]);
+                    awaitLiveData(db.secureFileDao().getFiles(query.build()));
+                }
+            }
+        }
+        assertCapturedQueriesUseIndexes();
+    }
+
+    private void assertCapturedQueriesUseIndexes() {
+        List<String> failures = new ArrayList<>();
+        int checked = 0;
+        for (CapturedQuery query : new ArrayList<>(captured)) {
+            if (!isDaoStatement(query.sql)) {
+                continue;
+            }
+            checked++;
+            for (String detail : explain(query)) {
+                if ((isFullTableScan(detail) && !isAllowed(FULL_SCAN_ALLOWED, query.sql))
+                        || detail.contains("TEMP B-TREE")) {
+                    failures.add(detail + "  <-  " + query.sql);
+                }
+            }
+        }
+        assertTrue("Nessuna query catturata", checked > 0);
+        if (!failures.isEmpty()) {
+            fail("Piani di esecuzione non indicizzati:\n" + String.join("\n", failures));
+        }
+    }
+
+    private static boolean takesRawQuery(Method method) {
+        for (Class<?> type : method.getParameterTypes()) {
+            if (SupportSQLiteQuery.class.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void invoke(Object dao, Method method) throws Exception {
+        Class<?>[] types = method.getParameterTypes();
+        Type[] genericTypes = method.getGenericParameterTypes();
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            args[i] = argumentFor(types[i], genericTypes[i]);
+        }
+        Object result = method.invoke(dao, args);
+        if (result instanceof LiveData) {
+            awaitLiveData((LiveData<?>) result);
+        } else if (result instanceof PagingSource) {
+            loadFirstPage((PagingSource<?, ?>) result);
+        }
+    }
+
+    private Object argumentFor(Class<?> type, Type genericType) throws Exception {
+        if (type == long.class || type == Long.class) {
+            return 1L;
+        } else if (type == int.class || type == Integer.class) {
+            return 1;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return false;
+        } else if (type == String.class) {
+            return "nota";
+        } else if (type == byte[].class) {
+            return new byte[]{0};
+        } else if (List.class.isAssignableFrom(type)) {
+            Type element = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            Class<?> elementClass = (Class<?>) element;
+            return Arrays.asList(argumentFor(elementClass, elementClass), argumentFor(elementClass, elementClass));
+        }
+        return type.getDeclaredConstructor().newInstance();
+    }
+
+    private void awaitLiveData(LiveData<?> liveData) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        Observer<Object> observer = value -> latch.countDown();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> ((LiveData<Object>) liveData).observeForever(observer));
+        latch.await(5, TimeUnit.SECONDS);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> ((LiveData<Object>) liveData).removeObserver(observer));
+    }
+
+    private void loadFirstPage(PagingSource<?, ?> source) throws InterruptedException {
+        PagingSource<Object, ?> pagingSource = (PagingSource<Object, ?>) source;
+        PagingSource.LoadParams<Object> params = new PagingSource.LoadParams.Refresh<>(null, 20, false);
+        BuildersKt.runBlocking(EmptyCoroutineContext.INSTANCE, (scope, continuation) -> pagingSource.load(params, continuation));
+    }
+
+    // Esclude le query interne di Room (invalidazione, schema, transazioni)
+    private boolean isDaoStatement(String sql) {
+        String normalized = sql.trim().toUpperCase();
+        boolean dml = normalized.startsWith("SELECT") || normalized.startsWith("UPDATE") || normalized.startsWith("DELETE");
+        return dml && !sql.contains("room_table_modification_log") && !sql.contains("room_master_table")
+                && !sql.contains("sqlite_master");
+    }
+
+    private List<String> explain(CapturedQuery query) {
+        List<String> details = new ArrayList<>();
+        try (Cursor cursor = db.query(new SimpleSQLiteQuery("EXPLAIN QUERY PLAN " + query.sql, query.args))) {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(detailIndex));
+            }
+        }
+        return details;
+    }
+
+    // "SCAN notes" o "SCAN TABLE notes" senza indice; le scansioni ordinate su un indice,
+    // le tabelle virtuali FTS e le subquery sono ammesse
+    private static boolean isFullTableScan(String detail) {
+        return detail.startsWith("SCAN ")
+                && !detail.contains(" INDEX")
+                && !detail.contains("SUBQUERY")
+                && !detail.contains("(subquery");
+    }
+
+    private static boolean isAllowed(List<String> allowList, String sql) {
+        for (String allowed : allowList) {
+            if (sql.contains(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,85 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.gianmarco.securenotes.note.Note;
+
+import net.sqlcipher.database.SupportFactory;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Confronta il tempo di apertura a freddo del database con la passphrase (derivata con PBKDF2
+ * ad ogni apertura) e con la chiave grezza x'...'. I tempi sono riportati nel logcat con il tag
+ * RawKeyOpenBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RawKeyOpenBenchmark {
+
+    private static final String TAG = "RawKeyOpenBenchmark";
+    private static final String PASSPHRASE_DB = "open_passphrase.db";
+    private static final String RAW_KEY_DB = "open_raw_key.db";
+    private static final int OPENS = 10;
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(PASSPHRASE_DB);
+        context.deleteDatabase(RAW_KEY_DB);
+    }
+
+    @Test
+    public void rawKeySkipsKeyDerivation() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+
+        long passphrase = medianOpen(PASSPHRASE_DB, secret);
+        long rawKey = medianOpen(RAW_KEY_DB, PassphraseManager.toRawKey(secret));
+
+        Log.i(TAG, String.format("apertura con passphrase: %.1f ms, con chiave grezza: %.1f ms",
+                passphrase / 1_000_000.0, rawKey / 1_000_000.0));
+        assertTrue("La chiave grezza non accorcia l'apertura", rawKey < passphrase);
+    }
+
+    // Crea il database, poi misura apertura + prima lettura come avviene dopo lo sblocco
+    private long medianOpen(String name, byte[] key) {
+        context.deleteDatabase(name);
+        SecureNoteDB db = open(name, key);
+        Note note = new Note();
+        note.setTitle("Nota");
+        note.setContent("Contenuto");
+        db.noteDao().insert(note);
+        db.close();
+
+        long[] timings = new long[OPENS];
+        for (int i = 0; i < OPENS; i++) {
+            long start = System.nanoTime();
+            db = open(name, key);
+            db.noteDao().getAllNotesSync();
+            timings[i] = System.nanoTime() - start;
+            db.close();
+        }
+        Arrays.sort(timings);
+        return timings[OPENS / 2];
+    }
+
+    private SecureNoteDB open(String name, byte[] key) {
+        // SupportFactory azzera la chiave dopo l'uso: ad ogni apertura ne serve una copia
+        return Room.databaseBuilder(context, SecureNoteDB.class, name)
+                .openHelperFactory(new SupportFactory(key.clone()))
+                .build();
+    }
+}
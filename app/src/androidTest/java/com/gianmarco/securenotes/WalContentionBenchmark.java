@@ -0,0 +1,137 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.gianmarco.securenotes.note.Note;
+
+import net.sqlcipher.database.SupportFactory;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Misura la latenza delle letture della dashboard mentre un altro thread importa migliaia di note,
+ * con la configurazione dell'app (WAL) e con il journal classico.
+ * Con una sola connessione SQLCipher letture e scritture restano serializzate in entrambi i casi:
+ * i percentili servono da confronto e non c'è un ordinamento atteso da verificare.
+ * I tempi sono riportati nel logcat con il tag WalContentionBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WalContentionBenchmark {
+
+    private static final String TAG = "WalContentionBenchmark";
+    private static final String DB_NAME = "wal_benchmark.db";
+    private static final int NOTES = 5_000;
+    private static final int NOTES_PER_TRANSACTION = 250;
+    private static final String DASHBOARD_QUERY =
+            "SELECT id, title, preview, lastModified FROM notes ORDER BY lastModified DESC, id DESC LIMIT 30";
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    private SecureNoteDB db;
+
+    @After
+    public void tearDown() {
+        if (db != null) {
+            db.close();
+        }
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void readLatencyDuringWrites() throws Exception {
+        long[] rollback = measure(false);
+        long[] wal = measure(true);
+
+        Log.i(TAG, String.format("journal classico: letture=%d p50=%.2fms p99=%.2fms",
+                rollback.length, millis(percentile(rollback, 50)), millis(percentile(rollback, 99))));
+        Log.i(TAG, String.format("WAL: letture=%d p50=%.2fms p99=%.2fms",
+                wal.length, millis(percentile(wal, 50)), millis(percentile(wal, 99))));
+
+        assertTrue("Nessuna lettura durante l'importazione", rollback.length > 0 && wal.length > 0);
+    }
+
+    // Importa NOTES note in più transazioni e intanto ripete la query della dashboard
+    private long[] measure(boolean wal) throws Exception {
+        context.deleteDatabase(DB_NAME);
+        byte[] passphrase = "benchmark".getBytes(StandardCharsets.UTF_8);
+        RoomDatabase.Builder<SecureNoteDB> builder = Room.databaseBuilder(context, SecureNoteDB.class, DB_NAME);
+        if (wal) {
+            SecureNoteDB.configure(builder, passphrase);
+        } else {
+            builder.openHelperFactory(new SupportFactory(passphrase))
+                    .setJournalMode(RoomDatabase.JournalMode.TRUNCATE);
+        }
+        db = builder.build();
+        db.noteDao().getAllNotesSync();
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            try {
+                for (int written = 0; written < NOTES; written += NOTES_PER_TRANSACTION) {
+                    List<Note> batch = new ArrayList<>(NOTES_PER_TRANSACTION);
+                    for (int i = 0; i < NOTES_PER_TRANSACTION; i++) {
+                        Note note = new Note();
+                        note.setTitle("Nota importata " + (written + i));
+                        note.setContent("Contenuto di prova della nota numero " + (written + i));
+                        note.setLastModified(written + i);
+                        batch.add(note);
+                    }
+                    db.noteDao().insertAll(batch);
+                }
+            } finally {
+                writing.set(false);
+            }
+        });
+
+        List<Long> timings = new ArrayList<>();
+        writer.start();
+        while (writing.get()) {
+            long start = System.nanoTime();
+            try (Cursor cursor = db.query(new SimpleSQLiteQuery(DASHBOARD_QUERY))) {
+                while (cursor.moveToNext()) {
+                    cursor.getString(1);
+                }
+            }
+            timings.add(System.nanoTime() - start);
+        }
+        writer.join();
+
+        db.close();
+        db = null;
+
+        long[] result = new long[timings.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = timings.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
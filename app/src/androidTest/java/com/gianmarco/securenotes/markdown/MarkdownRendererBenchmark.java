@@ -0,0 +1,77 @@
+package com.gianmarco.securenotes.markdown;
+
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifica che dopo una modifica venga riconvertito solo il blocco cambiato e misura
+ * il rendering di un documento lungo con la cache fredda e calda. I tempi sono riportati
+ * nel logcat con il tag MarkdownRendererBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MarkdownRendererBenchmark {
+
+    private static final String TAG = "MarkdownRendererBenchmark";
+    private static final int PARAGRAPHS = 2_000;
+
+    private final MarkdownRenderer renderer = MarkdownRenderer.getInstance();
+
+    @Test
+    public void splitKeepsCodeFencesTogether() {
+        String text = "# Titolo\n\nparagrafo\nseconda riga\n\n```\ncodice\n\nancora\n```\n- punto";
+        List<String> blocks = MarkdownRenderer.splitBlocks(text);
+        assertEquals(Arrays.asList("# Titolo", "paragrafo\nseconda riga", "```\ncodice\n\nancora\n```", "- punto"), blocks);
+    }
+
+    @Test
+    public void onlyChangedBlocksAreRendered() {
+        String first = "Primo **paragrafo** " + System.nanoTime();
+        String second = "Secondo *paragrafo* " + System.nanoTime();
+        CharSequence firstRendered = renderer.renderBlock(first);
+        CharSequence secondRendered = renderer.renderBlock(second);
+
+        assertSame(firstRendered, renderer.renderBlock(first));
+        assertNotSame(secondRendered, renderer.renderBlock(second + " modificato"));
+
+        Spanned spanned = (Spanned) firstRendered;
+        assertEquals(1, spanned.getSpans(0, spanned.length(), StyleSpan.class).length);
+        assertTrue(spanned.toString().startsWith("Primo paragrafo "));
+    }
+
+    @Test
+    public void longDocumentWarmCache() {
+        StringBuilder builder = new StringBuilder();
+        long seed = System.nanoTime();
+        for (int i = 0; i < PARAGRAPHS; i++) {
+            builder.append("## Sezione ").append(i).append(' ').append(seed).append("\n\n")
+                    .append("Testo con **grassetto**, `codice` e un [link](https://example.com) numero ")
+                    .append(i).append("\n- voce uno\n- voce due\n\n");
+        }
+        String text = builder.toString();
+
+        long start = System.nanoTime();
+        renderer.render(text);
+        long cold = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        renderer.render(text);
+        long warm = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("cache fredda: %.1f ms, cache calda: %.1f ms", cold / 1_000_000.0, warm / 1_000_000.0));
+        assertTrue("La cache non accelera il rendering", warm < cold);
+    }
+}
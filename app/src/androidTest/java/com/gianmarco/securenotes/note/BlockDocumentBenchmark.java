@@ -0,0 +1,123 @@
+package com.gianmarco.securenotes.note;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Misura le operazioni dell'editor a blocchi su una nota di 10 MB. La divisione e la ricomposizione
+ * avvengono fuori dal thread principale; modifica di un blocco, unione, nuova divisione e snapshot
+ * devono invece stare ampiamente dentro un frame (16 ms). I tempi sono riportati nel logcat con il
+ * tag BlockDocumentBenchmark.
+ * Sono misurate solo le operazioni sul documento: il tempo di frame reale durante lo scorrimento e
+ * la digitazione (misura e disegno degli EditText) non è verificato qui, quindi i 60 fps restano da
+ * confermare sul dispositivo, ad esempio con adb shell dumpsys gfxinfo.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BlockDocumentBenchmark {
+
+    private static final String TAG = "BlockDocumentBenchmark";
+    private static final int NOTE_CHARS = 10 * 1024 * 1024;
+    private static final long FRAME_NS = 16_000_000;
+
+    @Test
+    public void tenMegabyteNote() {
+        String text = buildText();
+
+        long start = System.nanoTime();
+        BlockDocument document = BlockDocument.split(text);
+        long split = System.nanoTime() - start;
+        assertEquals(text, document.getText());
+        assertEquals(text.length(), document.length());
+
+        int middle = document.size() / 2;
+        start = System.nanoTime();
+        document.setBlock(middle, document.getBlock(middle) + " modificato");
+        List<String> snapshot = document.snapshot();
+        long edit = System.nanoTime() - start;
+
+        // Cancella all'inizio di un blocco e poi incolla tanto testo da doverlo dividere di nuovo;
+        // un primo giro su un documento piccolo esclude dalla misura il caricamento del codice
+        restructure(BlockDocument.split(text.substring(0, 2 * BlockDocument.SPLIT_BLOCK_CHARS)), 1, text);
+        String expected = document.getText();
+        start = System.nanoTime();
+        int offset = document.mergeWithPrevious(middle);
+        int parts = restructure(document, middle, text);
+        long restructure = System.nanoTime() - start;
+        assertTrue(parts > 1);
+        assertEquals(expected.length() - 1 + 2 + 4 * BlockDocument.SPLIT_BLOCK_CHARS, document.length());
+        assertEquals(document.length(), document.getText().length());
+        assertTrue(offset > 0);
+
+        start = System.nanoTime();
+        String joined = BlockDocument.join(snapshot);
+        long join = System.nanoTime() - start;
+        assertEquals(expected.length(), joined.length());
+
+        Log.i(TAG, String.format("%d blocchi, divisione: %.1f ms, modifica+snapshot: %.2f ms, "
+                        + "unione+nuova divisione: %.2f ms, ricomposizione: %.1f ms",
+                document.size(), split / 1_000_000.0, edit / 1_000_000.0, restructure / 1_000_000.0,
+                join / 1_000_000.0));
+        assertTrue("Modifica e snapshot superano un frame", edit < FRAME_NS);
+        assertTrue("Unione e nuova divisione superano un frame", restructure < FRAME_NS);
+    }
+
+    @Test
+    public void mergeAndSplitKeepTheText() {
+        BlockDocument document = BlockDocument.split("primo\n\nsecondo\n\nterzo");
+        assertEquals(3, document.size());
+        // Cancellare all'inizio di "terzo" toglie il '\n' che lo separa dal blocco precedente
+        assertEquals("secondo\n".length(), document.mergeWithPrevious(2));
+        assertEquals("primo\n\nsecondo\nterzo", document.getText());
+        assertEquals(document.getText().length(), document.length());
+
+        StringBuilder paste = new StringBuilder();
+        while (paste.length() <= BlockDocument.SPLIT_BLOCK_CHARS) {
+            paste.append("riga incollata\n\n");
+        }
+        document.setBlock(0, document.getBlock(0) + paste);
+        String expected = document.getText();
+        assertTrue(document.splitBlock(0) > 1);
+        assertEquals(expected, document.getText());
+        assertEquals(expected.length(), document.length());
+        assertEquals(1, document.splitBlock(document.size() - 1));
+    }
+
+    @Test
+    public void joinRestoresSeparators() {
+        String[] texts = {"", "a", "a\n", "a\n\nb", "a\n\n\n", "\n\n", "riga\nriga\n\nparagrafo\n"};
+        for (String text : texts) {
+            assertEquals(text, BlockDocument.split(text).getText());
+        }
+    }
+
+    // Incolla in fondo al blocco precedente a index un testo che va diviso di nuovo in paragrafi
+    private static int restructure(BlockDocument document, int index, String text) {
+        String pasted = document.getBlock(index - 1) + "\n\n" + text.substring(0, 4 * BlockDocument.SPLIT_BLOCK_CHARS);
+        document.setBlock(index - 1, pasted);
+        return document.splitBlock(index - 1);
+    }
+
+    // Log con righe di lunghezza variabile e qualche paragrafo separato da righe vuote
+    private static String buildText() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder(NOTE_CHARS + 200);
+        while (builder.length() < NOTE_CHARS) {
+            int words = 3 + random.nextInt(20);
+            for (int i = 0; i < words; i++) {
+                builder.append("parola").append(random.nextInt(1000)).append(' ');
+            }
+            builder.append(random.nextInt(8) == 0 ? "\n\n" : "\n");
+        }
+        return builder.toString();
+    }
+}
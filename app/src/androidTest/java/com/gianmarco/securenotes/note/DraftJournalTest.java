@@ -0,0 +1,149 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Rilettura del diario dopo un crash: record finale troncato e diario scritto per un'altra
+ * versione della nota
+ */
+@RunWith(AndroidJUnit4.class)
+public class DraftJournalTest {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[32], "AES");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayRestoresTitleTagsAndContent() throws Exception {
+        File file = folder.newFile();
+        DraftJournal journal = new DraftJournal(file, KEY, "Spesa", "", "latte");
+        journal.append("Spesa", "casa", "latte uova");
+
+        DraftJournal.Draft draft = new DraftJournal(file, KEY, "Spesa", "", "latte").replay();
+        assertNotNull(draft);
+        assertEquals("Spesa", draft.getTitle());
+        assertEquals("casa", draft.getTags());
+        assertEquals("latte uova", draft.getContent());
+    }
+
+    @Test
+    public void tornTailKeepsEveryWholeRecord() throws Exception {
+        File file = folder.newFile();
+        DraftJournal journal = new DraftJournal(file, KEY, "Spesa", "", "latte");
+        journal.append("Spesa", "", "latte uova");
+        journal.append("Spesa", "", "latte uova pane");
+        long whole = file.length();
+        journal.append("Spesa", "", "latte uova pane burro");
+        // Crash a metà della scrittura dell'ultimo record
+        truncate(file, whole + (file.length() - whole) / 2);
+
+        DraftJournal reopened = new DraftJournal(file, KEY, "Spesa", "", "latte");
+        DraftJournal.Draft draft = reopened.replay();
+        assertNotNull(draft);
+        assertEquals("latte uova pane", draft.getContent());
+
+        // Il diario riparato accetta nuovi record e li rilegge dopo quelli recuperati
+        reopened.append("Spesa", "", "latte uova pane sale");
+        draft = new DraftJournal(file, KEY, "Spesa", "", "latte").replay();
+        assertNotNull(draft);
+        assertEquals("latte uova pane sale", draft.getContent());
+    }
+
+    @Test
+    public void tornFirstRecordLeavesNoDraft() throws Exception {
+        File file = folder.newFile();
+        new DraftJournal(file, KEY, "Spesa", "", "latte").append("Spesa", "", "latte uova");
+        truncate(file, 10);
+
+        assertNull(new DraftJournal(file, KEY, "Spesa", "", "latte").replay());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void staleBaseIsDiscarded() throws Exception {
+        File file = folder.newFile();
+        new DraftJournal(file, KEY, "Spesa", "", "latte").append("Spesa", "", "latte uova");
+
+        // La nota è stata salvata altrove dopo l'ultimo record: il checksum del testo di partenza non corrisponde
+        assertNull(new DraftJournal(file, KEY, "Spesa", "", "latte e caffè").replay());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void staleTagsAreDiscarded() throws Exception {
+        File file = folder.newFile();
+        new DraftJournal(file, KEY, "Spesa", "casa", "latte").append("Spesa", "casa", "latte uova");
+
+        assertNull(new DraftJournal(file, KEY, "Spesa", "casa, lavoro", "latte").replay());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void blockEditsReplayToTheDocumentText() throws Exception {
+        File file = folder.newFile();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("paragrafo ").append(i).append("\n\n");
+        }
+        BlockDocument document = BlockDocument.split(text.toString());
+        DraftJournal journal = new DraftJournal(file, KEY, "Libro", "", text.toString());
+
+        document.setBlock(10, document.getBlock(10) + " modificato");
+        journal.appendEdit("Libro", "", document.takeEdit());
+        document.mergeWithPrevious(50);
+        document.setBlock(120, "riscritto");
+        document.mergeWithPrevious(121);
+        // Solo il titolo cambia: il diario registra l'intestazione, non il testo
+        journal.appendEdit("Libro", "", document.takeEdit());
+        journal.appendEdit("Libro lungo", "romanzi", document.takeEdit());
+
+        DraftJournal.Draft draft = new DraftJournal(file, KEY, "Libro", "", text.toString()).replay();
+        assertNotNull(draft);
+        assertEquals("Libro lungo", draft.getTitle());
+        assertEquals("romanzi", draft.getTags());
+        assertEquals(document.getText(), draft.getContent());
+    }
+
+    @Test
+    public void blockEditsAfterCheckpointStartFromTheEditorText() throws Exception {
+        File file = folder.newFile();
+        String text = "  primo\n\nsecondo\n\nterzo\n";
+        BlockDocument document = BlockDocument.split(text);
+        DraftJournal journal = new DraftJournal(file, KEY, "Appunti", "", text);
+        document.setBlock(1, "secondo modificato");
+        journal.appendEdit("Appunti", "", document.takeEdit());
+
+        // Sul database finisce il testo senza spazi ai bordi, l'editor continua dal suo testo
+        String saved = document.getText().trim();
+        journal.checkpoint("Appunti", "", saved, document.getText());
+        document.setBlock(2, "terzo modificato");
+        journal.appendEdit("Appunti", "", document.takeEdit());
+
+        DraftJournal.Draft draft = new DraftJournal(file, KEY, "Appunti", "", saved).replay();
+        assertNotNull(draft);
+        assertEquals(document.getText(), draft.getContent());
+    }
+
+    private static void truncate(File file, long length) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.gianmarco.securenotes.note;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.gianmarco.securenotes.SecureNoteDB;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Salva e poi modifica una nota su un database separato, aperto con la configurazione dell'app
+ * ({@link SecureNoteDB#configure}) e quindi con SQLCipher: il secondo salvataggio deve aggiornare
+ * la stessa riga senza errori.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NoteUpsertTest {
+
+    private static final String DB_NAME = "upsert_test.db";
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    private SecureNoteDB db;
+    private NoteDao dao;
+    private NoteRepository repository;
+
+    @Before
+    public void setUp() {
+        context.deleteDatabase(DB_NAME);
+        db = SecureNoteDB.configure(Room.databaseBuilder(context, SecureNoteDB.class, DB_NAME),
+                "upsert".getBytes(StandardCharsets.UTF_8)).build();
+        dao = db.noteDao();
+        repository = new NoteRepository(context, db);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void editingAnExistingNoteUpdatesTheSameRow() {
+        long noteId = dao.insertOrUpdate(newNote(0, "Lista della spesa", "latte uova"));
+        assertTrue(noteId > 0);
+
+        assertEquals(-1, dao.insertOrUpdate(newNote(noteId, "Lista della spesa", "latte pane")));
+        Note stored = dao.getNoteByIdSync(noteId);
+        assertEquals("latte pane", stored.getContent());
+    }
+
+    @Test
+    public void repositorySaveKeepsIdAndReindexesText() {
+        long noteId = repository.insertOrUpdateSync(newNote(0, "Viaggio", "prenotare upsertalbergo"));
+
+        assertEquals(noteId, repository.insertOrUpdateSync(newNote(noteId, "Viaggio", "prenotare upserttraghetto")));
+        assertEquals("prenotare upserttraghetto", dao.getNoteByIdSync(noteId).getContent());
+        assertTrue(ids(dao.search("upserttraghetto*")).contains(noteId));
+        assertFalse(ids(dao.search("upsertalbergo*")).contains(noteId));
+    }
+
+    @Test
+    public void savingATrashedNoteKeepsItInTheTrash() {
+        long noteId = repository.insertOrUpdateSync(newNote(0, "Bozza", "da eliminare"));
+        long deletedAt = System.currentTimeMillis();
+        dao.setDeletedAt(Collections.singletonList(noteId), deletedAt);
+
+        // L'editor ancora aperto salva una nota con deletedAt null
+        repository.insertOrUpdateSync(newNote(noteId, "Bozza", "da eliminare subito"));
+        Note stored = dao.getNoteByIdSync(noteId);
+        assertEquals("da eliminare subito", stored.getContent());
+        assertEquals(Long.valueOf(deletedAt), stored.getDeletedAt());
+    }
+
+    @Test
+    public void compressedNoteIsReindexedWithItsFullText() {
+        String filler = repeat("riempitivo ", NoteCodec.COMPRESSION_THRESHOLD / 10);
+        long noteId = repository.insertOrUpdateSync(newNote(0, "Diario", filler + "upsertgabbiano"));
+        assertTrue(ids(dao.search("upsertgabbiano*")).contains(noteId));
+
+        repository.insertOrUpdateSync(newNote(noteId, "Diario", filler + "upsertcormorano"));
+        // Il termine tolto era oltre l'inizio salvato in content: va rimosso comunque dall'indice
+        assertTrue(ids(dao.search("upsertcormorano*")).contains(noteId));
+        assertFalse(ids(dao.search("upsertgabbiano*")).contains(noteId));
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder sb = new StringBuilder(text.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+
+    private static Note newNote(long noteId, String title, String content) {
+        Note note = new Note();
+        note.setId((int) noteId);
+        note.setTitle(title);
+        note.setContent(content);
+        note.setLastModified(System.currentTimeMillis());
+        return note;
+    }
+
+    private static List<Long> ids(List<NoteSearchResult> results) {
+        List<Long> ids = new ArrayList<>();
+        for (NoteSearchResult result : results) {
+            ids.add((long) result.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,106 @@
+package com.gianmarco.securenotes.search;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.gianmarco.securenotes.SecureNoteDB;
+
+import net.sqlcipher.database.SupportFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Misura la latenza della ricerca a trigrammi al crescere del numero di titoli indicizzati.
+ * I tempi sono riportati nel logcat con il tag TrigramIndexBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TrigramIndexBenchmark {
+
+    private static final String TAG = "TrigramIndexBenchmark";
+    private static final int[] CORPUS_SIZES = {1_000, 10_000, 50_000};
+    private static final int QUERIES = 50;
+    private static final String[] WORDS = {
+            "riunione", "progetto", "spesa", "viaggio", "fattura", "appunti", "ricetta", "lezione",
+            "contratto", "bolletta", "vacanze", "idee", "lista", "budget", "medico", "palestra",
+            "compleanno", "regali", "libri", "film", "password", "lavoro", "casa", "auto"
+    };
+
+    private SecureNoteDB db;
+    private TrigramDao dao;
+    private final Random random = new Random(42);
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(context, SecureNoteDB.class)
+                .openHelperFactory(new SupportFactory("benchmark".getBytes(StandardCharsets.UTF_8)))
+                .build();
+        dao = db.trigramDao();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void queryLatencyStaysFlat() {
+        long[] medians = new long[CORPUS_SIZES.length];
+        int indexed = 0;
+        for (int i = 0; i < CORPUS_SIZES.length; i++) {
+            List<TrigramEntry> batch = new ArrayList<>();
+            for (; indexed < CORPUS_SIZES[i]; indexed++) {
+                batch.addAll(TrigramIndex.entries(TrigramEntry.KIND_NOTE, indexed, randomTitle() + " " + indexed));
+            }
+            db.runInTransaction(() -> dao.insertAll(batch));
+
+            long[] timings = new long[QUERIES];
+            for (int q = 0; q < QUERIES; q++) {
+                String query = withTypo(WORDS[random.nextInt(WORDS.length)]);
+                long start = System.nanoTime();
+                List<TrigramMatch> matches = TrigramIndex.search(dao, TrigramEntry.KIND_NOTE, query, 10);
+                timings[q] = System.nanoTime() - start;
+                assertFalse("Nessun risultato per " + query, matches.isEmpty());
+            }
+            Arrays.sort(timings);
+            medians[i] = timings[QUERIES / 2];
+            Log.i(TAG, "titoli=" + CORPUS_SIZES[i] + " mediana=" + medians[i] / 1000 + "us"
+                    + " p90=" + timings[QUERIES * 9 / 10] / 1000 + "us");
+        }
+        // Con 10.000 titoli le posting list di ogni parola sono già vicine a TrigramIndex.MAX_POSTINGS,
+        // con 50.000 vengono troncate: le righe lette restano le stesse e così la latenza
+        long capped = Math.max(medians[1], 1);
+        long largest = medians[medians.length - 1];
+        assertTrue("Latenza cresciuta da " + capped + "ns a " + largest + "ns", largest < capped * 2);
+    }
+
+    private String randomTitle() {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+    }
+
+    // Simula un errore di battitura scambiando due lettere adiacenti
+    private String withTypo(String word) {
+        int i = 1 + random.nextInt(word.length() - 2);
+        char[] chars = word.toCharArray();
+        char tmp = chars[i];
+        chars[i] = chars[i + 1];
+        chars[i + 1] = tmp;
+        return new String(chars);
+    }
+}
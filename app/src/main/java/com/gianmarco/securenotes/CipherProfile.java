@@ -0,0 +1,36 @@
+package com.gianmarco.securenotes;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+/**
+ * Profili di configurazione di SQLCipher applicati ad ogni connessione subito dopo la chiave.
+ * La dimensione di pagina non fa parte dei profili: cambiarla renderebbe illeggibili i database esistenti.
+ */
+public enum CipherProfile {
+
+    // Default dell'app: niente azzeramento ad ogni allocazione, cache da 2 MB
+    BALANCED(false, -2_000, "MEMORY"),
+
+    // Dispositivi con poca RAM: cache minima, tabelle temporanee su disco, memoria azzerata
+    LOW_MEMORY(true, -512, "FILE"),
+
+    // Import e ricerche su archivi grandi: cache da 8 MB
+    THROUGHPUT(false, -8_000, "MEMORY");
+
+    private final boolean memorySecurity;
+    // Valori negativi in KiB, come da PRAGMA cache_size
+    private final int cacheSize;
+    private final String tempStore;
+
+    CipherProfile(boolean memorySecurity, int cacheSize, String tempStore) {
+        this.memorySecurity = memorySecurity;
+        this.cacheSize = cacheSize;
+        this.tempStore = tempStore;
+    }
+
+    void apply(SQLiteDatabase database) {
+        database.rawExecSQL("PRAGMA cipher_memory_security = " + (memorySecurity ? "ON" : "OFF"));
+        database.rawExecSQL("PRAGMA cache_size = " + cacheSize);
+        database.rawExecSQL("PRAGMA temp_store = " + tempStore);
+    }
+}
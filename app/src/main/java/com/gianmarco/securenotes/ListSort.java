@@ -0,0 +1,23 @@
+package com.gianmarco.securenotes;
+
+/**
+ * Ordinamenti delle liste. Ogni schermata offre solo quelli sensati per i suoi dati
+ * (le note non hanno un tipo, i file non hanno una data di modifica distinta dal caricamento).
+ */
+public enum ListSort {
+    TITLE("Titolo"),
+    CREATED("Data di creazione"),
+    MODIFIED("Ultima modifica"),
+    SIZE("Dimensione"),
+    TYPE("Tipo");
+
+    private final String label;
+
+    ListSort(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
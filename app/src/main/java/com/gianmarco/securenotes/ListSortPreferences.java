@@ -0,0 +1,39 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Ordinamento scelto dall'utente, salvato separatamente per ogni schermata
+ */
+public class ListSortPreferences {
+    private static final String PREFS_NAME = "list_sort_prefs";
+    public static final String SCREEN_DASHBOARD = "dashboard";
+    public static final String SCREEN_ARCHIVE = "archive";
+
+    private final SharedPreferences preferences;
+    private final String screen;
+    private final ListSort defaultSort;
+
+    public ListSortPreferences(Context context, String screen, ListSort defaultSort) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.screen = screen;
+        this.defaultSort = defaultSort;
+    }
+
+    public ListSort getSort() {
+        String name = preferences.getString(screen, null);
+        if (name != null) {
+            try {
+                return ListSort.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                // Valore di una versione precedente: si torna al predefinito
+            }
+        }
+        return defaultSort;
+    }
+
+    public void setSort(ListSort sort) {
+        preferences.edit().putString(screen, sort.name()).apply();
+    }
+}
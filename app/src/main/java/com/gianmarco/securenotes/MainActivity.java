@@ -14,6 +14,8 @@ import java.util.concurrent.Executor;
 import com.gianmarco.securenotes.fragment.ArchiveFragment;
 import com.gianmarco.securenotes.fragment.DashboardFragment;
 import com.gianmarco.securenotes.fragment.SettingsFragment;
+import com.gianmarco.securenotes.note.NoteListCache;
+import com.gianmarco.securenotes.note.NoteRepository;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
@@ -41,16 +43,22 @@ public class MainActivity extends AppCompatActivity {
     private BottomNavigationView bottomNavigationView;
     private FloatingActionButton fab;
     private View fragmentContainer;
+    private NoteRepository noteRepository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         int themeMode = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getInt("theme_mode", androidx.appcompat.app.AppCompatDelegate.MODE_NIGHT_FOLLOW_SYSTEM);
         androidx.appcompat.app.AppCompatDelegate.setDefaultNightMode(themeMode);
+        MaintenanceWorker.schedule(getApplicationContext());
+        NoteCompressionWorker.enqueueIfNeeded(getApplicationContext());
+        TrashPurgeWorker.schedule(getApplicationContext());
 
         boolean skipAuth = getSharedPreferences(PREFS_NAME, MODE_PRIVATE).getBoolean("skip_auth_on_next_start", false);
 
         if (skipAuth) {
             getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().putBoolean("skip_auth_on_next_start", false).apply();
+            prewarm();
+            openDatabase();
             super.onCreate(savedInstanceState);
             setContentView(R.layout.activity_main);
             bottomNavigationView = findViewById(R.id.bottom_navigation);
@@ -81,6 +89,7 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
+        prewarm();
         requestAuthenticationIfNeeded();
 
         setupBottomNavigation();
@@ -147,6 +156,7 @@ public class MainActivity extends AppCompatActivity {
                         .putLong(KEY_LAST_AUTH, System.currentTimeMillis())
                         .apply();
                 isAuthenticated = true;
+                openDatabase();
                 // Mostra l'interfaccia dopo l'autenticazione riuscita
                 showUI();
                 // Vai alla sezione Note
@@ -174,6 +184,20 @@ public class MainActivity extends AppCompatActivity {
 
     }
 
+    // Mentre l'utente si autentica viene decifrata solo la lista salvata, così la dashboard può
+    // disegnare subito dopo lo sblocco. Il database non viene toccato prima dell'autenticazione.
+    private void prewarm() {
+        NoteListCache.getInstance(getApplicationContext()).preload();
+    }
+
+    // Dopo lo sblocco: il database si apre sull'executor del repository mentre la dashboard si crea
+    private void openDatabase() {
+        if (noteRepository == null) {
+            noteRepository = new NoteRepository(getApplicationContext());
+        }
+        noteRepository.openDatabase();
+    }
+
     private void navigateTo(Fragment fragment) {
         getSupportFragmentManager()
                 .beginTransaction()
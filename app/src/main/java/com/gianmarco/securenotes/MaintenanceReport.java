@@ -0,0 +1,116 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Esito dell'ultima manutenzione del database, salvato per la sezione di diagnostica delle impostazioni.
+ * Contiene solo dimensioni e conteggi, nessun dato delle note.
+ */
+public class MaintenanceReport {
+
+    private static final String PREFS_NAME = "db_maintenance";
+    private static final String KEY_LAST_RUN = "last_run";
+    private static final String KEY_DURATION = "duration_ms";
+    private static final String KEY_SIZE_BEFORE = "size_before";
+    private static final String KEY_SIZE_AFTER = "size_after";
+    private static final String KEY_PAGES_RECLAIMED = "pages_reclaimed";
+    private static final String KEY_REVISIONS_REMOVED = "revisions_removed";
+    private static final String KEY_FREE_PAGES = "free_pages";
+    private static final String KEY_ANALYZED = "analyzed";
+    private static final String KEY_INTEGRITY_OK = "integrity_ok";
+    private static final String KEY_INTEGRITY_ERRORS = "integrity_errors";
+    private static final String KEY_INTEGRITY_CHECKED_AT = "integrity_checked_at";
+    private static final String KEY_INTEGRITY_NEXT_STEP = "integrity_next_step";
+    private static final String KEY_INTEGRITY_PENDING = "integrity_pending";
+
+    long lastRun;
+    long durationMs;
+    long sizeBefore;
+    long sizeAfter;
+    long pagesReclaimed;
+    int revisionsRemoved;
+    long freePages;
+    boolean analyzed;
+    boolean integrityOk = true;
+    String integrityErrors = "";
+    long integrityCheckedAt;
+    // Passo del controllo di integrità da cui riprendere alla prossima esecuzione
+    int integrityNextStep;
+    // Errori trovati nei passi già eseguiti del controllo in corso
+    String integrityPendingErrors = "";
+
+    public static MaintenanceReport load(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        MaintenanceReport report = new MaintenanceReport();
+        report.lastRun = prefs.getLong(KEY_LAST_RUN, 0);
+        report.durationMs = prefs.getLong(KEY_DURATION, 0);
+        report.sizeBefore = prefs.getLong(KEY_SIZE_BEFORE, 0);
+        report.sizeAfter = prefs.getLong(KEY_SIZE_AFTER, 0);
+        report.pagesReclaimed = prefs.getLong(KEY_PAGES_RECLAIMED, 0);
+        report.revisionsRemoved = prefs.getInt(KEY_REVISIONS_REMOVED, 0);
+        report.freePages = prefs.getLong(KEY_FREE_PAGES, 0);
+        report.analyzed = prefs.getBoolean(KEY_ANALYZED, false);
+        report.integrityOk = prefs.getBoolean(KEY_INTEGRITY_OK, true);
+        report.integrityErrors = prefs.getString(KEY_INTEGRITY_ERRORS, "");
+        report.integrityCheckedAt = prefs.getLong(KEY_INTEGRITY_CHECKED_AT, 0);
+        report.integrityNextStep = prefs.getInt(KEY_INTEGRITY_NEXT_STEP, 0);
+        report.integrityPendingErrors = prefs.getString(KEY_INTEGRITY_PENDING, "");
+        return report;
+    }
+
+    void save(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong(KEY_LAST_RUN, lastRun)
+                .putLong(KEY_DURATION, durationMs)
+                .putLong(KEY_SIZE_BEFORE, sizeBefore)
+                .putLong(KEY_SIZE_AFTER, sizeAfter)
+                .putLong(KEY_PAGES_RECLAIMED, pagesReclaimed)
+                .putInt(KEY_REVISIONS_REMOVED, revisionsRemoved)
+                .putLong(KEY_FREE_PAGES, freePages)
+                .putBoolean(KEY_ANALYZED, analyzed)
+                .putBoolean(KEY_INTEGRITY_OK, integrityOk)
+                .putString(KEY_INTEGRITY_ERRORS, integrityErrors)
+                .putLong(KEY_INTEGRITY_CHECKED_AT, integrityCheckedAt)
+                .putInt(KEY_INTEGRITY_NEXT_STEP, integrityNextStep)
+                .putString(KEY_INTEGRITY_PENDING, integrityPendingErrors)
+                .apply();
+    }
+
+    /**
+     * Testo mostrato nella sezione di diagnostica
+     */
+    public String format() {
+        if (lastRun == 0) {
+            return "Nessuna manutenzione eseguita";
+        }
+        SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm", Locale.getDefault());
+        StringBuilder sb = new StringBuilder();
+        sb.append("Ultima manutenzione: ").append(dateFormat.format(new Date(lastRun)))
+                .append(" (").append(durationMs).append(" ms)\n");
+        sb.append("Dimensione database: ").append(formatSize(sizeBefore))
+                .append(" → ").append(formatSize(sizeAfter)).append('\n');
+        sb.append("Versioni delle note compattate: ").append(revisionsRemoved).append('\n');
+        sb.append("Pagine recuperate: ").append(pagesReclaimed)
+                .append(", ancora libere: ").append(freePages).append('\n');
+        sb.append("Statistiche aggiornate: ").append(analyzed ? "sì" : "no").append('\n');
+        if (integrityCheckedAt == 0) {
+            sb.append("Controllo di integrità in corso");
+        } else {
+            sb.append("Integrità (").append(dateFormat.format(new Date(integrityCheckedAt))).append("): ")
+                    .append(integrityOk ? "OK" : "errori rilevati\n" + integrityErrors);
+        }
+        return sb.toString();
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.getDefault(), "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.getDefault(), "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,202 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.gianmarco.securenotes.note.NoteRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manutenzione periodica del database, eseguita solo con dispositivo inattivo e in carica:
+ * recupera le pagine libere a piccoli passi, aggiorna le statistiche del planner e verifica
+ * l'integrità un pezzo alla volta. L'esito viene salvato in {@link MaintenanceReport}.
+ */
+public class MaintenanceWorker extends Worker {
+    private static final String TAG = "MaintenanceWorker";
+    private static final String WORK_NAME = "db_maintenance";
+    // Pagine liberate per ogni passo di incremental_vacuum: ogni passo è una transazione breve
+    private static final int VACUUM_STEP_PAGES = 256;
+    // Tempo massimo dedicato al controllo di integrità in una singola esecuzione
+    private static final long INTEGRITY_BUDGET_MS = 2_000;
+
+    public MaintenanceWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(MaintenanceWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        MaintenanceReport report = MaintenanceReport.load(context);
+        long start = SystemClock.elapsedRealtime();
+        try {
+            SupportSQLiteDatabase db = SecureNoteDB.getInstance(context).getOpenHelper().getWritableDatabase();
+            report.sizeBefore = databaseSize(db);
+
+            // Prima le versioni vecchie, così le pagine liberate vengono recuperate subito dopo
+            report.revisionsRemoved = new NoteRepository(context).compactRevisionsSync();
+
+            enableIncrementalVacuum(db);
+            report.pagesReclaimed = reclaimFreePages(db);
+            report.freePages = pragmaLong(db, "freelist_count");
+
+            report.analyzed = false;
+            if (!isStopped()) {
+                analyze(db);
+                report.analyzed = true;
+            }
+            if (!isStopped()) {
+                checkIntegrity(db, report);
+            }
+
+            report.sizeAfter = databaseSize(db);
+            Log.i(TAG, "Manutenzione completata: " + report.sizeBefore + " -> " + report.sizeAfter + " byte");
+        } catch (Exception e) {
+            Log.e(TAG, "Errore durante la manutenzione del database: " + e.getMessage());
+            return Result.retry();
+        } finally {
+            report.lastRun = System.currentTimeMillis();
+            report.durationMs = SystemClock.elapsedRealtime() - start;
+            report.save(context);
+        }
+        return Result.success();
+    }
+
+    // auto_vacuum si può cambiare solo ricostruendo il file: il VACUUM completo avviene una volta sola
+    private void enableIncrementalVacuum(SupportSQLiteDatabase db) {
+        if (pragmaLong(db, "auto_vacuum") == 2) {
+            return;
+        }
+        Log.d(TAG, "Attivo auto_vacuum incrementale");
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.execSQL("VACUUM");
+    }
+
+    private long reclaimFreePages(SupportSQLiteDatabase db) {
+        long reclaimed = 0;
+        long free = pragmaLong(db, "freelist_count");
+        while (free > 0 && !isStopped()) {
+            drain(db, "PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ")");
+            long remaining = pragmaLong(db, "freelist_count");
+            reclaimed += free - remaining;
+            if (remaining >= free) {
+                break;
+            }
+            free = remaining;
+        }
+        return reclaimed;
+    }
+
+    // Alla prima esecuzione raccoglie le statistiche complete, poi optimize le aggiorna solo se servono
+    private void analyze(SupportSQLiteDatabase db) {
+        boolean hasStatistics;
+        try (Cursor cursor = db.query("SELECT 1 FROM sqlite_master WHERE name = 'sqlite_stat1'")) {
+            hasStatistics = cursor.moveToFirst();
+        }
+        if (!hasStatistics) {
+            db.execSQL("ANALYZE");
+        }
+        drain(db, "PRAGMA optimize");
+    }
+
+    // Un passo per tabella; l'ultimo è cipher_integrity_check sull'intero file, che non si può spezzare
+    private void checkIntegrity(SupportSQLiteDatabase db, MaintenanceReport report) {
+        long start = SystemClock.elapsedRealtime();
+        List<String> tables = integrityTables(db);
+        StringBuilder errors = new StringBuilder(report.integrityPendingErrors);
+        int step = Math.min(report.integrityNextStep, tables.size());
+        while (step <= tables.size() && !isStopped()
+                && SystemClock.elapsedRealtime() - start < INTEGRITY_BUDGET_MS) {
+            if (step < tables.size()) {
+                try (Cursor cursor = db.query("PRAGMA integrity_check(\"" + tables.get(step) + "\")")) {
+                    while (cursor.moveToNext()) {
+                        String row = cursor.getString(0);
+                        if (!"ok".equals(row)) {
+                            errors.append(row).append('\n');
+                        }
+                    }
+                }
+            } else {
+                // cipher_integrity_check restituisce una riga per ogni pagina con HMAC non valido
+                try (Cursor cursor = db.query("PRAGMA cipher_integrity_check")) {
+                    while (cursor.moveToNext()) {
+                        errors.append(cursor.getString(0)).append('\n');
+                    }
+                }
+            }
+            step++;
+        }
+
+        if (step > tables.size()) {
+            report.integrityOk = errors.length() == 0;
+            report.integrityErrors = errors.toString().trim();
+            report.integrityCheckedAt = System.currentTimeMillis();
+            report.integrityNextStep = 0;
+            report.integrityPendingErrors = "";
+            if (!report.integrityOk) {
+                Log.e(TAG, "Controllo di integrità fallito: " + report.integrityErrors);
+            }
+        } else {
+            report.integrityNextStep = step;
+            report.integrityPendingErrors = errors.toString();
+        }
+    }
+
+    // Tutte le tabelle del database, comprese quelle interne dell'indice full-text, in ordine di nome
+    // così che il passo salvato tra un'esecuzione e l'altra indichi sempre la stessa tabella.
+    // Le tabelle virtuali sono escluse: vengono controllate attraverso le loro tabelle interne.
+    private static List<String> integrityTables(SupportSQLiteDatabase db) {
+        List<String> tables = new ArrayList<>();
+        try (Cursor cursor = db.query("SELECT name FROM sqlite_master WHERE type = 'table' " +
+                "AND name NOT LIKE 'sqlite_%' AND sql NOT LIKE 'CREATE VIRTUAL TABLE%' ORDER BY name")) {
+            while (cursor.moveToNext()) {
+                tables.add(cursor.getString(0));
+            }
+        }
+        return tables;
+    }
+
+    private static long databaseSize(SupportSQLiteDatabase db) {
+        return pragmaLong(db, "page_count") * pragmaLong(db, "page_size");
+    }
+
+    private static long pragmaLong(SupportSQLiteDatabase db, String pragma) {
+        try (Cursor cursor = db.query("PRAGMA " + pragma)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    // Alcuni PRAGMA lavorano solo mentre se ne leggono i risultati
+    private static void drain(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            while (cursor.moveToNext()) {
+                // nessun dato da leggere
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.gianmarco.securenotes.note.NoteRepository;
+
+/**
+ * Comprime in background le note lunghe salvate prima della colonna contentBlob.
+ * Le note salvate dopo vengono già compresse dal repository, quindi il lavoro serve una volta sola.
+ */
+public class NoteCompressionWorker extends Worker {
+    private static final String TAG = "NoteCompressionWorker";
+    private static final String WORK_NAME = "note_compression";
+    private static final String PREFS_NAME = "secure_notes_prefs";
+    private static final String KEY_DONE = "note_compression_done";
+    private static final int BATCH_SIZE = 20;
+
+    public NoteCompressionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    public static void enqueueIfNeeded(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (prefs.getBoolean(KEY_DONE, false)) {
+            return;
+        }
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.KEEP,
+                new OneTimeWorkRequest.Builder(NoteCompressionWorker.class).build());
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        NoteRepository noteRepo = new NoteRepository(context);
+        int compressed = 0;
+        try {
+            int count;
+            while ((count = noteRepo.compressStoredNotesSync(BATCH_SIZE)) > 0) {
+                compressed += count;
+                if (isStopped()) {
+                    return Result.retry();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Errore durante la compressione delle note: " + e.getMessage());
+            return Result.retry();
+        }
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().putBoolean(KEY_DONE, true).apply();
+        Log.i(TAG, "Note compresse: " + compressed);
+        return Result.success();
+    }
+}
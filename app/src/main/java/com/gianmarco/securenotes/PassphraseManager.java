@@ -14,21 +14,13 @@ public class PassphraseManager {
 
     private static final String PREFS_FILE = "passphrase_prefs";
     private static final String KEY_PASSPHRASE = "db_passphrase";
+    private static final String KEY_RAW_KEY = "db_raw_key";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
 
     // Genera e salva una passphrase sicura se non esiste
     public static byte[] getPassphrase(Context context) {
         try {
-            MasterKey masterKey = new MasterKey.Builder(context)
-                    .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
-                    .build();
-
-            SharedPreferences sharedPreferences = EncryptedSharedPreferences.create(
-                    context,
-                    PREFS_FILE,
-                    masterKey,
-                    EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
-                    EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
-            );
+            SharedPreferences sharedPreferences = getPreferences(context);
 
             String base64Passphrase = sharedPreferences.getString(KEY_PASSPHRASE, null);
             if (base64Passphrase == null) {
@@ -45,4 +37,49 @@ public class PassphraseManager {
             throw new RuntimeException("Could not get or create passphrase", e);
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Converte i 32 byte casuali nella chiave grezza x'...' di SQLCipher:
+     * la chiave viene usata così com'è, senza la derivazione PBKDF2 ad ogni apertura
+     */
+    public static byte[] toRawKey(byte[] passphrase) {
+        StringBuilder sb = new StringBuilder(passphrase.length * 2 + 3);
+        sb.append("x'");
+        for (byte b : passphrase) {
+            sb.append(HEX[(b >> 4) & 0x0f]).append(HEX[b & 0x0f]);
+        }
+        sb.append('\'');
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Indica se il database è già cifrato con la chiave grezza
+    public static boolean isRawKeyEnabled(Context context) {
+        try {
+            return getPreferences(context).getBoolean(KEY_RAW_KEY, false);
+        } catch (Exception e) {
+            throw new RuntimeException("Could not read key format", e);
+        }
+    }
+
+    public static void setRawKeyEnabled(Context context) {
+        try {
+            getPreferences(context).edit().putBoolean(KEY_RAW_KEY, true).commit();
+        } catch (Exception e) {
+            throw new RuntimeException("Could not save key format", e);
+        }
+    }
+
+    private static SharedPreferences getPreferences(Context context) throws Exception {
+        MasterKey masterKey = new MasterKey.Builder(context)
+                .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+                .build();
+
+        return EncryptedSharedPreferences.create(
+                context,
+                PREFS_FILE,
+                masterKey,
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
+        );
+    }
+}
@@ -10,6 +10,7 @@ import androidx.work.WorkerParameters;
 
 import com.gianmarco.securenotes.note.Note;
 import com.gianmarco.securenotes.note.NoteRepository;
+import com.gianmarco.securenotes.file.SecureFile;
 import com.gianmarco.securenotes.file.SecureFileRepository;
 import com.gianmarco.securenotes.file.SecureFileManager;
 
@@ -20,6 +21,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -33,6 +36,8 @@ import javax.crypto.CipherInputStream;
 
 public class RestoreBackupWorker extends Worker {
     private static final String TAG = "RestoreBackupWorker";
+    // File importati i cui metadati vengono salvati insieme, in una transazione
+    private static final int FILE_BATCH_SIZE = 50;
 
     public RestoreBackupWorker(@NonNull Context context, @NonNull WorkerParameters params) {
         super(context, params);
@@ -69,62 +74,82 @@ public class RestoreBackupWorker extends Worker {
                     SecureFileRepository fileRepo = new SecureFileRepository(context);
                     SecureFileManager fileManager = new SecureFileManager(context);
                     boolean foundNotes = false;
-                    while ((entry = zipIn.getNextEntry()) != null) {
-                        Log.d(TAG, "Entry trovata nello zip: " + entry.getName());
-                        if (entry.getName().equals("notes.json")) {
-                            foundNotes = true;
-                            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                            int len;
-                            while ((len = zipIn.read(buffer)) != -1) baos.write(buffer, 0, len);
-                            String notesJson = baos.toString("UTF-8");
-                            Log.d(TAG, "Contenuto notes.json: " + notesJson);
-                            try {
-                                JSONObject obj = new JSONObject(notesJson);
-                                JSONArray notesArr = obj.getJSONArray("notes");
-                                for (int i = 0; i < notesArr.length(); i++) {
-                                    JSONObject n = notesArr.getJSONObject(i);
-                                    Note note = new Note();
-                                    note.setTitle(n.getString("title"));
-                                    note.setContent(n.getString("content"));
-                                    note.setLastModified(n.getLong("lastModified"));
-                                    noteRepo.insertOrUpdate(note);
-                                    notesImported++;
-                                }
-                                Log.d(TAG, "Note importate: " + notesImported);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Errore parsing note: ", e);
-                                showNotification(context, "Ripristino SecureNotes", "Errore parsing notes.json: " + notesJson, false);
-                                throw new Exception("Il backup è corrotto o il formato non è compatibile (note)");
-                            }
-                        } else if (entry.getName().startsWith("files/")) {
-                            try {
-                                String fileName = entry.getName().substring("files/".length());
-                                Log.d(TAG, "Inizio import file: " + fileName);
+                    // Blob già cifrati su disco i cui metadati non sono ancora nel database
+                    List<SecureFile> pendingFiles = new ArrayList<>();
+                    try {
+                        while ((entry = zipIn.getNextEntry()) != null) {
+                            Log.d(TAG, "Entry trovata nello zip: " + entry.getName());
+                            if (entry.getName().equals("notes.json")) {
+                                foundNotes = true;
                                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
                                 int len;
                                 while ((len = zipIn.read(buffer)) != -1) baos.write(buffer, 0, len);
-                                byte[] fileBytes = baos.toByteArray();
-                                File temp = File.createTempFile("import_", fileName, context.getCacheDir());
-                                FileOutputStream fos = new FileOutputStream(temp);
-                                fos.write(fileBytes);
-                                fos.close();
-                                Uri fileUri = androidx.core.content.FileProvider.getUriForFile(context, context.getPackageName() + ".fileprovider", temp);
-                                Log.d(TAG, "Chiamo fileRepo.uploadFileSync per: " + fileName);
-                                fileRepo.uploadFileSync(fileUri, fileName, getMimeType(fileName), null);
-                                temp.delete();
-                                filesImported++;
-                                Log.d(TAG, "File importato: " + fileName);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Errore import file: ", e);
-                                throw new Exception("Il backup è corrotto o il formato non è compatibile (file)");
+                                String notesJson = baos.toString("UTF-8");
+                                Log.d(TAG, "Contenuto notes.json: " + notesJson);
+                                try {
+                                    JSONObject obj = new JSONObject(notesJson);
+                                    JSONArray notesArr = obj.getJSONArray("notes");
+                                    List<Note> notes = new ArrayList<>(notesArr.length());
+                                    for (int i = 0; i < notesArr.length(); i++) {
+                                        JSONObject n = notesArr.getJSONObject(i);
+                                        Note note = new Note();
+                                        note.setTitle(n.getString("title"));
+                                        note.setContent(n.getString("content"));
+                                        note.setLastModified(n.getLong("lastModified"));
+                                        notes.add(note);
+                                    }
+                                    noteRepo.insertAllSync(notes);
+                                    notesImported = notes.size();
+                                    Log.d(TAG, "Note importate: " + notesImported);
+                                } catch (Exception e) {
+                                    Log.e(TAG, "Errore parsing note: ", e);
+                                    showNotification(context, "Ripristino SecureNotes", "Errore parsing notes.json: " + notesJson, false);
+                                    throw new Exception("Il backup è corrotto o il formato non è compatibile (note)");
+                                }
+                            } else if (entry.getName().startsWith("files/")) {
+                                try {
+                                    String fileName = entry.getName().substring("files/".length());
+                                    Log.d(TAG, "Inizio import file: " + fileName);
+                                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                                    int len;
+                                    while ((len = zipIn.read(buffer)) != -1) baos.write(buffer, 0, len);
+                                    byte[] fileBytes = baos.toByteArray();
+                                    File temp = File.createTempFile("import_", fileName, context.getCacheDir());
+                                    FileOutputStream fos = new FileOutputStream(temp);
+                                    fos.write(fileBytes);
+                                    fos.close();
+                                    Uri fileUri = androidx.core.content.FileProvider.getUriForFile(context, context.getPackageName() + ".fileprovider", temp);
+                                    Log.d(TAG, "Chiamo fileRepo.saveFileSync per: " + fileName);
+                                    pendingFiles.add(fileRepo.saveFileSync(fileUri, fileName, getMimeType(fileName)));
+                                    temp.delete();
+                                    filesImported++;
+                                    if (pendingFiles.size() >= FILE_BATCH_SIZE) {
+                                        fileRepo.insertAllSync(pendingFiles);
+                                        pendingFiles.clear();
+                                    }
+                                    Log.d(TAG, "File importato: " + fileName);
+                                } catch (Exception e) {
+                                    Log.e(TAG, "Errore import file: ", e);
+                                    throw new Exception("Il backup è corrotto o il formato non è compatibile (file)");
+                                }
                             }
+                            zipIn.closeEntry();
+                        }
+                        zipIn.close();
+                        fileRepo.insertAllSync(pendingFiles);
+                    } catch (Exception e) {
+                        // Senza metadati i blob scritti dall'ultimo lotto resterebbero orfani su disco
+                        List<String> fileIds = new ArrayList<>(pendingFiles.size());
+                        for (SecureFile secureFile : pendingFiles) {
+                            fileIds.add(secureFile.getFileId());
                         }
-                        zipIn.closeEntry();
+                        fileRepo.deleteBlobsSync(fileIds);
+                        throw e;
                     }
-                    zipIn.close();
                     if (!foundNotes || notesImported == 0) {
                         throw new Exception("Nessuna nota importata: backup corrotto o formato non compatibile");
                     }
+                    SecureNoteDB.getInstance(context).checkpoint();
                     Log.i(TAG, "Ripristino backup completato: note importate=" + notesImported + ", file importati=" + filesImported);
                     showNotification(context, "Ripristino SecureNotes", "Backup importato con successo", true);
                     return Result.success();
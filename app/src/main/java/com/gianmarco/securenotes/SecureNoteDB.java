@@ -1,32 +1,350 @@
 package com.gianmarco.securenotes;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
+import com.gianmarco.securenotes.file.NoteAttachment;
+import com.gianmarco.securenotes.file.NoteAttachmentDao;
 import com.gianmarco.securenotes.file.SecureFile;
 import com.gianmarco.securenotes.file.SecureFileDao;
 import com.gianmarco.securenotes.note.Note;
+import com.gianmarco.securenotes.note.NoteChunk;
+import com.gianmarco.securenotes.note.NoteChunkDao;
 import com.gianmarco.securenotes.note.NoteDao;
+import com.gianmarco.securenotes.note.NoteFts;
+import com.gianmarco.securenotes.note.NoteRevision;
+import com.gianmarco.securenotes.note.NoteRevisionDao;
+import com.gianmarco.securenotes.note.NoteTag;
+import com.gianmarco.securenotes.note.Tag;
+import com.gianmarco.securenotes.note.TagDao;
+import com.gianmarco.securenotes.search.TrigramDao;
+import com.gianmarco.securenotes.search.TrigramEntry;
+import com.gianmarco.securenotes.search.TrigramIndex;
 
+import net.sqlcipher.database.SQLiteDatabaseHook;
 import net.sqlcipher.database.SupportFactory;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
-@Database(entities = {Note.class, SecureFile.class}, version = 3, exportSchema = false)
+@Database(entities = {Note.class, SecureFile.class, TrigramEntry.class, NoteChunk.class, NoteRevision.class,
+        Tag.class, NoteTag.class, NoteAttachment.class}, version = 14, exportSchema = true)
 public abstract class SecureNoteDB extends RoomDatabase {
 
     private static final String TAG = "SecureNoteDB";
     private static final String DB_NAME = "secure_notes.db";
+    // Checkpoint automatico ogni 1000 pagine; dopo il checkpoint il file -wal viene riportato a 4 MB
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+    private static final long WAL_SIZE_LIMIT_BYTES = 4L * 1024 * 1024;
+    // Profilo intermedio tra memoria e velocità; non ancora confrontato con CipherProfileBenchmark
+    // su dispositivi reali
+    private static final CipherProfile DEFAULT_PROFILE = CipherProfile.BALANCED;
     
     public abstract NoteDao noteDao();
     public abstract SecureFileDao secureFileDao();
+    public abstract TrigramDao trigramDao();
+    public abstract NoteChunkDao noteChunkDao();
+    public abstract NoteRevisionDao noteRevisionDao();
+    public abstract TagDao tagDao();
+    public abstract NoteAttachmentDao noteAttachmentDao();
 
     private static volatile SecureNoteDB INSTANCE;
 
+    // Aggiunge l'indice full-text sulle note (vedi NoteFts) e lo popola con le note esistenti,
+    // che in questa versione hanno tutto il testo in content
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            NoteFts.create(db);
+            db.execSQL("INSERT INTO notes_fts(rowid, title, content) SELECT id, title, content FROM notes");
+        }
+    };
+
+    // Aggiunge l'indice a trigrammi e indicizza titoli delle note e nomi dei file esistenti
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `trigrams` (`kind` INTEGER NOT NULL, `trigram` TEXT NOT NULL, " +
+                    "`ownerId` INTEGER NOT NULL, `gramCount` INTEGER NOT NULL, PRIMARY KEY(`kind`, `trigram`, `ownerId`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_trigrams_kind_ownerId` ON `trigrams` (`kind`, `ownerId`)");
+            indexExisting(db, "SELECT id, title FROM notes", TrigramEntry.KIND_NOTE);
+            indexExisting(db, "SELECT id, originalFileName FROM secure_files", TrigramEntry.KIND_FILE);
+        }
+
+        private void indexExisting(SupportSQLiteDatabase db, String query, int kind) {
+            try (Cursor cursor = db.query(query)) {
+                while (cursor.moveToNext()) {
+                    for (TrigramEntry entry : TrigramIndex.entries(kind, cursor.getLong(0), cursor.getString(1))) {
+                        ContentValues values = new ContentValues();
+                        values.put("kind", entry.getKind());
+                        values.put("trigram", entry.getTrigram());
+                        values.put("ownerId", entry.getOwnerId());
+                        values.put("gramCount", entry.getGramCount());
+                        db.insert("trigrams", SQLiteDatabase.CONFLICT_REPLACE, values);
+                    }
+                }
+            }
+        }
+    };
+
+    // Aggiunge la colonna preview, calcolata in scrittura dal repository.
+    // Per le note esistenti si parte dai primi caratteri del contenuto.
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notes ADD COLUMN preview TEXT");
+            db.execSQL("UPDATE notes SET preview = trim(substr(replace(replace(content, char(13), ' '), char(10), ' '), 1, 200))");
+        }
+    };
+
+    // Indici sulle colonne di ordinamento e ricerca. Prima dell'indice univoco su fileId
+    // si eliminano eventuali metadati duplicati, tenendo il primo inserito.
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_lastModified_id` ON `notes` (`lastModified`, `id`)");
+            db.execSQL("DELETE FROM secure_files WHERE id NOT IN (SELECT MIN(id) FROM secure_files GROUP BY fileId)");
+            db.execSQL("DELETE FROM trigrams WHERE kind = " + TrigramEntry.KIND_FILE + " AND ownerId NOT IN (SELECT id FROM secure_files)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_secure_files_fileId` ON `secure_files` (`fileId`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_secure_files_uploadDate` ON `secure_files` (`uploadDate`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_secure_files_fileSize` ON `secure_files` (`fileSize`)");
+        }
+    };
+
+    // Eseguito su ogni connessione subito dopo la chiave, prima di qualsiasi accesso ai dati
+    private static SQLiteDatabaseHook connectionHook(CipherProfile profile) {
+        return new SQLiteDatabaseHook() {
+            @Override
+            public void preKey(net.sqlcipher.database.SQLiteDatabase database) {
+            }
+
+            @Override
+            public void postKey(net.sqlcipher.database.SQLiteDatabase database) {
+                profile.apply(database);
+                database.rawExecSQL("PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES);
+                database.rawExecSQL("PRAGMA journal_size_limit = " + WAL_SIZE_LIMIT_BYTES);
+            }
+        };
+    }
+
+    /**
+     * Applica al builder la cifratura e la modalità WAL, e crea trigger e indice full-text
+     * insieme alle tabelle.
+     * SupportFactory di net.sqlcipher apre una sola connessione, protetta da un lock: WAL non
+     * rende possibili letture in parallelo alle scritture, ma evita di riscrivere il database
+     * ad ogni commit. Le query restano sull'executor predefinito di Room.
+     * Usato anche dai test strumentali per lavorare sulla stessa configurazione dell'app.
+     */
+    public static RoomDatabase.Builder<SecureNoteDB> configure(RoomDatabase.Builder<SecureNoteDB> builder, byte[] passphrase) {
+        return configure(builder, passphrase, DEFAULT_PROFILE);
+    }
+
+    public static RoomDatabase.Builder<SecureNoteDB> configure(RoomDatabase.Builder<SecureNoteDB> builder, byte[] passphrase,
+                                                               CipherProfile profile) {
+        return builder.openHelperFactory(new SupportFactory(passphrase, connectionHook(profile)))
+                .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                .addCallback(new RoomDatabase.Callback() {
+                    @Override
+                    public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                        super.onCreate(db);
+                        // Room crea le tabelle ma non i trigger e l'indice full-text dichiarati a mano
+                        createTagTriggers(db);
+                        createAttachmentTriggers(db);
+                        NoteFts.create(db);
+                        Log.d(TAG, "Database creato con successo");
+                    }
+
+                    @Override
+                    public void onOpen(@NonNull SupportSQLiteDatabase db) {
+                        super.onOpen(db);
+                        Log.d(TAG, "Database aperto con successo");
+                    }
+                });
+    }
+
+    /**
+     * Trasferisce il WAL nel database e lo tronca. Da chiamare al termine delle scritture massive
+     * (es. ripristino di un backup), quando nessuna lettura lunga è in corso.
+     */
+    public void checkpoint() {
+        try (Cursor cursor = getOpenHelper().getWritableDatabase().query("PRAGMA wal_checkpoint(TRUNCATE)")) {
+            if (cursor.moveToFirst()) {
+                Log.d(TAG, "Checkpoint WAL completato, pagine trasferite: " + cursor.getInt(2));
+            }
+        }
+    }
+
+    // Colonna per il contenuto compresso delle note lunghe: le note esistenti vengono
+    // compresse in background da NoteCompressionWorker
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notes ADD COLUMN contentBlob BLOB");
+        }
+    };
+
+    // Pezzi delle note molto lunghe: le note esistenti vengono divise al primo salvataggio
+    // o dalla compressione in background
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `note_chunks` (`noteId` INTEGER NOT NULL, `seq` INTEGER NOT NULL, " +
+                    "`checksum` INTEGER NOT NULL, `length` INTEGER NOT NULL, `body` TEXT, PRIMARY KEY(`noteId`, `seq`))");
+        }
+    };
+
+    // Storico delle versioni: la prima revisione di ogni nota nasce al salvataggio successivo
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `note_revisions` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`noteId` INTEGER NOT NULL, `createdAt` INTEGER NOT NULL, `kind` INTEGER NOT NULL, " +
+                    "`length` INTEGER NOT NULL, `data` BLOB)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_note_revisions_noteId_createdAt` ON `note_revisions` (`noteId`, `createdAt`)");
+            // La catena delle revisioni si legge per id: l'indice evita di ordinarla ad ogni salvataggio
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_note_revisions_noteId_id` ON `note_revisions` (`noteId`, `id`)");
+        }
+    };
+
+    // Tag delle note: tabelle e trigger che mantengono contatori e ordinamento
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `tags` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`name` TEXT NOT NULL COLLATE NOCASE, `noteCount` INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_tags_name` ON `tags` (`name`)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `note_tags` (`noteId` INTEGER NOT NULL, `tagId` INTEGER NOT NULL, " +
+                    "`lastModified` INTEGER NOT NULL, PRIMARY KEY(`noteId`, `tagId`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_note_tags_tagId_lastModified_noteId` " +
+                    "ON `note_tags` (`tagId`, `lastModified`, `noteId`)");
+            createTagTriggers(db);
+        }
+    };
+
+    /**
+     * Trigger dei tag: contano le note di ogni tag, copiano lastModified delle note in note_tags
+     * e rimuovono le associazioni di note e tag eliminati. Ogni trigger lavora su una chiave indicizzata.
+     * REPLACE su notes non attiva il trigger di cancellazione (recursive_triggers è disattivato),
+     * quindi una nota riscritta mantiene i suoi tag.
+     * Le note nel cestino tengono i loro tag ma non vengono contate: alla loro eliminazione definitiva
+     * notes_tags_ad compensa il decremento che note_tags_ad applicherà di nuovo.
+     */
+    static void createTagTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS note_tags_ai AFTER INSERT ON note_tags BEGIN " +
+                "UPDATE tags SET noteCount = noteCount + 1 WHERE id = NEW.tagId; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS note_tags_ad AFTER DELETE ON note_tags BEGIN " +
+                "UPDATE tags SET noteCount = noteCount - 1 WHERE id = OLD.tagId; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS notes_tags_ai AFTER INSERT ON notes BEGIN " +
+                "UPDATE note_tags SET lastModified = NEW.lastModified WHERE noteId = NEW.id; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS notes_tags_au AFTER UPDATE OF lastModified ON notes BEGIN " +
+                "UPDATE note_tags SET lastModified = NEW.lastModified WHERE noteId = NEW.id; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS notes_tags_ad AFTER DELETE ON notes BEGIN " +
+                "UPDATE tags SET noteCount = noteCount + 1 WHERE OLD.deletedAt IS NOT NULL " +
+                "AND id IN (SELECT tagId FROM note_tags WHERE noteId = OLD.id); " +
+                "DELETE FROM note_tags WHERE noteId = OLD.id; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS notes_tags_trash AFTER UPDATE OF deletedAt ON notes " +
+                "WHEN OLD.deletedAt IS NULL AND NEW.deletedAt IS NOT NULL BEGIN " +
+                "UPDATE tags SET noteCount = noteCount - 1 WHERE id IN (SELECT tagId FROM note_tags WHERE noteId = NEW.id); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS notes_tags_restore AFTER UPDATE OF deletedAt ON notes " +
+                "WHEN OLD.deletedAt IS NOT NULL AND NEW.deletedAt IS NULL BEGIN " +
+                "UPDATE tags SET noteCount = noteCount + 1 WHERE id IN (SELECT tagId FROM note_tags WHERE noteId = NEW.id); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS tags_ad AFTER DELETE ON tags BEGIN " +
+                "DELETE FROM note_tags WHERE tagId = OLD.id; END");
+    }
+
+    // Colonne e indici per gli ordinamenti delle liste. Per le note già compresse contentLength
+    // conta solo l'inizio salvato in content, finché la nota non viene salvata di nuovo.
+    static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notes ADD COLUMN createdAt INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE notes ADD COLUMN contentLength INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE notes ADD COLUMN titleKey TEXT");
+            db.execSQL("UPDATE notes SET createdAt = lastModified, contentLength = length(content)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_createdAt_id` ON `notes` (`createdAt`, `id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_titleKey_id` ON `notes` (`titleKey`, `id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_contentLength_id` ON `notes` (`contentLength`, `id`)");
+            db.execSQL("ALTER TABLE secure_files ADD COLUMN nameKey TEXT");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_secure_files_nameKey` ON `secure_files` (`nameKey`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_secure_files_mimeType_uploadDate` ON `secure_files` (`mimeType` ASC, `uploadDate` DESC)");
+            fillSortKeys(db);
+        }
+    };
+
+    // Chiavi di ordinamento calcolate come in Note e SecureFile: lower() di SQLite converte solo
+    // le lettere ASCII, quindi "Èlite" finirebbe dopo "zeta"
+    private static void fillSortKeys(SupportSQLiteDatabase db) {
+        fillSortKey(db, "notes", "title", "titleKey");
+        fillSortKey(db, "secure_files", "originalFileName", "nameKey");
+    }
+
+    private static void fillSortKey(SupportSQLiteDatabase db, String table, String column, String keyColumn) {
+        List<Long> ids = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        try (Cursor cursor = db.query("SELECT id, " + column + " FROM " + table)) {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+                values.add(cursor.getString(1));
+            }
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            ContentValues key = new ContentValues();
+            key.put(keyColumn, values.get(i) != null ? values.get(i).toLowerCase(Locale.ROOT) : null);
+            db.update(table, SQLiteDatabase.CONFLICT_NONE, key, "id = ?", new Object[]{ids.get(i)});
+        }
+    }
+
+    // Cestino: le righe con deletedAt vengono eliminate da TrashPurgeWorker alla scadenza.
+    // notes_tags_ad viene ricreato per non contare due volte le note eliminate dal cestino.
+    static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE notes ADD COLUMN deletedAt INTEGER");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_notes_deletedAt` ON `notes` (`deletedAt`)");
+            db.execSQL("ALTER TABLE secure_files ADD COLUMN deletedAt INTEGER");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_secure_files_deletedAt` ON `secure_files` (`deletedAt`)");
+            db.execSQL("DROP TRIGGER IF EXISTS notes_tags_ad");
+            createTagTriggers(db);
+        }
+    };
+
+    // Allegati delle note: tabella di collegamento tra notes e secure_files
+    static final Migration MIGRATION_13_14 = new Migration(13, 14) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `note_attachments` (`noteId` INTEGER NOT NULL, " +
+                    "`secureFileId` INTEGER NOT NULL, PRIMARY KEY(`noteId`, `secureFileId`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_note_attachments_secureFileId` " +
+                    "ON `note_attachments` (`secureFileId`)");
+            createAttachmentTriggers(db);
+        }
+    };
+
+    /**
+     * Rimuovono i collegamenti quando la nota o il file vengono eliminati definitivamente.
+     * Lo spostamento nel cestino non li tocca, così il ripristino ritrova gli allegati.
+     */
+    static void createAttachmentTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS notes_attachments_ad AFTER DELETE ON notes BEGIN " +
+                "DELETE FROM note_attachments WHERE noteId = OLD.id; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS secure_files_attachments_ad AFTER DELETE ON secure_files BEGIN " +
+                "DELETE FROM note_attachments WHERE secureFileId = OLD.id; END");
+    }
+
     public static SecureNoteDB getInstance(final Context context) {
         if (INSTANCE == null) {
             synchronized (SecureNoteDB.class) {
@@ -50,25 +368,76 @@ public abstract class SecureNoteDB extends RoomDatabase {
 
     private static SecureNoteDB buildDatabase(Context context) {
         final byte[] passphrase = PassphraseManager.getPassphrase(context);
-        final SupportFactory factory = new SupportFactory(passphrase);
-        
-        return Room.databaseBuilder(context.getApplicationContext(),
-                        SecureNoteDB.class, DB_NAME)
-                .openHelperFactory(factory)
-                .fallbackToDestructiveMigration()
-                .addCallback(new RoomDatabase.Callback() {
-                    @Override
-                    public void onCreate(androidx.sqlite.db.SupportSQLiteDatabase db) {
-                        super.onCreate(db);
-                        Log.d(TAG, "Database creato con successo");
-                    }
+        final byte[] rawKey = PassphraseManager.toRawKey(passphrase);
+        // Finché la ricifratura non è confermata il database si apre ancora con la passphrase
+        final boolean useRawKey = PassphraseManager.isRawKeyEnabled(context)
+                || migrateToRawKey(context, passphrase, rawKey);
 
-                    @Override
-                    public void onOpen(androidx.sqlite.db.SupportSQLiteDatabase db) {
-                        super.onOpen(db);
-                        Log.d(TAG, "Database aperto con successo");
-                    }
-                })
+        return configure(Room.databaseBuilder(context.getApplicationContext(),
+                        SecureNoteDB.class, DB_NAME), useRawKey ? rawKey : passphrase)
+                .addMigrations(MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10,
+                        MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13, MIGRATION_13_14)
+                .fallbackToDestructiveMigration()
+                // Le versioni dalla 15 alla 19 sono esistite solo nelle build di sviluppo
+                .fallbackToDestructiveMigrationOnDowngrade()
                 .build();
     }
-} 
\ No newline at end of file
+
+    // Ricifra con la chiave grezza un database creato con la passphrase, che SQLCipher
+    // passava ad ogni apertura per PBKDF2. Il flag viene salvato solo dopo aver verificato che la
+    // chiave grezza apre il database: se la ricifratura fallisce, o nessuna delle due chiavi
+    // funziona, si riprova al prossimo avvio. Restituisce true se va usata la chiave grezza.
+    private static boolean migrateToRawKey(Context context, byte[] passphrase, byte[] rawKey) {
+        File dbFile = context.getDatabasePath(DB_NAME);
+        if (!dbFile.exists()) {
+            PassphraseManager.setRawKeyEnabled(context);
+            return true;
+        }
+        long start = SystemClock.elapsedRealtime();
+        net.sqlcipher.database.SQLiteDatabase.loadLibs(context);
+        net.sqlcipher.database.SQLiteDatabase database = openWithKey(dbFile, passphrase);
+        if (database != null) {
+            try {
+                // La ricifratura non è supportata in WAL: Room lo riattiva alla prossima apertura
+                database.rawExecSQL("PRAGMA journal_mode = DELETE");
+                database.rawExecSQL("PRAGMA rekey = \"" + new String(rawKey, StandardCharsets.US_ASCII) + "\"");
+                Log.d(TAG, "Database ricifrato con chiave grezza in " + (SystemClock.elapsedRealtime() - start) + " ms");
+            } catch (Exception e) {
+                Log.e(TAG, "Ricifratura con chiave grezza fallita: " + e.getMessage());
+                return false;
+            } finally {
+                database.close();
+            }
+        }
+        // Anche senza ricifratura la chiave grezza può già funzionare: un avvio precedente
+        // ha ricifrato il database ma non è arrivato a salvare il flag
+        net.sqlcipher.database.SQLiteDatabase check = openWithKey(dbFile, rawKey);
+        if (check == null) {
+            Log.e(TAG, "Database non apribile con la chiave grezza, flag non salvato");
+            return false;
+        }
+        check.close();
+        PassphraseManager.setRawKeyEnabled(context);
+        return true;
+    }
+
+    // Apre il database con la chiave indicata, null se la chiave non è quella giusta
+    private static net.sqlcipher.database.SQLiteDatabase openWithKey(File dbFile, byte[] key) {
+        net.sqlcipher.database.SQLiteDatabase database = null;
+        try {
+            database = net.sqlcipher.database.SQLiteDatabase.openDatabase(dbFile.getPath(), key.clone(),
+                    null, net.sqlcipher.database.SQLiteDatabase.OPEN_READWRITE, null);
+            // La chiave viene verificata solo alla prima lettura delle pagine
+            try (Cursor cursor = database.rawQuery("SELECT count(*) FROM sqlite_master", null)) {
+                cursor.moveToFirst();
+            }
+            return database;
+        } catch (Exception e) {
+            Log.w(TAG, "Apertura del database fallita: " + e.getMessage());
+            if (database != null) {
+                database.close();
+            }
+            return null;
+        }
+    }
+}
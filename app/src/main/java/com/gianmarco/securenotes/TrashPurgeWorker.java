@@ -0,0 +1,93 @@
+package com.gianmarco.securenotes;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.gianmarco.securenotes.file.SecureFileRepository;
+import com.gianmarco.securenotes.note.NoteRepository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Svuota il cestino: elimina le note e i file scaduti con una transazione per tabella,
+ * poi rimuove i blob cifrati dal disco a blocchi, fermandosi tra un blocco e l'altro se
+ * il sistema lo chiede. I blob rimasti vengono ritrovati come orfani all'esecuzione successiva.
+ */
+public class TrashPurgeWorker extends Worker {
+    private static final String TAG = "TrashPurgeWorker";
+    private static final String WORK_NAME = "trash_purge";
+    private static final String EMPTY_WORK_NAME = "trash_empty";
+    private static final String KEY_EMPTY = "empty_trash";
+    // Tempo per cui un elemento resta ripristinabile
+    public static final long RETENTION_MS = TimeUnit.DAYS.toMillis(30);
+    private static final int UNLINK_BATCH_SIZE = 50;
+    // I blob più recenti possono appartenere a un caricamento non ancora registrato nel database
+    private static final long ORPHAN_MIN_AGE_MS = TimeUnit.DAYS.toMillis(1);
+
+    public TrashPurgeWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(TrashPurgeWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Elimina subito tutto il contenuto del cestino, senza attendere la scadenza
+     */
+    public static void emptyNow(Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(TrashPurgeWorker.class)
+                .setInputData(new Data.Builder().putBoolean(KEY_EMPTY, true).build())
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(EMPTY_WORK_NAME, ExistingWorkPolicy.REPLACE, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        long now = System.currentTimeMillis();
+        long cutoff = getInputData().getBoolean(KEY_EMPTY, false) ? Long.MAX_VALUE : now - RETENTION_MS;
+        try {
+            int notes = new NoteRepository(context).purgeTrashSync(cutoff);
+
+            SecureFileRepository fileRepo = new SecureFileRepository(context);
+            Set<String> blobs = new LinkedHashSet<>(fileRepo.purgeTrashSync(cutoff));
+            blobs.addAll(fileRepo.findOrphanBlobsSync(now - ORPHAN_MIN_AGE_MS));
+
+            List<String> pending = new ArrayList<>(blobs);
+            for (int from = 0; from < pending.size(); from += UNLINK_BATCH_SIZE) {
+                if (isStopped()) {
+                    return Result.retry();
+                }
+                fileRepo.deleteBlobsSync(pending.subList(from, Math.min(from + UNLINK_BATCH_SIZE, pending.size())));
+            }
+            Log.i(TAG, "Cestino svuotato: " + notes + " note, " + pending.size() + " file");
+        } catch (Exception e) {
+            Log.e(TAG, "Errore durante lo svuotamento del cestino: " + e.getMessage());
+            return Result.retry();
+        }
+        return Result.success();
+    }
+}
@@ -0,0 +1,69 @@
+package com.gianmarco.securenotes;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Scrive in streaming l'archivio zip delle esportazioni multiple. I nomi delle voci vengono
+ * ripuliti dai caratteri non validi e resi univoci ("nome (2).txt"), così due note con lo
+ * stesso titolo non si sovrascrivono.
+ */
+public class ZipExportWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_NAME_LENGTH = 100;
+
+    private final ZipOutputStream zipOut;
+    private final Set<String> usedNames = new HashSet<>();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    public ZipExportWriter(OutputStream out) {
+        this.zipOut = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+    }
+
+    public void putText(String name, String text) throws IOException {
+        zipOut.putNextEntry(new ZipEntry(uniqueName(name)));
+        zipOut.write((text != null ? text : "").getBytes(StandardCharsets.UTF_8));
+        zipOut.closeEntry();
+    }
+
+    public void putStream(String name, InputStream in) throws IOException {
+        zipOut.putNextEntry(new ZipEntry(uniqueName(name)));
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            zipOut.write(buffer, 0, len);
+        }
+        zipOut.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipOut.close();
+    }
+
+    private String uniqueName(String name) {
+        String clean = name == null ? "" : name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+        if (clean.isEmpty()) {
+            clean = "senza_titolo";
+        }
+        if (clean.length() > MAX_NAME_LENGTH) {
+            clean = clean.substring(0, MAX_NAME_LENGTH);
+        }
+        int dot = clean.lastIndexOf('.');
+        String base = dot > 0 ? clean.substring(0, dot) : clean;
+        String extension = dot > 0 ? clean.substring(dot) : "";
+        String candidate = clean;
+        for (int i = 2; !usedNames.add(candidate.toLowerCase()); i++) {
+            candidate = base + " (" + i + ")" + extension;
+        }
+        return candidate;
+    }
+}
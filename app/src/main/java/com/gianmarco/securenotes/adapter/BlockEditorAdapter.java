@@ -0,0 +1,148 @@
+package com.gianmarco.securenotes.adapter;
+
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.KeyEvent;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.gianmarco.securenotes.R;
+import com.gianmarco.securenotes.note.BlockDocument;
+
+/**
+ * Editor a blocchi per le note molto grandi: ogni paragrafo è un EditText riciclato,
+ * così vengono misurati e disegnati solo i blocchi visibili. Le modifiche aggiornano
+ * solo il blocco corrispondente del documento.
+ * Il tasto cancella all'inizio di un blocco lo unisce al precedente (con le tastiere software
+ * funziona se la tastiera invia KEYCODE_DEL quando non c'è testo prima del cursore, come fanno le
+ * più diffuse); un blocco che cresce oltre BlockDocument.SPLIT_BLOCK_CHARS viene diviso di nuovo.
+ */
+public class BlockEditorAdapter extends RecyclerView.Adapter<BlockEditorAdapter.BlockViewHolder> {
+
+    private final BlockDocument document;
+    private final OnBlockEditedListener onBlockEditedListener;
+    // Blocco che riceve il focus al prossimo bind, dopo un'unione o una divisione
+    private int focusPosition = RecyclerView.NO_POSITION;
+    private int focusOffset;
+
+    public interface OnBlockEditedListener {
+        void onBlockEdited();
+    }
+
+    public BlockEditorAdapter(BlockDocument document, OnBlockEditedListener onBlockEditedListener) {
+        this.document = document;
+        this.onBlockEditedListener = onBlockEditedListener;
+    }
+
+    @NonNull
+    @Override
+    public BlockViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_editor_block, parent, false);
+        return new BlockViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull BlockViewHolder holder, int position) {
+        holder.bind(document.getBlock(position));
+        if (position == focusPosition) {
+            focusPosition = RecyclerView.NO_POSITION;
+            holder.focus(focusOffset);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return document.size();
+    }
+
+    private void mergeWithPrevious(int position) {
+        focusOffset = document.mergeWithPrevious(position);
+        focusPosition = position - 1;
+        notifyItemRemoved(position);
+        notifyItemChanged(position - 1);
+        onBlockEditedListener.onBlockEdited();
+    }
+
+    private void splitBlock(int position, int cursor) {
+        int count = document.splitBlock(position);
+        if (count == 1) {
+            return;
+        }
+        // Il cursore resta nel blocco che contiene la sua posizione
+        int target = position;
+        int offset = cursor;
+        while (target < position + count - 1 && offset > document.getBlock(target).length()) {
+            offset -= document.getBlock(target).length() + 1;
+            target++;
+        }
+        focusPosition = target;
+        focusOffset = offset;
+        notifyItemChanged(position);
+        notifyItemRangeInserted(position + 1, count - 1);
+    }
+
+    class BlockViewHolder extends RecyclerView.ViewHolder {
+        private final EditText editBlock;
+        private boolean binding;
+
+        BlockViewHolder(@NonNull View itemView) {
+            super(itemView);
+            editBlock = itemView.findViewById(R.id.edit_block);
+            editBlock.addTextChangedListener(new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                }
+
+                @Override
+                public void onTextChanged(CharSequence s, int start, int before, int count) {
+                }
+
+                @Override
+                public void afterTextChanged(Editable s) {
+                    int position = getBindingAdapterPosition();
+                    if (binding || position == RecyclerView.NO_POSITION) {
+                        return;
+                    }
+                    document.setBlock(position, s.toString());
+                    onBlockEditedListener.onBlockEdited();
+                    if (s.length() > BlockDocument.SPLIT_BLOCK_CHARS) {
+                        // Fuori dal TextWatcher, che non deve modificare la lista dei blocchi
+                        editBlock.post(() -> {
+                            int current = getBindingAdapterPosition();
+                            if (current != RecyclerView.NO_POSITION) {
+                                splitBlock(current, editBlock.getSelectionEnd());
+                            }
+                        });
+                    }
+                }
+            });
+            editBlock.setOnKeyListener((v, keyCode, event) -> {
+                int position = getBindingAdapterPosition();
+                if (keyCode != KeyEvent.KEYCODE_DEL || event.getAction() != KeyEvent.ACTION_DOWN
+                        || position == RecyclerView.NO_POSITION || position == 0
+                        || editBlock.getSelectionStart() != 0 || editBlock.getSelectionEnd() != 0) {
+                    return false;
+                }
+                mergeWithPrevious(position);
+                return true;
+            });
+        }
+
+        void bind(String block) {
+            binding = true;
+            editBlock.setText(block);
+            binding = false;
+        }
+
+        void focus(int offset) {
+            editBlock.requestFocus();
+            editBlock.setSelection(Math.min(offset, editBlock.length()));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.gianmarco.securenotes.adapter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Righe selezionate di una lista, per id: la selezione resta valida quando la lista
+ * viene aggiornata o paginata. La modalità selezione è attiva finché c'è almeno un id.
+ */
+public class ItemSelection {
+
+    public interface Listener {
+        void onSelectionChanged(int count);
+    }
+
+    private final Set<Long> selectedIds = new LinkedHashSet<>();
+    private Listener listener;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public boolean isActive() {
+        return !selectedIds.isEmpty();
+    }
+
+    public boolean isSelected(long id) {
+        return selectedIds.contains(id);
+    }
+
+    public int size() {
+        return selectedIds.size();
+    }
+
+    public void toggle(long id) {
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
+        }
+        notifyChanged();
+    }
+
+    public void clear() {
+        if (selectedIds.isEmpty()) {
+            return;
+        }
+        selectedIds.clear();
+        notifyChanged();
+    }
+
+    /**
+     * Copia degli id selezionati, nell'ordine di selezione
+     */
+    public List<Long> getSelectedIds() {
+        return new ArrayList<>(selectedIds);
+    }
+
+    private void notifyChanged() {
+        if (listener != null) {
+            listener.onSelectionChanged(selectedIds.size());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.gianmarco.securenotes.adapter;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.gianmarco.securenotes.R;
+import com.gianmarco.securenotes.markdown.MarkdownRenderer;
+
+/**
+ * Modalità lettura dell'editor: un blocco Markdown per riga. I blocchi invariati tra due
+ * aperture non vengono ricollegati e il rendering di ognuno arriva dalla cache di MarkdownRenderer.
+ */
+public class MarkdownBlockAdapter extends ListAdapter<String, MarkdownBlockAdapter.BlockViewHolder> {
+
+    private static final DiffUtil.ItemCallback<String> DIFF_CALLBACK = new DiffUtil.ItemCallback<String>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull String oldItem, @NonNull String newItem) {
+            return oldItem.equals(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull String oldItem, @NonNull String newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    private final MarkdownRenderer renderer = MarkdownRenderer.getInstance();
+
+    public MarkdownBlockAdapter() {
+        super(DIFF_CALLBACK);
+    }
+
+    @NonNull
+    @Override
+    public BlockViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_markdown_block, parent, false);
+        return new BlockViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull BlockViewHolder holder, int position) {
+        holder.textBlock.setText(renderer.renderBlock(getItem(position)));
+    }
+
+    static class BlockViewHolder extends RecyclerView.ViewHolder {
+        final TextView textBlock;
+
+        BlockViewHolder(@NonNull View itemView) {
+            super(itemView);
+            textBlock = itemView.findViewById(R.id.text_block);
+        }
+    }
+}
@@ -1,37 +1,91 @@
 package com.gianmarco.securenotes.adapter;
 
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageButton;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.gianmarco.securenotes.note.Note;
+import com.gianmarco.securenotes.markdown.MarkdownRenderer;
+import com.gianmarco.securenotes.note.NoteSummary;
 import com.gianmarco.securenotes.R;
+import com.google.android.material.card.MaterialCardView;
 
 import java.util.List;
+import java.util.Objects;
 
-public class NoteAdapter extends RecyclerView.Adapter<NoteAdapter.NoteViewHolder> {
+/**
+ * Adapter paginato delle note. Le differenze tra due liste vengono calcolate in background
+ * da PagingDataAdapter; le righe modificate ricevono un payload con i soli campi cambiati.
+ */
+public class NoteAdapter extends PagingDataAdapter<NoteSummary, NoteAdapter.NoteViewHolder> {
+
+    static final int PAYLOAD_TITLE = 1;
+    static final int PAYLOAD_PREVIEW = 1 << 1;
+    static final int PAYLOAD_SELECTION = 1 << 2;
 
-    private List<Note> notes;
     private final OnNoteClickListener listener;
     private final OnNoteDeleteListener deleteListener;
+    private final ItemSelection selection;
+    // Le anteprime condividono la cache degli span con la modalità lettura dell'editor
+    private final MarkdownRenderer markdownRenderer = MarkdownRenderer.getInstance();
 
     public interface OnNoteClickListener {
-        void onNoteClick(Note note);
+        void onNoteClick(NoteSummary note);
+
+        // Chiamato alla pressione, prima del click, per anticipare il caricamento della nota
+        void onNotePressed(NoteSummary note);
     }
 
     public interface OnNoteDeleteListener {
-        void onNoteDelete(Note note);
+        void onNoteDelete(NoteSummary note);
     }
 
-    public NoteAdapter(List<Note> notes, OnNoteClickListener listener, OnNoteDeleteListener deleteListener) {
-        this.notes = notes;
+    // Ogni salvataggio aggiorna lastModified, quindi basta confrontare id e lastModified
+    private static final DiffUtil.ItemCallback<NoteSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<NoteSummary>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull NoteSummary oldItem, @NonNull NoteSummary newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull NoteSummary oldItem, @NonNull NoteSummary newItem) {
+            return oldItem.getLastModified() == newItem.getLastModified();
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(@NonNull NoteSummary oldItem, @NonNull NoteSummary newItem) {
+            int changes = 0;
+            if (!Objects.equals(oldItem.getTitle(), newItem.getTitle())) {
+                changes |= PAYLOAD_TITLE;
+            }
+            if (!Objects.equals(oldItem.getPreview(), newItem.getPreview())) {
+                changes |= PAYLOAD_PREVIEW;
+            }
+            return changes;
+        }
+    };
+
+    public NoteAdapter(OnNoteClickListener listener, OnNoteDeleteListener deleteListener, ItemSelection selection) {
+        super(DIFF_CALLBACK);
         this.listener = listener;
         this.deleteListener = deleteListener;
+        this.selection = selection;
+    }
+
+    /**
+     * Aggiorna solo lo stato di selezione delle righe visibili
+     */
+    public void refreshSelection() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
     }
 
     @NonNull
@@ -43,22 +97,29 @@ public class NoteAdapter extends RecyclerView.Adapter<NoteAdapter.NoteViewHolder
 
     @Override
     public void onBindViewHolder(@NonNull NoteViewHolder holder, int position) {
-        Note note = notes.get(position);
-        holder.bind(note, listener, deleteListener);
+        NoteSummary note = getItem(position);
+        if (note == null) {
+            holder.bindPlaceholder();
+        } else {
+            holder.bind(note);
+        }
     }
 
     @Override
-    public int getItemCount() {
-        return notes.size();
-    }
-
-    public void updateNotes(List<Note> newNotes) {
-        this.notes.clear();
-        this.notes.addAll(newNotes);
-        notifyDataSetChanged();
+    public void onBindViewHolder(@NonNull NoteViewHolder holder, int position, @NonNull List<Object> payloads) {
+        NoteSummary note = getItem(position);
+        if (payloads.isEmpty() || note == null) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        int changes = 0;
+        for (Object payload : payloads) {
+            changes |= (Integer) payload;
+        }
+        holder.bindChanges(note, changes);
     }
 
-    static class NoteViewHolder extends RecyclerView.ViewHolder {
+    class NoteViewHolder extends RecyclerView.ViewHolder {
         TextView titleTextView;
         TextView contentPreviewTextView;
         ImageButton deleteButton;
@@ -68,17 +129,81 @@ public class NoteAdapter extends RecyclerView.Adapter<NoteAdapter.NoteViewHolder
             titleTextView = itemView.findViewById(R.id.text_view_title);
             contentPreviewTextView = itemView.findViewById(R.id.text_view_content_preview);
             deleteButton = itemView.findViewById(R.id.button_delete_note);
-        }
 
-        public void bind(final Note note, final OnNoteClickListener listener, final OnNoteDeleteListener deleteListener) {
-            titleTextView.setText(note.getTitle());
-            contentPreviewTextView.setText(note.getContent());
-            itemView.setOnClickListener(v -> listener.onNoteClick(note));
+            // I listener leggono la nota dalla posizione corrente, così un bind parziale non deve reimpostarli
+            // Con una selezione attiva il tocco seleziona invece di aprire; la pressione lunga la avvia
+            itemView.setOnClickListener(v -> {
+                NoteSummary note = currentNote();
+                if (note == null) {
+                    return;
+                }
+                if (selection.isActive()) {
+                    selection.toggle(note.getId());
+                } else {
+                    listener.onNoteClick(note);
+                }
+            });
+            itemView.setOnLongClickListener(v -> {
+                NoteSummary note = currentNote();
+                if (note != null) {
+                    selection.toggle(note.getId());
+                }
+                return note != null;
+            });
+            itemView.setOnTouchListener((v, event) -> {
+                if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                    NoteSummary note = currentNote();
+                    if (note != null) {
+                        listener.onNotePressed(note);
+                    }
+                }
+                return false;
+            });
             deleteButton.setOnClickListener(v -> {
-                if (deleteListener != null) {
+                NoteSummary note = currentNote();
+                if (note != null && deleteListener != null) {
                     deleteListener.onNoteDelete(note);
                 }
             });
         }
+
+        @Nullable
+        private NoteSummary currentNote() {
+            int position = getBindingAdapterPosition();
+            return position != RecyclerView.NO_POSITION ? peek(position) : null;
+        }
+
+        public void bind(final NoteSummary note) {
+            titleTextView.setText(note.getTitle());
+            contentPreviewTextView.setText(markdownRenderer.renderPreview(note.getPreview()));
+            itemView.setEnabled(true);
+            bindSelection(note);
+        }
+
+        void bindSelection(final NoteSummary note) {
+            ((MaterialCardView) itemView).setChecked(selection.isSelected(note.getId()));
+            deleteButton.setVisibility(selection.isActive() ? View.INVISIBLE : View.VISIBLE);
+        }
+
+        public void bindChanges(final NoteSummary note, int changes) {
+            if ((changes & PAYLOAD_TITLE) != 0) {
+                titleTextView.setText(note.getTitle());
+            }
+            if ((changes & PAYLOAD_PREVIEW) != 0) {
+                contentPreviewTextView.setText(markdownRenderer.renderPreview(note.getPreview()));
+            }
+            if ((changes & PAYLOAD_SELECTION) != 0) {
+                bindSelection(note);
+            }
+        }
+
+        // Riga non ancora caricata: mantiene l'altezza della lista senza dati
+        public void bindPlaceholder() {
+            titleTextView.setText(null);
+            contentPreviewTextView.setText(null);
+            deleteButton.setVisibility(View.INVISIBLE);
+            ((MaterialCardView) itemView).setChecked(false);
+            itemView.setEnabled(false);
+        }
     }
-} 
\ No newline at end of file
+}
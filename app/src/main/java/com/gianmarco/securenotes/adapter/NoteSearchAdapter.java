@@ -0,0 +1,123 @@
+package com.gianmarco.securenotes.adapter;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageButton;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.gianmarco.securenotes.R;
+import com.gianmarco.securenotes.note.NoteSearchResult;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Adapter dei risultati di ricerca: le differenze vengono calcolate in background da ListAdapter
+ */
+public class NoteSearchAdapter extends ListAdapter<NoteSearchResult, NoteSearchAdapter.SearchResultViewHolder> {
+
+    private final OnResultClickListener listener;
+
+    public interface OnResultClickListener {
+        void onResultClick(NoteSearchResult result);
+    }
+
+    private static final DiffUtil.ItemCallback<NoteSearchResult> DIFF_CALLBACK = new DiffUtil.ItemCallback<NoteSearchResult>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull NoteSearchResult oldItem, @NonNull NoteSearchResult newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull NoteSearchResult oldItem, @NonNull NoteSearchResult newItem) {
+            return oldItem.getLastModified() == newItem.getLastModified()
+                    && Objects.equals(oldItem.getSnippet(), newItem.getSnippet());
+        }
+    };
+
+    public NoteSearchAdapter(OnResultClickListener listener) {
+        super(DIFF_CALLBACK);
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @NonNull
+    @Override
+    public SearchResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_note, parent, false);
+        return new SearchResultViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SearchResultViewHolder holder, int position) {
+        holder.bind(getItem(position));
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    public void updateResults(List<NoteSearchResult> newResults) {
+        submitList(newResults);
+    }
+
+    // Trasforma i delimitatori dello snippet in grassetto
+    static CharSequence highlight(String snippet) {
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        if (snippet == null) {
+            return builder;
+        }
+        int start = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == NoteSearchResult.HIGHLIGHT_START) {
+                start = builder.length();
+            } else if (c == NoteSearchResult.HIGHLIGHT_END) {
+                if (start >= 0) {
+                    builder.setSpan(new StyleSpan(Typeface.BOLD), start, builder.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    start = -1;
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder;
+    }
+
+    class SearchResultViewHolder extends RecyclerView.ViewHolder {
+        TextView titleTextView;
+        TextView snippetTextView;
+        ImageButton deleteButton;
+
+        public SearchResultViewHolder(@NonNull View itemView) {
+            super(itemView);
+            titleTextView = itemView.findViewById(R.id.text_view_title);
+            snippetTextView = itemView.findViewById(R.id.text_view_content_preview);
+            deleteButton = itemView.findViewById(R.id.button_delete_note);
+            deleteButton.setVisibility(View.GONE);
+
+            itemView.setOnClickListener(v -> {
+                int position = getBindingAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    listener.onResultClick(getItem(position));
+                }
+            });
+        }
+
+        public void bind(final NoteSearchResult result) {
+            titleTextView.setText(result.getTitle());
+            snippetTextView.setText(highlight(result.getSnippet()));
+        }
+    }
+}
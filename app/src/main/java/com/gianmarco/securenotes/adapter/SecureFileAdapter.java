@@ -8,23 +8,23 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.gianmarco.securenotes.R;
 import com.gianmarco.securenotes.file.SecureFile;
+import com.google.android.material.card.MaterialCardView;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
-public class SecureFileAdapter extends RecyclerView.Adapter<SecureFileAdapter.SecureFileViewHolder> {
+public class SecureFileAdapter extends ListAdapter<SecureFileItem, SecureFileAdapter.SecureFileViewHolder> {
+
+    private static final Object PAYLOAD_SELECTION = new Object();
     
-    private List<SecureFile> files = new ArrayList<>();
     private final OnFileClickListener onFileClickListener;
     private final OnFileDeleteListener onFileDeleteListener;
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
+    private final ItemSelection selection;
 
     public interface OnFileClickListener {
         void onFileClick(SecureFile secureFile);
@@ -34,10 +34,32 @@ public class SecureFileAdapter extends RecyclerView.Adapter<SecureFileAdapter.Se
         void onFileDelete(SecureFile secureFile);
     }
 
-    public SecureFileAdapter(List<SecureFile> files, OnFileClickListener onFileClickListener, OnFileDeleteListener onFileDeleteListener) {
-        this.files = files;
+    private static final DiffUtil.ItemCallback<SecureFileItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<SecureFileItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull SecureFileItem oldItem, @NonNull SecureFileItem newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull SecureFileItem oldItem, @NonNull SecureFileItem newItem) {
+            return oldItem.hasSameContent(newItem);
+        }
+    };
+
+    public SecureFileAdapter(OnFileClickListener onFileClickListener, OnFileDeleteListener onFileDeleteListener,
+                             ItemSelection selection) {
+        super(DIFF_CALLBACK);
         this.onFileClickListener = onFileClickListener;
         this.onFileDeleteListener = onFileDeleteListener;
+        this.selection = selection;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Aggiorna solo lo stato di selezione delle righe visibili
+     */
+    public void refreshSelection() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
     }
 
     @NonNull
@@ -50,18 +72,25 @@ public class SecureFileAdapter extends RecyclerView.Adapter<SecureFileAdapter.Se
 
     @Override
     public void onBindViewHolder(@NonNull SecureFileViewHolder holder, int position) {
-        holder.bind(files.get(position));
+        holder.bind(getItem(position));
     }
 
     @Override
-    public int getItemCount() {
-        return files.size();
+    public void onBindViewHolder(@NonNull SecureFileViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_SELECTION)) {
+            holder.bindSelection(getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
-    public void updateFiles(List<SecureFile> newFiles) {
-        this.files.clear();
-        this.files.addAll(newFiles);
-        notifyDataSetChanged();
+    public void updateFiles(List<SecureFileItem> newFiles) {
+        submitList(newFiles);
     }
 
     class SecureFileViewHolder extends RecyclerView.ViewHolder {
@@ -77,60 +106,45 @@ public class SecureFileAdapter extends RecyclerView.Adapter<SecureFileAdapter.Se
             textFileInfo = itemView.findViewById(R.id.text_file_info);
             buttonDelete = itemView.findViewById(R.id.button_delete);
 
+            // Con una selezione attiva il tocco seleziona invece di aprire; la pressione lunga la avvia
             itemView.setOnClickListener(v -> {
-                int position = getAdapterPosition();
-                if (position != RecyclerView.NO_POSITION && onFileClickListener != null) {
-                    onFileClickListener.onFileClick(files.get(position));
+                int position = getBindingAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                if (selection.isActive()) {
+                    selection.toggle(getItem(position).getId());
+                } else if (onFileClickListener != null) {
+                    onFileClickListener.onFileClick(getItem(position).getFile());
+                }
+            });
+            itemView.setOnLongClickListener(v -> {
+                int position = getBindingAdapterPosition();
+                if (position == RecyclerView.NO_POSITION) {
+                    return false;
                 }
+                selection.toggle(getItem(position).getId());
+                return true;
             });
 
             buttonDelete.setOnClickListener(v -> {
-                int position = getAdapterPosition();
+                int position = getBindingAdapterPosition();
                 if (position != RecyclerView.NO_POSITION && onFileDeleteListener != null) {
-                    onFileDeleteListener.onFileDelete(files.get(position));
+                    onFileDeleteListener.onFileDelete(getItem(position).getFile());
                 }
             });
         }
 
-        public void bind(SecureFile secureFile) {
-            textFileName.setText(secureFile.getOriginalFileName());
-            
-            if (secureFile.isImage()) {
-                imageFileType.setImageResource(android.R.drawable.ic_menu_gallery);
-            } else if (secureFile.isPdf()) {
-                imageFileType.setImageResource(android.R.drawable.ic_menu_view);
-            } else if (secureFile.isDocument()) {
-                imageFileType.setImageResource(android.R.drawable.ic_menu_edit);
-            } else {
-                imageFileType.setImageResource(android.R.drawable.ic_menu_help);
-            }
-
-            String fileInfo = String.format("%s • %s • %s",
-                    getFileTypeDescription(secureFile.getMimeType()),
-                    secureFile.getFormattedFileSize(),
-                    dateFormat.format(new Date(secureFile.getUploadDate()))
-            );
-            textFileInfo.setText(fileInfo);
+        public void bind(SecureFileItem item) {
+            textFileName.setText(item.getName());
+            imageFileType.setImageResource(item.getIconRes());
+            textFileInfo.setText(item.getInfo());
+            bindSelection(item);
         }
 
-        private String getFileTypeDescription(String mimeType) {
-            if (mimeType == null) return "File";
-            
-            if (mimeType.startsWith("image/")) {
-                return "Immagine";
-            } else if (mimeType.equals("application/pdf")) {
-                return "PDF";
-            } else if (mimeType.equals("application/msword") || mimeType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
-                return "Word";
-            } else if (mimeType.equals("application/vnd.ms-excel") || mimeType.equals("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")) {
-                return "Excel";
-            } else if (mimeType.equals("application/vnd.ms-powerpoint") || mimeType.equals("application/vnd.openxmlformats-officedocument.presentationml.presentation")) {
-                return "PowerPoint";
-            } else if (mimeType.startsWith("text/")) {
-                return "Testo";
-            } else {
-                return "File";
-            }
+        void bindSelection(SecureFileItem item) {
+            ((MaterialCardView) itemView).setChecked(selection.isSelected(item.getId()));
+            buttonDelete.setVisibility(selection.isActive() ? View.INVISIBLE : View.VISIBLE);
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package com.gianmarco.securenotes.adapter;
+
+import androidx.annotation.DrawableRes;
+
+import com.gianmarco.securenotes.file.SecureFile;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Modello immutabile di una riga dell'archivio, con testi e icona già calcolati
+ * fuori dal main thread: il bind si limita ad assegnarli alle view.
+ */
+public final class SecureFileItem {
+
+    private final SecureFile file;
+    private final String name;
+    private final String info;
+    @DrawableRes
+    private final int iconRes;
+
+    private SecureFileItem(SecureFile file, String name, String info, int iconRes) {
+        this.file = file;
+        this.name = name;
+        this.info = info;
+        this.iconRes = iconRes;
+    }
+
+    /**
+     * Prepara la riga per un file; dateFormat non è thread-safe e va usato da un solo thread
+     */
+    public static SecureFileItem from(SecureFile secureFile, SimpleDateFormat dateFormat) {
+        String info = getFileTypeDescription(secureFile.getMimeType())
+                + " • " + secureFile.getFormattedFileSize()
+                + " • " + dateFormat.format(new Date(secureFile.getUploadDate()));
+        return new SecureFileItem(secureFile, secureFile.getOriginalFileName(), info, getIconRes(secureFile));
+    }
+
+    public SecureFile getFile() {
+        return file;
+    }
+
+    public long getId() {
+        return file.getId();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getInfo() {
+        return info;
+    }
+
+    public int getIconRes() {
+        return iconRes;
+    }
+
+    public boolean hasSameContent(SecureFileItem other) {
+        return iconRes == other.iconRes
+                && Objects.equals(name, other.name)
+                && Objects.equals(info, other.info);
+    }
+
+    private static int getIconRes(SecureFile secureFile) {
+        if (secureFile.isImage()) {
+            return android.R.drawable.ic_menu_gallery;
+        } else if (secureFile.isPdf()) {
+            return android.R.drawable.ic_menu_view;
+        } else if (secureFile.isDocument()) {
+            return android.R.drawable.ic_menu_edit;
+        } else {
+            return android.R.drawable.ic_menu_help;
+        }
+    }
+
+    private static String getFileTypeDescription(String mimeType) {
+        if (mimeType == null) return "File";
+
+        if (mimeType.startsWith("image/")) {
+            return "Immagine";
+        } else if (mimeType.equals("application/pdf")) {
+            return "PDF";
+        } else if (mimeType.equals("application/msword") || mimeType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
+            return "Word";
+        } else if (mimeType.equals("application/vnd.ms-excel") || mimeType.equals("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")) {
+            return "Excel";
+        } else if (mimeType.equals("application/vnd.ms-powerpoint") || mimeType.equals("application/vnd.openxmlformats-officedocument.presentationml.presentation")) {
+            return "PowerPoint";
+        } else if (mimeType.startsWith("text/")) {
+            return "Testo";
+        } else {
+            return "File";
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.gianmarco.securenotes.file;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import com.gianmarco.securenotes.ListSort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query dell'archivio con ordinamento, famiglia di tipo MIME e intervallo di date di caricamento.
+ * Come in NoteListQuery, i filtri sulle colonne diverse da quella dell'ordinamento usano il + unario
+ * perché SQLite scorra l'indice dell'ordinamento.
+ */
+public class FileListQuery {
+
+    private final ListSort sort;
+    private final String mimeFamily;
+    private final Long uploadedFrom;
+    private final Long uploadedTo;
+
+    /**
+     * @param mimeFamily prefisso del tipo MIME (es. "image/"), null per tutti i file
+     * @param uploadedFrom inizio incluso dell'intervallo, null per nessun limite
+     * @param uploadedTo fine esclusa dell'intervallo, null per nessun limite
+     */
+    public FileListQuery(ListSort sort, String mimeFamily, Long uploadedFrom, Long uploadedTo) {
+        this.sort = sort;
+        this.mimeFamily = mimeFamily;
+        this.uploadedFrom = uploadedFrom;
+        this.uploadedTo = uploadedTo;
+    }
+
+    public ListSort getSort() {
+        return sort;
+    }
+
+    public String getMimeFamily() {
+        return mimeFamily;
+    }
+
+    public Long getUploadedFrom() {
+        return uploadedFrom;
+    }
+
+    public Long getUploadedTo() {
+        return uploadedTo;
+    }
+
+    public SimpleSQLiteQuery build() {
+        List<Object> args = new ArrayList<>();
+        return new SimpleSQLiteQuery(toSql(args), args.toArray());
+    }
+
+    private String toSql(List<Object> args) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM secure_files WHERE +deletedAt IS NULL");
+        if (mimeFamily != null) {
+            // Intervallo sul prefisso invece di LIKE, che non userebbe l'indice
+            String column = sort == ListSort.TYPE ? "mimeType" : "+mimeType";
+            sql.append(" AND ").append(column).append(" >= ? AND ").append(column).append(" < ?");
+            args.add(mimeFamily);
+            args.add(upperBound(mimeFamily));
+        }
+        String dateColumn = sort == ListSort.CREATED || sort == ListSort.MODIFIED ? "uploadDate" : "+uploadDate";
+        if (uploadedFrom != null) {
+            sql.append(" AND ").append(dateColumn).append(" >= ?");
+            args.add(uploadedFrom);
+        }
+        if (uploadedTo != null) {
+            sql.append(" AND ").append(dateColumn).append(" < ?");
+            args.add(uploadedTo);
+        }
+        return sql.append(" ORDER BY ").append(orderBy()).toString();
+    }
+
+    private String orderBy() {
+        switch (sort) {
+            case TITLE:
+                return "nameKey, id";
+            case SIZE:
+                return "fileSize DESC, id DESC";
+            case TYPE:
+                return "mimeType, uploadDate DESC";
+            case CREATED:
+            case MODIFIED:
+            default:
+                return "uploadDate DESC, id DESC";
+        }
+    }
+
+    // Primo valore oltre tutte le stringhe che iniziano con il prefisso
+    static String upperBound(String prefix) {
+        char last = prefix.charAt(prefix.length() - 1);
+        return prefix.substring(0, prefix.length() - 1) + (char) (last + 1);
+    }
+}
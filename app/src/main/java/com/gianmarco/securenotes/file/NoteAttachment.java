@@ -0,0 +1,44 @@
+package com.gianmarco.securenotes.file;
+
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+
+/**
+ * Collegamento tra una nota e un file dell'archivio. La chiave primaria serve l'elenco degli
+ * allegati di una nota, l'indice su secureFileId la pulizia quando il file viene eliminato.
+ * Le righe orfane vengono rimosse dai trigger su notes e secure_files.
+ */
+@Entity(tableName = "note_attachments",
+        primaryKeys = {"noteId", "secureFileId"},
+        indices = {@Index(value = {"secureFileId"})})
+public class NoteAttachment {
+
+    private long noteId;
+    // id della riga in secure_files, non il nome del blob cifrato
+    private long secureFileId;
+
+    public NoteAttachment() {}
+
+    @Ignore
+    public NoteAttachment(long noteId, long secureFileId) {
+        this.noteId = noteId;
+        this.secureFileId = secureFileId;
+    }
+
+    public long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(long noteId) {
+        this.noteId = noteId;
+    }
+
+    public long getSecureFileId() {
+        return secureFileId;
+    }
+
+    public void setSecureFileId(long secureFileId) {
+        this.secureFileId = secureFileId;
+    }
+}
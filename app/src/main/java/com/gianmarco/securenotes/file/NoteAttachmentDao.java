@@ -0,0 +1,27 @@
+package com.gianmarco.securenotes.file;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface NoteAttachmentDao {
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void attach(NoteAttachment attachment);
+
+    @Query("DELETE FROM note_attachments WHERE noteId = :noteId AND secureFileId = :secureFileId")
+    void detach(long noteId, long secureFileId);
+
+    // Solo i metadati: il contenuto viene decifrato quando l'allegato viene aperto.
+    // CROSS JOIN fissa note_attachments come tabella esterna e l'ordine segue la chiave primaria.
+    @Query("SELECT secure_files.* FROM note_attachments " +
+            "CROSS JOIN secure_files ON secure_files.id = note_attachments.secureFileId " +
+            "WHERE note_attachments.noteId = :noteId AND +secure_files.deletedAt IS NULL " +
+            "ORDER BY note_attachments.secureFileId")
+    LiveData<List<SecureFile>> getAttachments(long noteId);
+}
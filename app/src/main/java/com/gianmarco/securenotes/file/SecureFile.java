@@ -2,9 +2,21 @@ package com.gianmarco.securenotes.file;
 
 import androidx.room.Entity;
 import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "secure_files")
+import java.util.Locale;
+
+@Entity(tableName = "secure_files",
+        indices = {
+                @Index(value = {"fileId"}, unique = true),
+                @Index(value = {"uploadDate"}),
+                @Index(value = {"fileSize"}),
+                @Index(value = {"nameKey"}),
+                // Per tipo, poi dal più recente: l'ordine dell'indice coincide con quello della lista
+                @Index(value = {"mimeType", "uploadDate"}, orders = {Index.Order.ASC, Index.Order.DESC}),
+                @Index(value = {"deletedAt"})
+        })
 public class SecureFile {
     @PrimaryKey(autoGenerate = true)
     private long id;
@@ -14,13 +26,17 @@ public class SecureFile {
     private String mimeType;
     private long fileSize;
     private long uploadDate;
+    // Nome in minuscolo per l'ordinamento alfabetico indicizzato
+    private String nameKey;
+    // Momento dello spostamento nel cestino, null per i file visibili
+    private Long deletedAt;
 
     public SecureFile() {}
 
     @Ignore
     public SecureFile(String fileId, String originalFileName, String mimeType, long fileSize) {
         this.fileId = fileId;
-        this.originalFileName = originalFileName;
+        setOriginalFileName(originalFileName);
         this.mimeType = mimeType;
         this.fileSize = fileSize;
         this.uploadDate = System.currentTimeMillis();
@@ -48,6 +64,15 @@ public class SecureFile {
 
     public void setOriginalFileName(String originalFileName) {
         this.originalFileName = originalFileName;
+        this.nameKey = originalFileName != null ? originalFileName.toLowerCase(Locale.ROOT) : null;
+    }
+
+    public String getNameKey() {
+        return nameKey;
+    }
+
+    public void setNameKey(String nameKey) {
+        this.nameKey = nameKey;
     }
 
     public String getMimeType() {
@@ -74,6 +99,14 @@ public class SecureFile {
         this.uploadDate = uploadDate;
     }
 
+    public Long getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(Long deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
     public String getFormattedFileSize() {
         if (fileSize < 1024) {
             return fileSize + " B";
@@ -6,37 +6,74 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
 import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 import java.util.List;
 
+/**
+ * I file nel cestino sono esclusi con {@code +deletedAt IS NULL}, come in NoteDao
+ */
 @Dao
 public interface SecureFileDao {
     
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insert(SecureFile secureFile);
+    long insert(SecureFile secureFile);
     
     @Update
     void update(SecureFile secureFile);
     
     @Delete
     void delete(SecureFile secureFile);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    long[] insertAll(List<SecureFile> secureFiles);
+
+    @Query("DELETE FROM secure_files WHERE id IN (:ids)")
+    int deleteByIds(List<Long> ids);
+
+    /**
+     * Sposta i file nel cestino con deletedAt = momento attuale, o li ripristina con null
+     */
+    @Query("UPDATE secure_files SET deletedAt = :deletedAt WHERE id IN (:ids)")
+    int setDeletedAt(List<Long> ids, Long deletedAt);
+
+    @Query("SELECT * FROM secure_files WHERE deletedAt IS NOT NULL ORDER BY deletedAt DESC")
+    LiveData<List<SecureFile>> getTrashedFiles();
+
+    @Query("SELECT * FROM secure_files WHERE deletedAt < :cutoff")
+    List<SecureFile> getTrashedFilesBefore(long cutoff);
+
+    // Tutti i blob referenziati, cestino compreso: serve a riconoscere i file orfani su disco
+    @Query("SELECT fileId FROM secure_files")
+    List<String> getAllFileIds();
     
-    @Query("SELECT * FROM secure_files ORDER BY uploadDate DESC")
+    @Query("SELECT * FROM secure_files WHERE +deletedAt IS NULL ORDER BY uploadDate DESC")
     LiveData<List<SecureFile>> getAllFiles();
     
+    /**
+     * Archivio con ordinamento e filtri scelti dall'utente
+     * @param query costruita da {@link FileListQuery#build()}
+     */
+    @RawQuery(observedEntities = SecureFile.class)
+    LiveData<List<SecureFile>> getFiles(SupportSQLiteQuery query);
+
     @Query("SELECT * FROM secure_files WHERE id = :id")
     LiveData<SecureFile> getFileById(long id);
     
     @Query("SELECT * FROM secure_files WHERE fileId = :fileId")
     SecureFile getFileByFileId(String fileId);
     
-    @Query("SELECT COUNT(*) FROM secure_files")
+    @Query("SELECT COUNT(*) FROM secure_files WHERE deletedAt IS NULL")
     LiveData<Integer> getFileCount();
     
-    @Query("SELECT SUM(fileSize) FROM secure_files")
+    @Query("SELECT SUM(fileSize) FROM secure_files WHERE deletedAt IS NULL")
     LiveData<Long> getTotalFileSize();
     
-    @Query("SELECT * FROM secure_files ORDER BY uploadDate DESC")
+    @Query("SELECT * FROM secure_files WHERE +deletedAt IS NULL ORDER BY uploadDate DESC")
     List<SecureFile> getAllFilesSync();
+
+    @Query("SELECT * FROM secure_files WHERE id IN (:ids) AND +deletedAt IS NULL")
+    List<SecureFile> getFilesByIds(List<Long> ids);
 } 
\ No newline at end of file
@@ -12,6 +12,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 public class SecureFileManager {
@@ -126,6 +128,22 @@ public class SecureFileManager {
         }
     }
 
+    /**
+     * Elenca gli ID dei file cifrati presenti su disco e scritti prima di modifiedBefore
+     */
+    public List<String> listFileIds(long modifiedBefore) {
+        List<String> fileIds = new ArrayList<>();
+        File[] files = secureFilesDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.lastModified() < modifiedBefore) {
+                    fileIds.add(file.getName());
+                }
+            }
+        }
+        return fileIds;
+    }
+
     /**
      * Verifica se un file esiste
      * @param fileId ID del file da verificare
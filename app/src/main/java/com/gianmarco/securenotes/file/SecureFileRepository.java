@@ -5,27 +5,47 @@ import android.net.Uri;
 import android.util.Log;
 
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 
 import com.gianmarco.securenotes.SecureNoteDB;
+import com.gianmarco.securenotes.ZipExportWriter;
+import com.gianmarco.securenotes.search.TrigramDao;
+import com.gianmarco.securenotes.search.TrigramEntry;
+import com.gianmarco.securenotes.search.TrigramIndex;
+import com.gianmarco.securenotes.search.TrigramMatch;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class SecureFileRepository {
     private static final String TAG = "SecureFileRepository";
+    private static final int SEARCH_LIMIT = 50;
+    private static final int BATCH_SIZE = 500;
     
+    private final SecureNoteDB db;
     private final SecureFileDao secureFileDao;
+    private final NoteAttachmentDao attachmentDao;
+    private final TrigramDao trigramDao;
     private final SecureFileManager secureFileManager;
     private final ExecutorService executorService;
     private final Context context;
 
     public SecureFileRepository(Context context) throws Exception {
         this.context = context.getApplicationContext();
-        SecureNoteDB db = SecureNoteDB.getInstance(this.context);
+        this.db = SecureNoteDB.getInstance(this.context);
         this.secureFileDao = db.secureFileDao();
+        this.attachmentDao = db.noteAttachmentDao();
+        this.trigramDao = db.trigramDao();
         this.secureFileManager = new SecureFileManager(this.context);
         this.executorService = Executors.newSingleThreadExecutor();
     }
@@ -39,7 +59,7 @@ public class SecureFileRepository {
                 String fileId = secureFileManager.saveSecureFile(fileUri, originalFileName);
                 long fileSize = secureFileManager.getFileSize(fileId);
                 SecureFile secureFile = new SecureFile(fileId, originalFileName, mimeType, fileSize);
-                secureFileDao.insert(secureFile);
+                insertIndexed(secureFile);
                 
                 Log.d(TAG, "File caricato con successo: " + originalFileName);
                 
@@ -49,6 +69,33 @@ public class SecureFileRepository {
         });
     }
 
+    /**
+     * Carica un file e lo allega alla nota
+     */
+    public void uploadAttachment(Uri fileUri, String originalFileName, String mimeType, long noteId) {
+        executorService.execute(() -> uploadFileSync(fileUri, originalFileName, mimeType, noteId));
+    }
+
+    /**
+     * Allegati della nota, solo metadati, con una query sulla chiave primaria di note_attachments
+     */
+    public LiveData<List<SecureFile>> getAttachments(long noteId) {
+        return attachmentDao.getAttachments(noteId);
+    }
+
+    /**
+     * Scollega il file dalla nota; il file resta nell'archivio
+     */
+    public void detachFile(long noteId, long secureFileId) {
+        executorService.execute(() -> {
+            try {
+                attachmentDao.detach(noteId, secureFileId);
+            } catch (Exception e) {
+                Log.e(TAG, "Errore nella rimozione dell'allegato: " + e.getMessage());
+            }
+        });
+    }
+
     /**
      * Carica un file cifrato
      */
@@ -57,20 +104,191 @@ public class SecureFileRepository {
     }
 
     /**
-     * Elimina un file
+     * Sposta il file nel cestino
      */
     public void deleteFile(SecureFile secureFile) {
+        deleteFiles(Collections.singletonList(secureFile.getId()));
+    }
+
+    /**
+     * Sposta più file nel cestino con un solo UPDATE per blocco: i blob cifrati restano su disco
+     * finché TrashPurgeWorker non li elimina, a dispositivo inattivo
+     * @return il numero di file spostati a operazione conclusa, -1 in caso di errore
+     */
+    public LiveData<Integer> deleteFiles(List<Long> ids) {
+        MutableLiveData<Integer> result = new MutableLiveData<>();
         executorService.execute(() -> {
             try {
-                secureFileManager.deleteSecureFile(secureFile.getFileId());
-                secureFileDao.delete(secureFile);
-                
-                Log.d(TAG, "File deleted successfully: " + secureFile.getOriginalFileName());
-                
+                setDeletedAtSync(ids, System.currentTimeMillis());
+                Log.d(TAG, "File spostati nel cestino: " + ids.size());
+                result.postValue(ids.size());
+            } catch (Exception e) {
+                Log.e(TAG, "Errore nello spostamento dei file nel cestino: " + e.getMessage());
+                result.postValue(-1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Decifra i file indicati in un archivio zip in chiaro, scritto in streaming un file alla volta
+     * @return il numero di file esportati a operazione conclusa, -1 in caso di errore
+     */
+    public LiveData<Integer> exportFiles(List<Long> ids, Uri destination) {
+        MutableLiveData<Integer> result = new MutableLiveData<>();
+        executorService.execute(() -> {
+            int exported = 0;
+            try (OutputStream out = context.getContentResolver().openOutputStream(destination)) {
+                if (out == null) {
+                    throw new IOException("Impossibile aprire la destinazione");
+                }
+                try (ZipExportWriter zip = new ZipExportWriter(out)) {
+                    for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+                        for (SecureFile secureFile : secureFileDao.getFilesByIds(ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())))) {
+                            try (InputStream in = secureFileManager.loadSecureFile(secureFile.getFileId())) {
+                                zip.putStream(secureFile.getOriginalFileName(), in);
+                                exported++;
+                            }
+                        }
+                    }
+                }
+                result.postValue(exported);
+            } catch (Exception e) {
+                Log.e(TAG, "Errore nell'esportazione dei file: " + e.getMessage());
+                result.postValue(-1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Riporta i file dal cestino all'archivio
+     */
+    public void restoreFiles(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        executorService.execute(() -> {
+            try {
+                setDeletedAtSync(ids, null);
+            } catch (Exception e) {
+                Log.e(TAG, "Errore nel ripristino dei file: " + e.getMessage());
+            }
+        });
+    }
+
+    private void setDeletedAtSync(List<Long> ids, Long deletedAt) {
+        db.runInTransaction(() -> {
+            for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+                secureFileDao.setDeletedAt(ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())), deletedAt);
+            }
+        });
+    }
+
+    public LiveData<List<SecureFile>> getTrashedFiles() {
+        return secureFileDao.getTrashedFiles();
+    }
+
+    /**
+     * Elimina dal database, in un'unica transazione, i file nel cestino da prima di cutoff.
+     * I blob cifrati non vengono toccati: vanno rimossi dopo con {@link #deleteBlobsSync(List)}.
+     * @return gli id dei blob non più referenziati
+     */
+    public List<String> purgeTrashSync(long cutoff) {
+        return db.runInTransaction(() -> {
+            List<SecureFile> expired = secureFileDao.getTrashedFilesBefore(cutoff);
+            List<Long> ids = new ArrayList<>(expired.size());
+            List<String> fileIds = new ArrayList<>(expired.size());
+            for (SecureFile secureFile : expired) {
+                ids.add(secureFile.getId());
+                fileIds.add(secureFile.getFileId());
+            }
+            for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+                List<Long> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+                secureFileDao.deleteByIds(batch);
+                trigramDao.deleteOwners(TrigramEntry.KIND_FILE, batch);
+            }
+            return fileIds;
+        });
+    }
+
+    /**
+     * Rimuove dal disco i blob cifrati indicati
+     */
+    public void deleteBlobsSync(List<String> fileIds) {
+        for (String fileId : fileIds) {
+            secureFileManager.deleteSecureFile(fileId);
+        }
+    }
+
+    /**
+     * Blob su disco senza metadati nel database, ad esempio rimasti da una pulizia interrotta.
+     * Quelli scritti dopo modifiedBefore vengono ignorati: i caricamenti cifrano il file prima
+     * di inserirne i metadati.
+     */
+    public List<String> findOrphanBlobsSync(long modifiedBefore) {
+        List<String> candidates = secureFileManager.listFileIds(modifiedBefore);
+        Set<String> referenced = new HashSet<>(secureFileDao.getAllFileIds());
+        List<String> orphans = new ArrayList<>();
+        for (String fileId : candidates) {
+            if (!referenced.contains(fileId)) {
+                orphans.add(fileId);
+            }
+        }
+        return orphans;
+    }
+
+    /**
+     * Inserisce i metadati di più file già cifrati su disco in un'unica transazione
+     */
+    public void insertAllSync(List<SecureFile> secureFiles) {
+        if (secureFiles.isEmpty()) {
+            return;
+        }
+        db.runInTransaction(() -> {
+            long[] ids = secureFileDao.insertAll(secureFiles);
+            for (int i = 0; i < ids.length; i++) {
+                trigramDao.replaceOwner(TrigramEntry.KIND_FILE, ids[i],
+                        TrigramIndex.entries(TrigramEntry.KIND_FILE, ids[i], secureFiles.get(i).getOriginalFileName()));
+            }
+        });
+    }
+
+    /**
+     * Inserisce i metadati del file e ne indicizza il nome per la ricerca
+     * @return l'id della riga inserita
+     */
+    private long insertIndexed(SecureFile secureFile) {
+        return db.runInTransaction(() -> {
+            long id = secureFileDao.insert(secureFile);
+            trigramDao.replaceOwner(TrigramEntry.KIND_FILE, id,
+                    TrigramIndex.entries(TrigramEntry.KIND_FILE, id, secureFile.getOriginalFileName()));
+            return id;
+        });
+    }
+
+    /**
+     * Cerca i file per nome tollerando errori di battitura
+     */
+    public LiveData<List<SecureFile>> searchFiles(String query) {
+        MutableLiveData<List<SecureFile>> results = new MutableLiveData<>();
+        executorService.execute(() -> {
+            try {
+                List<Long> ids = new ArrayList<>();
+                Map<Long, Double> scores = new HashMap<>();
+                for (TrigramMatch match : TrigramIndex.search(trigramDao, TrigramEntry.KIND_FILE, query, SEARCH_LIMIT)) {
+                    ids.add(match.getOwnerId());
+                    scores.put(match.getOwnerId(), match.getScore());
+                }
+                List<SecureFile> files = ids.isEmpty() ? new ArrayList<>() : secureFileDao.getFilesByIds(ids);
+                Collections.sort(files, (a, b) -> Double.compare(scores.get(b.getId()), scores.get(a.getId())));
+                results.postValue(files);
             } catch (Exception e) {
-                Log.e(TAG, "Error deleting file: " + e.getMessage());
+                Log.e(TAG, "Errore nella ricerca dei file: " + e.getMessage());
+                results.postValue(Collections.emptyList());
             }
         });
+        return results;
     }
 
     /**
@@ -80,6 +298,13 @@ public class SecureFileRepository {
         return secureFileDao.getAllFiles();
     }
 
+    /**
+     * Archivio ordinato e filtrato da SQLite secondo la query
+     */
+    public LiveData<List<SecureFile>> getFiles(FileListQuery query) {
+        return secureFileDao.getFiles(query.build());
+    }
+
 
     /**
      * Ottieni un file specifico
@@ -121,16 +346,30 @@ public class SecureFileRepository {
 
     /**
      * Carica in modo sincrono
+     * @param noteId nota a cui allegare il file, o un valore negativo per caricarlo solo nell'archivio
      */
-    public void uploadFileSync(Uri fileUri, String originalFileName, String mimeType, String noteId) {
+    public void uploadFileSync(Uri fileUri, String originalFileName, String mimeType, long noteId) {
         try {
-            String fileId = secureFileManager.saveSecureFile(fileUri, originalFileName);
-            long fileSize = secureFileManager.getFileSize(fileId);
-            SecureFile secureFile = new SecureFile(fileId, originalFileName, mimeType, fileSize);
-            secureFileDao.insert(secureFile);
+            SecureFile secureFile = saveFileSync(fileUri, originalFileName, mimeType);
+            db.runInTransaction(() -> {
+                long id = insertIndexed(secureFile);
+                if (noteId >= 0) {
+                    attachmentDao.attach(new NoteAttachment(noteId, id));
+                }
+            });
             Log.d(TAG, "File caricato con successo: " + originalFileName);
         } catch (Exception e) {
             Log.e(TAG, "Errore nel caricamento del file: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Cifra il file su disco e ne restituisce i metadati senza inserirli nel database,
+     * così chi importa molti file può salvarli poi con {@link #insertAllSync(List)}
+     */
+    public SecureFile saveFileSync(Uri fileUri, String originalFileName, String mimeType) throws Exception {
+        String fileId = secureFileManager.saveSecureFile(fileUri, originalFileName);
+        long fileSize = secureFileManager.getFileSize(fileId);
+        return new SecureFile(fileId, originalFileName, mimeType, fileSize);
+    }
+}
@@ -4,13 +4,14 @@ import android.app.Activity;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.EditText;
-import android.widget.ImageView;
+import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -26,9 +27,12 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.gianmarco.securenotes.ArchivePinManager;
+import com.gianmarco.securenotes.ListSort;
+import com.gianmarco.securenotes.ListSortPreferences;
 import com.gianmarco.securenotes.MainActivity;
 import com.gianmarco.securenotes.R;
 import com.gianmarco.securenotes.file.SecureFile;
+import com.gianmarco.securenotes.adapter.ItemSelection;
 import com.gianmarco.securenotes.adapter.SecureFileAdapter;
 import com.gianmarco.securenotes.file.SecureFileRepository;
 import com.gianmarco.securenotes.viewmodel.SettingsViewModel;
@@ -37,23 +41,30 @@ import com.google.android.material.snackbar.Snackbar;
 
 import com.gianmarco.securenotes.viewmodel.ArchiveViewModel;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ArchiveFragment extends Fragment implements SecureFileAdapter.OnFileClickListener, SecureFileAdapter.OnFileDeleteListener {
 
+    private static final ListSort[] SORT_OPTIONS = {ListSort.CREATED, ListSort.TITLE, ListSort.SIZE, ListSort.TYPE};
+    // Famiglie MIME filtrabili, nello stesso ordine delle etichette
+    private static final String[] MIME_FAMILY_LABELS = {"Immagini", "PDF", "Documenti di testo", "Tutti i tipi"};
+    private static final String[] MIME_FAMILIES = {"image/", "application/pdf", "text/", null};
+
     private RecyclerView recyclerView;
     private TextView textEmptyState;
     private FloatingActionButton fabAddFile;
     private SecureFileAdapter fileAdapter;
     private SecureFileRepository fileRepository;
+    private SecureFileOpener fileOpener;
     private ArchivePinManager archivePinManager;
     private boolean archiveUnlocked = false;
     private ArchiveViewModel viewModel;
     private SettingsViewModel settingsViewModel;
+    private BulkActionBar bulkActionBar;
+    // File da esportare mentre l'utente sceglie la destinazione
+    private List<Long> pendingExportIds;
 
     // ActivityResultLauncher per la selezione dei file
     private final ActivityResultLauncher<Intent> filePickerLauncher = registerForActivityResult(
@@ -68,15 +79,31 @@ public class ArchiveFragment extends Fragment implements SecureFileAdapter.OnFil
             }
     );
 
+    private final ActivityResultLauncher<Intent> exportLauncher = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(),
+            result -> {
+                List<Long> ids = pendingExportIds;
+                pendingExportIds = null;
+                if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null
+                        && result.getData().getData() != null && ids != null) {
+                    Uri destination = result.getData().getData();
+                    bulkActionBar.run(viewModel.exportFiles(ids, destination), "File esportati", null);
+                }
+            }
+    );
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         try {
             fileRepository = new SecureFileRepository(requireContext());
+            fileOpener = new SecureFileOpener(this, fileRepository);
             archivePinManager = new ArchivePinManager(requireContext());
+            ListSortPreferences sortPreferences = new ListSortPreferences(requireContext(),
+                    ListSortPreferences.SCREEN_ARCHIVE, ListSort.CREATED);
             viewModel = new ViewModelProvider(this, new ViewModelProvider.Factory() {
                 public <T extends androidx.lifecycle.ViewModel> T create(Class<T> modelClass) {
-                    return (T) new ArchiveViewModel(fileRepository);
+                    return (T) new ArchiveViewModel(fileRepository, sortPreferences);
                 }
             }).get(ArchiveViewModel.class);
 
@@ -106,8 +133,18 @@ public class ArchiveFragment extends Fragment implements SecureFileAdapter.OnFil
         fabAddFile = view.findViewById(R.id.fab_add_file);
 
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
-        fileAdapter = new SecureFileAdapter(new ArrayList<>(), this, this);
+        ItemSelection selection = viewModel.getSelection();
+        fileAdapter = new SecureFileAdapter(this, this, selection);
         recyclerView.setAdapter(fileAdapter);
+        bulkActionBar = new BulkActionBar(this, view, selection);
+        // I file non hanno tag: restano solo esporta ed elimina
+        bulkActionBar.hideTagAction();
+        bulkActionBar.setOnDeleteClick(v -> confirmBulkDelete());
+        bulkActionBar.setOnExportClick(v -> confirmBulkExport());
+        selection.setListener(count -> {
+            bulkActionBar.onSelectionChanged(count);
+            fileAdapter.refreshSelection();
+        });
 
         ViewCompat.setOnApplyWindowInsetsListener(recyclerView, (v, insets) -> {
             int bottomNavHeightPx = (int) (160 * v.getResources().getDisplayMetrics().density);
@@ -128,13 +165,88 @@ public class ArchiveFragment extends Fragment implements SecureFileAdapter.OnFil
         }
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        viewModel.getSelection().setListener(null);
+    }
+
+    private void confirmBulkDelete() {
+        List<Long> ids = viewModel.getSelection().getSelectedIds();
+        new androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                .setTitle("Elimina file")
+                .setMessage("Spostare " + ids.size() + " file nel cestino?")
+                .setPositiveButton("Elimina", (dialog, which) -> {
+                    viewModel.getSelection().clear();
+                    bulkActionBar.run(viewModel.deleteFiles(ids), "File spostati nel cestino",
+                            () -> viewModel.restoreFiles(ids));
+                })
+                .setNegativeButton("Annulla", null)
+                .show();
+    }
+
+    private void confirmBulkExport() {
+        List<Long> ids = viewModel.getSelection().getSelectedIds();
+        new androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                .setTitle("Esporta file")
+                .setMessage("I " + ids.size() + " file verranno decifrati e salvati in chiaro in un archivio zip. Continuare?")
+                .setPositiveButton("Esporta", (dialog, which) -> {
+                    viewModel.getSelection().clear();
+                    pendingExportIds = ids;
+                    Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                    intent.addCategory(Intent.CATEGORY_OPENABLE);
+                    intent.setType("application/zip");
+                    intent.putExtra(Intent.EXTRA_TITLE, "SecureNotes_file.zip");
+                    exportLauncher.launch(intent);
+                })
+                .setNegativeButton("Annulla", null)
+                .show();
+    }
+
     private void setupArchiveContent() {
-        viewModel.getFiles().observe(getViewLifecycleOwner(), files -> {
-            if (files != null) {
-                fileAdapter.updateFiles(files);
-                updateEmptyState(files.isEmpty());
+        viewModel.getFileItems().observe(getViewLifecycleOwner(), items -> {
+            if (items != null) {
+                fileAdapter.updateFiles(items);
+                updateEmptyState(items.isEmpty());
             }
         });
+
+        EditText searchEditText = requireView().findViewById(R.id.edit_text_search_files);
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.setSearchQuery(s.toString());
+            }
+        });
+
+        ImageButton sortButton = requireView().findViewById(R.id.button_sort_files);
+        sortButton.setOnClickListener(v -> ListOptionsDialogs.showSortDialog(this, SORT_OPTIONS,
+                viewModel.getListQuery().getValue().getSort(), viewModel::setSort));
+        ImageButton filterButton = requireView().findViewById(R.id.button_filter_files);
+        filterButton.setOnClickListener(v -> showFilterDialog());
+    }
+
+    private void showFilterDialog() {
+        String[] options = {"Tipo di file", "Data di caricamento"};
+        new androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                .setTitle("Filtra archivio")
+                .setItems(options, (dialog, which) -> {
+                    if (which == 0) {
+                        new androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                                .setTitle("Tipo di file")
+                                .setItems(MIME_FAMILY_LABELS, (d, family) -> viewModel.setMimeFamily(MIME_FAMILIES[family]))
+                                .show();
+                    } else {
+                        ListOptionsDialogs.showDateRangeDialog(this, "Caricati", viewModel::setUploadRange);
+                    }
+                })
+                .show();
     }
 
     private void showArchivePinDialog() {
@@ -199,8 +311,8 @@ public class ArchiveFragment extends Fragment implements SecureFileAdapter.OnFil
 
     private void handleFileSelection(Uri fileUri) {
         try {
-            String fileName = getFileName(fileUri);
-            String mimeType = getMimeTypeFromExtension(fileName);
+            String fileName = SecureFileOpener.getFileName(requireContext(), fileUri);
+            String mimeType = SecureFileOpener.getMimeTypeFromExtension(fileName);
             
             if (fileName == null) {
                 fileName = "File_" + System.currentTimeMillis();
@@ -214,34 +326,6 @@ public class ArchiveFragment extends Fragment implements SecureFileAdapter.OnFil
         }
     }
 
-    private String getMimeTypeFromExtension(String fileName) {
-        String mimeType = java.net.URLConnection.guessContentTypeFromName(fileName);
-        return mimeType != null ? mimeType : "application/octet-stream";
-    }
-
-    private String getFileName(Uri uri) {
-        String result = null;
-        try (android.database.Cursor cursor = requireContext().getContentResolver().query(uri, null, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                int index = cursor.getColumnIndex(android.provider.OpenableColumns.DISPLAY_NAME);
-                if (index >= 0) {
-                    result = cursor.getString(index);
-                }
-            }
-        } catch (Exception e) {
-            Log.e("ArchiveFragment", "Errore nella query del nome del file: " + e.getMessage());
-        }
-
-        if (result == null) {
-            result = uri.getPath();
-            int cut = result.lastIndexOf('/');
-            if (cut != -1) {
-                result = result.substring(cut + 1);
-            }
-        }
-        return result;
-    }
-
     private void updateEmptyState(boolean isEmpty) {
         if (isEmpty) {
             textEmptyState.setVisibility(View.VISIBLE);
@@ -254,32 +338,7 @@ public class ArchiveFragment extends Fragment implements SecureFileAdapter.OnFil
 
     @Override
     public void onFileClick(SecureFile secureFile) {
-        try {
-            InputStream inputStream = viewModel.loadFile(secureFile.getFileId());
-            if (secureFile.isImage()) {
-                showImageFile(secureFile, inputStream);
-            } else {
-                // File temporaneo dal flusso decifrato
-                String originalFileName = secureFile.getOriginalFileName();
-                String extension = getFileExtension(originalFileName);
-                String nameWithoutExt = originalFileName.contains(".") ? originalFileName.substring(0, originalFileName.lastIndexOf('.')) : originalFileName;
-                String timestamp = String.valueOf(System.currentTimeMillis());
-                File tempFile = new File(requireContext().getCacheDir(), nameWithoutExt + "_" + timestamp + extension);
-    
-                try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-                    byte[] buffer = new byte[4096];
-                    int bytesRead;
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        fos.write(buffer, 0, bytesRead);
-                    }
-                }
-                inputStream.close();
-                openFileWithExternalApp(tempFile, originalFileName);
-            }
-        } catch (Exception e) {
-            Log.e("ArchiveFragment", "Errore nell'apertura del file: " + e.getMessage());
-            Toast.makeText(requireContext(), "Errore nell'apertura del file", Toast.LENGTH_SHORT).show();
-        }
+        fileOpener.open(secureFile);
     }
 
     private boolean isTextDocument(SecureFile file) {
@@ -305,89 +364,6 @@ public class ArchiveFragment extends Fragment implements SecureFileAdapter.OnFil
         return false;
     }
 
-    private void showImageFile(SecureFile secureFile, InputStream inputStream) {
-        androidx.appcompat.app.AlertDialog.Builder builder = new androidx.appcompat.app.AlertDialog.Builder(requireContext());
-        builder.setTitle(secureFile.getOriginalFileName());
-        
-        // Crea un ImageView per mostrare l'immagine
-        ImageView imageView = new ImageView(requireContext());
-        imageView.setLayoutParams(new ViewGroup.LayoutParams(
-                ViewGroup.LayoutParams.MATCH_PARENT,
-                ViewGroup.LayoutParams.WRAP_CONTENT));
-        imageView.setScaleType(ImageView.ScaleType.FIT_CENTER);
-        imageView.setAdjustViewBounds(true);
-        
-        int padding = (int) (16 * requireContext().getResources().getDisplayMetrics().density);
-        imageView.setPadding(padding, padding, padding, padding);
-        
-        // Carica l'immagine dall'InputStream
-        try {
-            android.graphics.Bitmap bitmap = android.graphics.BitmapFactory.decodeStream(inputStream);
-            imageView.setImageBitmap(bitmap);
-            inputStream.close();
-        } catch (Exception e) {
-            Log.e("ArchiveFragment", "Errore nel caricamento dell'immagine: " + e.getMessage());
-            Toast.makeText(requireContext(), "Errore nel caricamento dell'immagine", Toast.LENGTH_SHORT).show();
-            return;
-        }
-        
-        builder.setView(imageView);
-        builder.setPositiveButton("Chiudi", null);
-        builder.show();
-    }
-
-    private void openFileWithExternalApp(File tempFile, String originalFileName) {
-        try {
-            Uri fileUri = androidx.core.content.FileProvider.getUriForFile(
-                    requireContext(),
-                    requireContext().getPackageName() + ".fileprovider",
-                    tempFile
-            );
-    
-            String mainMimeType = getMimeTypeFromExtension(originalFileName);
-    
-            ArrayList<String> mimeTypes = new ArrayList<>();
-            mimeTypes.add(mainMimeType);
-            if (mainMimeType.startsWith("text/")) {
-                mimeTypes.add("text/plain");
-                mimeTypes.add("application/octet-stream");
-            } else if (mainMimeType.equals("application/pdf")) {
-            } else {
-                mimeTypes.add("application/octet-stream");
-            }
-    
-            Intent intent = new Intent(Intent.ACTION_VIEW);
-            intent.setFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_ACTIVITY_NEW_TASK);
-            intent.putExtra(Intent.EXTRA_SUBJECT, originalFileName);
-    
-            boolean opened = false;
-            for (String mimeType : mimeTypes) {
-                intent.setDataAndType(fileUri, mimeType);
-                if (intent.resolveActivity(requireContext().getPackageManager()) != null) {
-                    startActivity(intent);
-                    scheduleFileDeletion(tempFile, 3000);
-                    opened = true;
-                    break;
-                }
-            }
-    
-            if (!opened) {
-                tempFile.delete();
-                Toast.makeText(requireContext(), "Nessuna app trovata per aprire il file", Toast.LENGTH_SHORT).show();
-            }
-        } catch (Exception e) {
-            Log.e("ArchiveFragment", "Errore nell'apertura del file con app esterna: " + e.getMessage());
-            Toast.makeText(requireContext(), "Errore nell'apertura del file", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    private String getFileExtension(String fileName) {
-        if (fileName == null || !fileName.contains(".")) {
-            return "";
-        }
-        return "." + fileName.substring(fileName.lastIndexOf(".") + 1);
-    }
-
     @Override
     public void onFileDelete(SecureFile secureFile) {
         new androidx.appcompat.app.AlertDialog.Builder(requireContext())
@@ -395,16 +371,11 @@ public class ArchiveFragment extends Fragment implements SecureFileAdapter.OnFil
                 .setMessage("Sei sicuro di voler eliminare il file '" + secureFile.getOriginalFileName() + "'?")
                 .setPositiveButton("Elimina", (dialog, which) -> {
                     viewModel.deleteFile(secureFile);
+                    Snackbar.make(requireView(), "File spostato nel cestino", Snackbar.LENGTH_LONG)
+                            .setAction("Annulla", v -> viewModel.restoreFiles(Collections.singletonList(secureFile.getId())))
+                            .show();
                 })
                 .setNegativeButton("Annulla", null)
                 .show();
     }
-
-    private void scheduleFileDeletion(File file, long delayMillis) {
-        new Handler().postDelayed(() -> {
-            if (file.exists()) {
-                file.delete();
-            }
-        }, delayMillis);
-    }
 } 
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.gianmarco.securenotes.fragment;
+
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.OnBackPressedCallback;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.LiveData;
+
+import com.gianmarco.securenotes.R;
+import com.gianmarco.securenotes.adapter.ItemSelection;
+import com.google.android.material.progressindicator.LinearProgressIndicator;
+import com.google.android.material.snackbar.Snackbar;
+
+/**
+ * Barra delle azioni multiple condivisa da dashboard e archivio (layout view_selection_bar).
+ * Mostra il numero di righe selezionate, chiude la selezione con il tasto indietro e segue
+ * ogni operazione con un solo indicatore di avanzamento.
+ */
+final class BulkActionBar {
+
+    private final Fragment fragment;
+    private final View bar;
+    private final TextView countText;
+    private final LinearProgressIndicator progress;
+    private final View[] actionButtons;
+    private final OnBackPressedCallback backCallback;
+
+    BulkActionBar(Fragment fragment, View root, ItemSelection selection) {
+        this.fragment = fragment;
+        this.bar = root.findViewById(R.id.selection_bar);
+        this.countText = root.findViewById(R.id.text_selection_count);
+        this.progress = root.findViewById(R.id.progress_bulk);
+        this.actionButtons = new View[]{root.findViewById(R.id.button_bulk_tag),
+                root.findViewById(R.id.button_bulk_export), root.findViewById(R.id.button_bulk_delete)};
+        root.findViewById(R.id.button_clear_selection).setOnClickListener(v -> selection.clear());
+        this.backCallback = new OnBackPressedCallback(false) {
+            @Override
+            public void handleOnBackPressed() {
+                selection.clear();
+            }
+        };
+        fragment.requireActivity().getOnBackPressedDispatcher()
+                .addCallback(fragment.getViewLifecycleOwner(), backCallback);
+        onSelectionChanged(selection.size());
+    }
+
+    void setOnTagClick(View.OnClickListener listener) {
+        actionButtons[0].setOnClickListener(listener);
+    }
+
+    void setOnExportClick(View.OnClickListener listener) {
+        actionButtons[1].setOnClickListener(listener);
+    }
+
+    void setOnDeleteClick(View.OnClickListener listener) {
+        actionButtons[2].setOnClickListener(listener);
+    }
+
+    void hideTagAction() {
+        actionButtons[0].setVisibility(View.GONE);
+    }
+
+    void onSelectionChanged(int count) {
+        bar.setVisibility(count > 0 ? View.VISIBLE : View.GONE);
+        countText.setText(count == 1 ? "1 selezionato" : count + " selezionati");
+        backCallback.setEnabled(count > 0);
+    }
+
+    /**
+     * Segue un'operazione del repository: mostra l'avanzamento e alla fine il messaggio con il
+     * numero di elementi elaborati, con l'azione Annulla se undo non è null
+     */
+    void run(LiveData<Integer> operation, String doneMessage, Runnable undo) {
+        setRunning(true);
+        operation.observe(fragment.getViewLifecycleOwner(), count -> {
+            if (count == null) {
+                return;
+            }
+            operation.removeObservers(fragment.getViewLifecycleOwner());
+            setRunning(false);
+            if (count < 0) {
+                Toast.makeText(fragment.requireContext(), "Operazione non riuscita", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            Snackbar snackbar = Snackbar.make(fragment.requireView(), doneMessage + ": " + count, Snackbar.LENGTH_LONG);
+            if (undo != null) {
+                snackbar.setAction("Annulla", v -> undo.run());
+            }
+            snackbar.show();
+        });
+    }
+
+    private void setRunning(boolean running) {
+        progress.setVisibility(running ? View.VISIBLE : View.GONE);
+        for (View button : actionButtons) {
+            button.setEnabled(!running);
+        }
+    }
+}
@@ -1,10 +1,24 @@
 package com.gianmarco.securenotes.fragment;
 
+import android.app.Activity;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.ImageButton;
+import android.widget.TextView;
 
+import com.google.android.material.chip.Chip;
+import com.google.android.material.chip.ChipGroup;
+import com.google.android.material.snackbar.Snackbar;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.fragment.app.Fragment;
@@ -12,28 +26,62 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.ArrayList;
-
+import com.gianmarco.securenotes.ListSort;
+import com.gianmarco.securenotes.ListSortPreferences;
 import com.gianmarco.securenotes.MainActivity;
-import com.gianmarco.securenotes.note.Note;
 import com.gianmarco.securenotes.note.NoteRepository;
+import com.gianmarco.securenotes.note.NoteSearchResult;
+import com.gianmarco.securenotes.note.NoteSummary;
+import com.gianmarco.securenotes.note.Tag;
 import com.gianmarco.securenotes.R;
+import com.gianmarco.securenotes.adapter.ItemSelection;
 import com.gianmarco.securenotes.adapter.NoteAdapter;
+import com.gianmarco.securenotes.adapter.NoteSearchAdapter;
 import com.gianmarco.securenotes.viewmodel.DashboardViewModel;
 
-public class DashboardFragment extends Fragment implements NoteAdapter.OnNoteClickListener, NoteAdapter.OnNoteDeleteListener {
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+public class DashboardFragment extends Fragment implements NoteAdapter.OnNoteClickListener, NoteAdapter.OnNoteDeleteListener,
+        NoteSearchAdapter.OnResultClickListener {
+
+    private static final ListSort[] SORT_OPTIONS = {ListSort.MODIFIED, ListSort.CREATED, ListSort.TITLE, ListSort.SIZE};
 
     private NoteAdapter noteAdapter;
+    private NoteSearchAdapter searchAdapter;
     private DashboardViewModel viewModel;
+    private RecyclerView recyclerView;
+    private RecyclerView searchRecyclerView;
+    private TextView textNoResults;
+    private ChipGroup tagChipGroup;
+    private BulkActionBar bulkActionBar;
+    // Note da esportare mentre l'utente sceglie la destinazione
+    private List<Long> pendingExportIds;
+
+    private final ActivityResultLauncher<Intent> exportLauncher = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(),
+            result -> {
+                List<Long> ids = pendingExportIds;
+                pendingExportIds = null;
+                if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null
+                        && result.getData().getData() != null && ids != null) {
+                    Uri destination = result.getData().getData();
+                    bulkActionBar.run(viewModel.exportNotes(ids, destination), "Note esportate", null);
+                }
+            }
+    );
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
         NoteRepository noteRepository = new NoteRepository(requireContext());
+        ListSortPreferences sortPreferences = new ListSortPreferences(requireContext(),
+                ListSortPreferences.SCREEN_DASHBOARD, ListSort.MODIFIED);
         viewModel = new ViewModelProvider(this, new ViewModelProvider.Factory() {
             public <T extends androidx.lifecycle.ViewModel> T create(Class<T> modelClass) {
-                return (T) new DashboardViewModel(noteRepository);
+                return (T) new DashboardViewModel(noteRepository, sortPreferences);
             }
         }).get(DashboardViewModel.class);
     }
@@ -44,38 +92,210 @@ public class DashboardFragment extends Fragment implements NoteAdapter.OnNoteCli
 
     public void onViewCreated(View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
-        RecyclerView recyclerView = view.findViewById(R.id.recycler_view_notes);
+        recyclerView = view.findViewById(R.id.recycler_view_notes);
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        searchRecyclerView = view.findViewById(R.id.recycler_view_search_results);
+        searchRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
+        textNoResults = view.findViewById(R.id.text_no_results);
+        tagChipGroup = view.findViewById(R.id.chip_group_tags);
 
-        ViewCompat.setOnApplyWindowInsetsListener(recyclerView, (v, insets) -> {
-            int bottomNavHeightPx = (int) (160 * v.getResources().getDisplayMetrics().density);
-            int systemBottom = insets.getInsets(WindowInsetsCompat.Type.systemBars()).bottom;
-            v.setPadding(
-                    v.getPaddingLeft(),
-                    v.getPaddingTop(),
-                    v.getPaddingRight(),
-                    Math.max(bottomNavHeightPx, systemBottom)
-            );
-            return insets;
-        });
+        ViewCompat.setOnApplyWindowInsetsListener(recyclerView, this::applyBottomInsets);
+        ViewCompat.setOnApplyWindowInsetsListener(searchRecyclerView, this::applyBottomInsets);
 
-        noteAdapter = new NoteAdapter(new ArrayList<>(), this, this);
+        ItemSelection selection = viewModel.getSelection();
+        noteAdapter = new NoteAdapter(this, this, selection);
         recyclerView.setAdapter(noteAdapter);
+        bulkActionBar = new BulkActionBar(this, view, selection);
+        bulkActionBar.setOnDeleteClick(v -> confirmBulkDelete());
+        bulkActionBar.setOnExportClick(v -> confirmBulkExport());
+        bulkActionBar.setOnTagClick(v -> showBulkTagDialog());
+        selection.setListener(count -> {
+            bulkActionBar.onSelectionChanged(count);
+            noteAdapter.refreshSelection();
+        });
+        searchAdapter = new NoteSearchAdapter(this);
+        searchRecyclerView.setAdapter(searchAdapter);
+
+        viewModel.getPagedNotes().observe(getViewLifecycleOwner(), pagingData ->
+                noteAdapter.submitData(getViewLifecycleOwner().getLifecycle(), pagingData));
+
+        viewModel.getSearchResults().observe(getViewLifecycleOwner(), results -> {
+            if (results != null) {
+                searchAdapter.updateResults(results);
+                updateSearchState(results.isEmpty());
+            }
+        });
+
+        viewModel.getTags().observe(getViewLifecycleOwner(), this::showTags);
+
+        ImageButton sortButton = view.findViewById(R.id.button_sort);
+        sortButton.setOnClickListener(v -> ListOptionsDialogs.showSortDialog(this, SORT_OPTIONS,
+                viewModel.getSort().getValue(), sort -> {
+                    viewModel.setSort(sort);
+                    recyclerView.scrollToPosition(0);
+                }));
+        ImageButton filterButton = view.findViewById(R.id.button_filter);
+        filterButton.setOnClickListener(v -> ListOptionsDialogs.showDateRangeDialog(this, "Modificate",
+                viewModel::setModifiedRange));
+
+        EditText searchEditText = view.findViewById(R.id.edit_text_search);
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
 
-        viewModel.getNotes().observe(getViewLifecycleOwner(), notes -> {
-            if (notes != null) {
-                noteAdapter.updateNotes(notes);
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.setSearchQuery(s.toString());
+                if (!viewModel.isSearching()) {
+                    updateSearchState(false);
+                }
             }
         });
     }
 
     @Override
-    public void onNoteClick(Note note) {
+    public void onDestroyView() {
+        super.onDestroyView();
+        viewModel.getSelection().setListener(null);
+    }
+
+    private void confirmBulkDelete() {
+        List<Long> ids = viewModel.getSelection().getSelectedIds();
+        new androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                .setTitle("Elimina note")
+                .setMessage("Spostare " + ids.size() + " note nel cestino?")
+                .setPositiveButton("Elimina", (dialog, which) -> {
+                    viewModel.getSelection().clear();
+                    bulkActionBar.run(viewModel.deleteNotes(ids), "Note spostate nel cestino",
+                            () -> viewModel.restoreNotes(ids));
+                })
+                .setNegativeButton("Annulla", null)
+                .show();
+    }
+
+    private void confirmBulkExport() {
+        List<Long> ids = viewModel.getSelection().getSelectedIds();
+        new androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                .setTitle("Esporta note")
+                .setMessage("Le " + ids.size() + " note verranno salvate in chiaro in un archivio zip. Continuare?")
+                .setPositiveButton("Esporta", (dialog, which) -> {
+                    viewModel.getSelection().clear();
+                    pendingExportIds = ids;
+                    Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                    intent.addCategory(Intent.CATEGORY_OPENABLE);
+                    intent.setType("application/zip");
+                    intent.putExtra(Intent.EXTRA_TITLE, "SecureNotes_note.zip");
+                    exportLauncher.launch(intent);
+                })
+                .setNegativeButton("Annulla", null)
+                .show();
+    }
+
+    private void showBulkTagDialog() {
+        List<Long> ids = viewModel.getSelection().getSelectedIds();
+        EditText input = new EditText(requireContext());
+        input.setHint(R.string.tag_separati_da_virgola);
+        input.setSingleLine(true);
+        new androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                .setTitle("Aggiungi tag a " + ids.size() + " note")
+                .setView(input)
+                .setPositiveButton("Aggiungi", (dialog, which) -> {
+                    List<String> names = NoteRepository.parseTags(input.getText().toString());
+                    if (names.isEmpty()) {
+                        return;
+                    }
+                    viewModel.getSelection().clear();
+                    bulkActionBar.run(viewModel.addTagsToNotes(names, ids),
+                            names.size() == 1 ? "Tag aggiunto alle note" : "Tag aggiunti alle note", null);
+                })
+                .setNegativeButton("Annulla", null)
+                .show();
+    }
+
+    // Un chip per tag più "Tutte"; il chip selezionato segue il filtro del ViewModel
+    private void showTags(List<Tag> tags) {
+        tagChipGroup.setOnCheckedStateChangeListener(null);
+        tagChipGroup.removeAllViews();
+        tagChipGroup.setVisibility(tags == null || tags.isEmpty() ? View.GONE : View.VISIBLE);
+        if (tags == null || tags.isEmpty()) {
+            viewModel.setTagFilter(null);
+            return;
+        }
+        Long selected = viewModel.getTagFilter().getValue();
+        boolean selectedExists = false;
+        addTagChip(getString(R.string.tutte_le_note), null, selected == null);
+        for (Tag tag : tags) {
+            boolean checked = Objects.equals(selected, tag.getId());
+            selectedExists |= checked;
+            addTagChip(tag.getName() + " (" + tag.getNoteCount() + ")", tag.getId(), checked);
+        }
+        if (selected != null && !selectedExists) {
+            // Il tag filtrato è stato eliminato
+            viewModel.setTagFilter(null);
+            ((Chip) tagChipGroup.getChildAt(0)).setChecked(true);
+        }
+        tagChipGroup.setOnCheckedStateChangeListener((group, checkedIds) -> {
+            if (!checkedIds.isEmpty()) {
+                Chip chip = group.findViewById(checkedIds.get(0));
+                viewModel.setTagFilter((Long) chip.getTag());
+            }
+        });
+    }
+
+    private void addTagChip(String text, Long tagId, boolean checked) {
+        Chip chip = new Chip(requireContext());
+        chip.setId(View.generateViewId());
+        chip.setText(text);
+        chip.setTag(tagId);
+        chip.setCheckable(true);
+        tagChipGroup.addView(chip);
+        chip.setChecked(checked);
+    }
+
+    private WindowInsetsCompat applyBottomInsets(View v, WindowInsetsCompat insets) {
+        int bottomNavHeightPx = (int) (160 * v.getResources().getDisplayMetrics().density);
+        int systemBottom = insets.getInsets(WindowInsetsCompat.Type.systemBars()).bottom;
+        v.setPadding(
+                v.getPaddingLeft(),
+                v.getPaddingTop(),
+                v.getPaddingRight(),
+                Math.max(bottomNavHeightPx, systemBottom)
+        );
+        return insets;
+    }
+
+    // Mostra i risultati al posto della lista quando c'è una ricerca attiva
+    private void updateSearchState(boolean noResults) {
+        boolean searching = viewModel.isSearching();
+        recyclerView.setVisibility(searching ? View.GONE : View.VISIBLE);
+        searchRecyclerView.setVisibility(searching && !noResults ? View.VISIBLE : View.GONE);
+        textNoResults.setVisibility(searching && noResults ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public void onNoteClick(NoteSummary note) {
+        openNote(note.getId());
+    }
+
+    @Override
+    public void onNotePressed(NoteSummary note) {
+        viewModel.prefetchNote(note.getId());
+    }
+
+    @Override
+    public void onResultClick(NoteSearchResult result) {
+        openNote(result.getId());
+    }
+
+    private void openNote(long noteId) {
         if (getActivity() instanceof MainActivity) {
             ((MainActivity) getActivity()).hideBottomNavAndFab();
         }
 
-        EditorFragment editorFragment = EditorFragment.newInstance(note.getId());
+        EditorFragment editorFragment = EditorFragment.newInstance(noteId);
         getParentFragmentManager().beginTransaction()
                 .replace(R.id.fragment_container, editorFragment)
                 .addToBackStack(null)
@@ -83,12 +303,15 @@ public class DashboardFragment extends Fragment implements NoteAdapter.OnNoteCli
     }
 
     @Override
-    public void onNoteDelete(Note note) {
+    public void onNoteDelete(NoteSummary note) {
         new androidx.appcompat.app.AlertDialog.Builder(requireContext())
                 .setTitle("Elimina nota")
                 .setMessage("Sei sicuro di voler eliminare la nota '" + note.getTitle() + "'?")
                 .setPositiveButton("Elimina", (dialog, which) -> {
                     viewModel.deleteNote(note);
+                    Snackbar.make(requireView(), "Nota spostata nel cestino", Snackbar.LENGTH_LONG)
+                            .setAction("Annulla", v -> viewModel.restoreNotes(Collections.singletonList((long) note.getId())))
+                            .show();
                 })
                 .setNegativeButton("Annulla", null)
                 .show();
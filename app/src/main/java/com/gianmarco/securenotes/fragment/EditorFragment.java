@@ -1,34 +1,74 @@
 package com.gianmarco.securenotes.fragment;
 
+import android.app.Activity;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.gianmarco.securenotes.adapter.BlockEditorAdapter;
+import com.gianmarco.securenotes.file.SecureFile;
+import com.gianmarco.securenotes.file.SecureFileRepository;
+import com.gianmarco.securenotes.adapter.MarkdownBlockAdapter;
+import com.gianmarco.securenotes.note.BlockDocument;
 
 import com.gianmarco.securenotes.note.Note;
 import com.gianmarco.securenotes.note.NoteRepository;
 import com.gianmarco.securenotes.R;
 import com.gianmarco.securenotes.viewmodel.EditorViewModel;
+import com.google.android.material.chip.Chip;
+import com.google.android.material.chip.ChipGroup;
+
+import java.util.List;
 
 public class EditorFragment extends Fragment {
 
+    private static final String TAG = "EditorFragment";
     private static final String ARG_NOTE_ID = "note_id";
-    private static final long INVALID_NOTE_ID = -1;
+    private static final long INVALID_NOTE_ID = EditorViewModel.INVALID_NOTE_ID;
 
     private EditText titleEditText;
     private EditText contentEditText;
+    private EditText tagsEditText;
+    private RecyclerView blocksRecyclerView;
+    private RecyclerView markdownRecyclerView;
+    private MarkdownBlockAdapter markdownAdapter;
+    private Button readModeButton;
+    private boolean readMode;
     private NoteRepository noteRepository;
     private long currentNoteId = INVALID_NOTE_ID;
-    private Note currentNote = null;
     private EditorViewModel viewModel;
+    private boolean noteShown;
+    private ChipGroup attachmentChipGroup;
+    // null se l'archivio non è disponibile: gli allegati restano nascosti
+    private SecureFileOpener fileOpener;
+
+    private final ActivityResultLauncher<Intent> attachmentPickerLauncher = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(),
+            result -> {
+                if (result.getResultCode() == Activity.RESULT_OK && result.getData() != null
+                        && result.getData().getData() != null) {
+                    attachFile(result.getData().getData());
+                }
+            }
+    );
 
     public static EditorFragment newInstance(long noteId) {
         EditorFragment fragment = new EditorFragment();
@@ -42,10 +82,18 @@ public class EditorFragment extends Fragment {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         NoteRepository noteRepository = new NoteRepository(requireContext());
+        SecureFileRepository archive = null;
+        try {
+            archive = new SecureFileRepository(requireContext());
+            fileOpener = new SecureFileOpener(this, archive);
+        } catch (Exception e) {
+            Log.e(TAG, "Archivio non disponibile, allegati disattivati: " + e.getMessage());
+        }
+        SecureFileRepository fileRepository = archive;
         viewModel = new ViewModelProvider(this, new ViewModelProvider.Factory() {
             @Override
             public <T extends androidx.lifecycle.ViewModel> T create(Class<T> modelClass) {
-                return (T) new EditorViewModel(noteRepository);
+                return (T) new EditorViewModel(noteRepository, fileRepository);
             }
         }).get(EditorViewModel.class);
         if (getArguments() != null) {
@@ -64,44 +112,192 @@ public class EditorFragment extends Fragment {
 
         titleEditText = view.findViewById(R.id.edit_text_title);
         contentEditText = view.findViewById(R.id.editTextNote);
+        tagsEditText = view.findViewById(R.id.edit_text_tags);
+        blocksRecyclerView = view.findViewById(R.id.recycler_blocks);
+        markdownRecyclerView = view.findViewById(R.id.recycler_markdown);
+        readModeButton = view.findViewById(R.id.btnToggleReadMode);
         Button saveButton = view.findViewById(R.id.btnSaveNote);
+        markdownAdapter = new MarkdownBlockAdapter();
+        markdownRecyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
+        markdownRecyclerView.setAdapter(markdownAdapter);
+        readMode = false;
+
+        // La nota viene applicata una sola volta: gli aggiornamenti successivi del database
+        // non devono sovrascrivere il testo che l'utente sta modificando
+        noteShown = false;
+        viewModel.loadNote(currentNoteId).observe(getViewLifecycleOwner(), note -> {
+            if (note != null && !noteShown) {
+                showNote(note);
+            }
+        });
+        viewModel.getMarkdownBlocks().observe(getViewLifecycleOwner(), markdownAdapter::submitList);
+        viewModel.isDraftRestored().observe(getViewLifecycleOwner(), restored -> {
+            if (Boolean.TRUE.equals(restored)) {
+                Toast.makeText(getContext(), "Modifiche non salvate ripristinate", Toast.LENGTH_SHORT).show();
+                viewModel.onDraftRestoredShown();
+            }
+        });
+
+        saveButton.setOnClickListener(v -> saveNote());
+        readModeButton.setOnClickListener(v -> setReadMode(!readMode));
+        setupAttachments(view);
+    }
 
+    // Gli allegati arrivano da una query sui soli metadati; il contenuto si decifra all'apertura
+    private void setupAttachments(View view) {
+        attachmentChipGroup = view.findViewById(R.id.chip_group_attachments);
+        if (fileOpener == null) {
+            view.findViewById(R.id.attachments_row).setVisibility(View.GONE);
+            return;
+        }
+        view.findViewById(R.id.button_attach_file).setOnClickListener(v -> pickAttachment());
         if (currentNoteId != INVALID_NOTE_ID) {
-            viewModel.getNoteById(currentNoteId).observe(getViewLifecycleOwner(), note -> {
-                if (note != null) {
-                    currentNote = note;
-                    titleEditText.setText(note.getTitle());
-                    contentEditText.setText(note.getContent());
-                }
-            });
+            viewModel.getAttachments(currentNoteId).observe(getViewLifecycleOwner(), this::showAttachments);
         }
+    }
 
-        saveButton.setOnClickListener(v -> saveNote());
+    private void showAttachments(List<SecureFile> files) {
+        attachmentChipGroup.removeAllViews();
+        for (SecureFile file : files) {
+            Chip chip = new Chip(requireContext());
+            chip.setText(file.getOriginalFileName() + " (" + file.getFormattedFileSize() + ")");
+            chip.setCloseIconVisible(true);
+            chip.setOnClickListener(v -> fileOpener.open(file));
+            chip.setOnCloseIconClickListener(v -> confirmDetach(file));
+            attachmentChipGroup.addView(chip);
+        }
+    }
+
+    private void confirmDetach(SecureFile file) {
+        new androidx.appcompat.app.AlertDialog.Builder(requireContext())
+                .setTitle("Rimuovi allegato")
+                .setMessage("Scollegare '" + file.getOriginalFileName() + "' dalla nota? Il file resta nell'archivio.")
+                .setPositiveButton("Rimuovi", (dialog, which) -> viewModel.detachFile(currentNoteId, file))
+                .setNegativeButton("Annulla", null)
+                .show();
+    }
+
+    private void pickAttachment() {
+        if (currentNoteId == INVALID_NOTE_ID) {
+            Toast.makeText(getContext(), "Salva la nota prima di allegare file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        attachmentPickerLauncher.launch(Intent.createChooser(intent, "Seleziona file"));
+    }
+
+    private void attachFile(Uri fileUri) {
+        String fileName = SecureFileOpener.getFileName(requireContext(), fileUri);
+        if (fileName == null) {
+            fileName = "File_" + System.currentTimeMillis();
+        }
+        viewModel.attachFile(currentNoteId, fileUri, fileName, SecureFileOpener.getMimeTypeFromExtension(fileName));
+        Toast.makeText(getContext(), "File allegato alla nota", Toast.LENGTH_SHORT).show();
+    }
+
+    // In lettura il contenuto viene mostrato come Markdown; i blocchi già visti arrivano dalla cache.
+    // Ricomposizione e divisione in blocchi avvengono in background: per una nota di 10 MB
+    // richiederebbero diversi frame sul thread principale
+    private void setReadMode(boolean enabled) {
+        if (!noteShown) {
+            return;
+        }
+        readMode = enabled;
+        BlockDocument document = viewModel.getBlockDocument();
+        if (enabled) {
+            viewModel.renderMarkdown(document != null ? null : contentEditText.getText().toString());
+        }
+        View editor = document != null ? blocksRecyclerView : contentEditText;
+        editor.setVisibility(enabled ? View.GONE : View.VISIBLE);
+        markdownRecyclerView.setVisibility(enabled ? View.VISIBLE : View.GONE);
+        titleEditText.setEnabled(!enabled);
+        tagsEditText.setEnabled(!enabled);
+        readModeButton.setText(enabled ? R.string.modifica : R.string.lettura);
+    }
+
+    private void showNote(Note note) {
+        noteShown = true;
+        titleEditText.setText(viewModel.getCurrentTitle(note));
+        tagsEditText.setText(viewModel.getCurrentTags());
+        BlockDocument document = viewModel.getBlockDocument();
+        if (document != null) {
+            // Nota molto grande: solo i paragrafi visibili vengono misurati e disegnati
+            contentEditText.setVisibility(View.GONE);
+            blocksRecyclerView.setVisibility(View.VISIBLE);
+            blocksRecyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
+            blocksRecyclerView.setHasFixedSize(true);
+            blocksRecyclerView.setAdapter(new BlockEditorAdapter(document, this::onContentChanged));
+        } else {
+            contentEditText.setText(viewModel.getCurrentContent(note));
+        }
+        // I listener si registrano dopo il testo iniziale, così il caricamento non conta come modifica
+        TextWatcher watcher = new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                onContentChanged();
+            }
+        };
+        titleEditText.addTextChangedListener(watcher);
+        tagsEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.onTagsChanged(s.toString());
+            }
+        });
+        if (document == null) {
+            contentEditText.addTextChangedListener(watcher);
+        }
+    }
+
+    private void onContentChanged() {
+        String title = titleEditText.getText().toString();
+        if (viewModel.getBlockDocument() != null) {
+            viewModel.onDocumentChanged(title);
+        } else {
+            viewModel.onTextChanged(title, contentEditText.getText().toString());
+        }
     }
 
     private void saveNote() {
         String title = titleEditText.getText().toString().trim();
-        String content = contentEditText.getText().toString().trim();
 
         if (TextUtils.isEmpty(title)) {
             Toast.makeText(getContext(), "Il titolo non può essere vuoto", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        if (currentNote == null) {
-            currentNote = new Note();
-        }
-
-        currentNote.setTitle(title);
-        currentNote.setContent(content);
-        currentNote.setLastModified(System.currentTimeMillis());
-
-        viewModel.saveNote(currentNote);
+        onContentChanged();
+        viewModel.flush();
 
         Toast.makeText(getContext(), "Nota salvata", Toast.LENGTH_SHORT).show();
         getParentFragmentManager().popBackStack();
     }
 
+    @Override
+    public void onPause() {
+        super.onPause();
+        // Salva subito le modifiche in attesa: l'app potrebbe non tornare in primo piano
+        viewModel.flush();
+    }
+
     @Override
     public void onResume() {
         super.onResume();
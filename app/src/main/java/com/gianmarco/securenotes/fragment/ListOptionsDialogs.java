@@ -0,0 +1,82 @@
+package com.gianmarco.securenotes.fragment;
+
+import androidx.appcompat.app.AlertDialog;
+import androidx.core.util.Pair;
+import androidx.fragment.app.Fragment;
+
+import com.gianmarco.securenotes.ListSort;
+import com.google.android.material.datepicker.MaterialDatePicker;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Dialoghi di ordinamento e filtro per data condivisi da dashboard e archivio
+ */
+final class ListOptionsDialogs {
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final String DATE_RANGE_TAG = "date_range_picker";
+
+    private ListOptionsDialogs() {
+    }
+
+    static void showSortDialog(Fragment fragment, ListSort[] options, ListSort current, Consumer<ListSort> onSelected) {
+        String[] labels = new String[options.length];
+        int checked = 0;
+        for (int i = 0; i < options.length; i++) {
+            labels[i] = options[i].getLabel();
+            if (options[i] == current) {
+                checked = i;
+            }
+        }
+        new AlertDialog.Builder(fragment.requireContext())
+                .setTitle("Ordina per")
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    onSelected.accept(options[which]);
+                    dialog.dismiss();
+                })
+                .setNegativeButton("Annulla", null)
+                .show();
+    }
+
+    /**
+     * Intervallo [from, to) in millisecondi; null e null per togliere il filtro
+     */
+    static void showDateRangeDialog(Fragment fragment, String title, BiConsumer<Long, Long> onSelected) {
+        String[] options = {"Ultimi 7 giorni", "Ultimi 30 giorni", "Intervallo personalizzato…", "Tutte le date"};
+        new AlertDialog.Builder(fragment.requireContext())
+                .setTitle(title)
+                .setItems(options, (dialog, which) -> {
+                    long now = System.currentTimeMillis();
+                    switch (which) {
+                        case 0:
+                            onSelected.accept(now - 7 * DAY_MS, null);
+                            break;
+                        case 1:
+                            onSelected.accept(now - 30 * DAY_MS, null);
+                            break;
+                        case 2:
+                            showDateRangePicker(fragment, onSelected);
+                            break;
+                        default:
+                            onSelected.accept(null, null);
+                            break;
+                    }
+                })
+                .show();
+    }
+
+    // Il selettore restituisce l'inizio dei giorni scelti: la fine include tutto l'ultimo giorno
+    private static void showDateRangePicker(Fragment fragment, BiConsumer<Long, Long> onSelected) {
+        MaterialDatePicker<Pair<Long, Long>> picker = MaterialDatePicker.Builder.dateRangePicker()
+                .setTitleText("Seleziona intervallo")
+                .build();
+        picker.addOnPositiveButtonClickListener(selection -> {
+            if (selection != null && selection.first != null && selection.second != null) {
+                onSelected.accept(selection.first, selection.second + DAY_MS);
+            }
+        });
+        picker.show(fragment.getChildFragmentManager(), DATE_RANGE_TAG);
+    }
+}
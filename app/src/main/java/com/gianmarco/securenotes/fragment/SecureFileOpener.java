@@ -0,0 +1,188 @@
+package com.gianmarco.securenotes.fragment;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Handler;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.Toast;
+
+import androidx.fragment.app.Fragment;
+
+import com.gianmarco.securenotes.file.SecureFile;
+import com.gianmarco.securenotes.file.SecureFileRepository;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Apre un file dell'archivio decifrandolo solo in quel momento: le immagini in un dialogo,
+ * gli altri file con un'app esterna tramite una copia temporanea nella cache.
+ * Usato dall'archivio e dagli allegati nell'editor.
+ */
+final class SecureFileOpener {
+    private static final String TAG = "SecureFileOpener";
+
+    private final Fragment fragment;
+    private final SecureFileRepository fileRepository;
+
+    SecureFileOpener(Fragment fragment, SecureFileRepository fileRepository) {
+        this.fragment = fragment;
+        this.fileRepository = fileRepository;
+    }
+
+    void open(SecureFile secureFile) {
+        Context context = fragment.requireContext();
+        try {
+            InputStream inputStream = fileRepository.loadFile(secureFile.getFileId());
+            if (secureFile.isImage()) {
+                showImageFile(secureFile, inputStream);
+            } else {
+                // File temporaneo dal flusso decifrato
+                String originalFileName = secureFile.getOriginalFileName();
+                String extension = getFileExtension(originalFileName);
+                String nameWithoutExt = originalFileName.contains(".") ? originalFileName.substring(0, originalFileName.lastIndexOf('.')) : originalFileName;
+                String timestamp = String.valueOf(System.currentTimeMillis());
+                File tempFile = new File(context.getCacheDir(), nameWithoutExt + "_" + timestamp + extension);
+
+                try (FileOutputStream fos = new FileOutputStream(tempFile)) {
+                    byte[] buffer = new byte[4096];
+                    int bytesRead;
+                    while ((bytesRead = inputStream.read(buffer)) != -1) {
+                        fos.write(buffer, 0, bytesRead);
+                    }
+                }
+                inputStream.close();
+                openFileWithExternalApp(tempFile, originalFileName);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Errore nell'apertura del file: " + e.getMessage());
+            Toast.makeText(context, "Errore nell'apertura del file", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    static String getMimeTypeFromExtension(String fileName) {
+        String mimeType = java.net.URLConnection.guessContentTypeFromName(fileName);
+        return mimeType != null ? mimeType : "application/octet-stream";
+    }
+
+    static String getFileName(Context context, Uri uri) {
+        String result = null;
+        try (android.database.Cursor cursor = context.getContentResolver().query(uri, null, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int index = cursor.getColumnIndex(android.provider.OpenableColumns.DISPLAY_NAME);
+                if (index >= 0) {
+                    result = cursor.getString(index);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Errore nella query del nome del file: " + e.getMessage());
+        }
+
+        if (result == null) {
+            result = uri.getPath();
+            int cut = result.lastIndexOf('/');
+            if (cut != -1) {
+                result = result.substring(cut + 1);
+            }
+        }
+        return result;
+    }
+
+    private void showImageFile(SecureFile secureFile, InputStream inputStream) {
+        Context context = fragment.requireContext();
+        androidx.appcompat.app.AlertDialog.Builder builder = new androidx.appcompat.app.AlertDialog.Builder(context);
+        builder.setTitle(secureFile.getOriginalFileName());
+
+        // Crea un ImageView per mostrare l'immagine
+        ImageView imageView = new ImageView(context);
+        imageView.setLayoutParams(new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        imageView.setScaleType(ImageView.ScaleType.FIT_CENTER);
+        imageView.setAdjustViewBounds(true);
+
+        int padding = (int) (16 * context.getResources().getDisplayMetrics().density);
+        imageView.setPadding(padding, padding, padding, padding);
+
+        // Carica l'immagine dall'InputStream
+        try {
+            android.graphics.Bitmap bitmap = android.graphics.BitmapFactory.decodeStream(inputStream);
+            imageView.setImageBitmap(bitmap);
+            inputStream.close();
+        } catch (Exception e) {
+            Log.e(TAG, "Errore nel caricamento dell'immagine: " + e.getMessage());
+            Toast.makeText(context, "Errore nel caricamento dell'immagine", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        builder.setView(imageView);
+        builder.setPositiveButton("Chiudi", null);
+        builder.show();
+    }
+
+    private void openFileWithExternalApp(File tempFile, String originalFileName) {
+        Context context = fragment.requireContext();
+        try {
+            Uri fileUri = androidx.core.content.FileProvider.getUriForFile(
+                    context,
+                    context.getPackageName() + ".fileprovider",
+                    tempFile
+            );
+
+            String mainMimeType = getMimeTypeFromExtension(originalFileName);
+
+            ArrayList<String> mimeTypes = new ArrayList<>();
+            mimeTypes.add(mainMimeType);
+            if (mainMimeType.startsWith("text/")) {
+                mimeTypes.add("text/plain");
+                mimeTypes.add("application/octet-stream");
+            } else if (mainMimeType.equals("application/pdf")) {
+            } else {
+                mimeTypes.add("application/octet-stream");
+            }
+
+            Intent intent = new Intent(Intent.ACTION_VIEW);
+            intent.setFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_ACTIVITY_NEW_TASK);
+            intent.putExtra(Intent.EXTRA_SUBJECT, originalFileName);
+
+            boolean opened = false;
+            for (String mimeType : mimeTypes) {
+                intent.setDataAndType(fileUri, mimeType);
+                if (intent.resolveActivity(context.getPackageManager()) != null) {
+                    fragment.startActivity(intent);
+                    scheduleFileDeletion(tempFile, 3000);
+                    opened = true;
+                    break;
+                }
+            }
+
+            if (!opened) {
+                tempFile.delete();
+                Toast.makeText(context, "Nessuna app trovata per aprire il file", Toast.LENGTH_SHORT).show();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Errore nell'apertura del file con app esterna: " + e.getMessage());
+            Toast.makeText(context, "Errore nell'apertura del file", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private static String getFileExtension(String fileName) {
+        if (fileName == null || !fileName.contains(".")) {
+            return "";
+        }
+        return "." + fileName.substring(fileName.lastIndexOf(".") + 1);
+    }
+
+    private static void scheduleFileDeletion(File file, long delayMillis) {
+        new Handler().postDelayed(() -> {
+            if (file.exists()) {
+                file.delete();
+            }
+        }, delayMillis);
+    }
+}
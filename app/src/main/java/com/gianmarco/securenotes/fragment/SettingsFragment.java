@@ -13,6 +13,7 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.Switch;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -30,9 +31,20 @@ import androidx.lifecycle.ViewModelProvider;
 import com.gianmarco.securenotes.ArchivePinManager;
 import com.gianmarco.securenotes.BackupWorker;
 import com.gianmarco.securenotes.MainActivity;
+import com.gianmarco.securenotes.MaintenanceReport;
 import com.gianmarco.securenotes.R;
 import com.gianmarco.securenotes.RestoreBackupWorker;
+import com.gianmarco.securenotes.TrashPurgeWorker;
+import com.gianmarco.securenotes.file.SecureFile;
+import com.gianmarco.securenotes.file.SecureFileRepository;
+import com.gianmarco.securenotes.note.NoteRepository;
+import com.gianmarco.securenotes.note.NoteSummary;
 import com.gianmarco.securenotes.viewmodel.SettingsViewModel;
+import com.gianmarco.securenotes.viewmodel.TrashViewModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class SettingsFragment extends Fragment {
 
@@ -51,6 +63,9 @@ public class SettingsFragment extends Fragment {
     private String pendingRestorePassword;
     private android.net.Uri pendingRestoreUri;
     private SettingsViewModel viewModel;
+    private TrashViewModel trashViewModel;
+    private List<NoteSummary> trashedNotes = Collections.emptyList();
+    private List<SecureFile> trashedFiles = Collections.emptyList();
     private final ActivityResultLauncher<Intent> backupFilePickerLauncher = registerForActivityResult(
         new ActivityResultContracts.StartActivityForResult(),
         result -> {
@@ -96,6 +111,17 @@ public class SettingsFragment extends Fragment {
         } catch (GeneralSecurityException | IOException e) {
             Toast.makeText(requireContext(), "Errore nell'inizializzazione delle impostazioni", Toast.LENGTH_SHORT).show();
         }
+        try {
+            NoteRepository noteRepository = new NoteRepository(requireContext());
+            SecureFileRepository fileRepository = new SecureFileRepository(requireContext());
+            trashViewModel = new ViewModelProvider(this, new ViewModelProvider.Factory() {
+                public <T extends androidx.lifecycle.ViewModel> T create(Class<T> modelClass) {
+                    return (T) new TrashViewModel(noteRepository, fileRepository);
+                }
+            }).get(TrashViewModel.class);
+        } catch (Exception e) {
+            Toast.makeText(requireContext(), "Errore nell'apertura del cestino", Toast.LENGTH_SHORT).show();
+        }
     }
 
     @Nullable
@@ -120,6 +146,11 @@ public class SettingsFragment extends Fragment {
         setupBackupButton();
         setupRestoreButton();
         setupThemeSpinner();
+
+        setupTrash(view);
+
+        TextView textMaintenanceReport = view.findViewById(R.id.text_maintenance_report);
+        textMaintenanceReport.setText(MaintenanceReport.load(requireContext()).format());
     }
 
     private void setupTimeoutSpinner() {
@@ -258,6 +289,103 @@ public class SettingsFragment extends Fragment {
         });
     }
 
+    private void setupTrash(View view) {
+        TextView textTrashSummary = view.findViewById(R.id.text_trash_summary);
+        Button btnOpenTrash = view.findViewById(R.id.btn_open_trash);
+        if (trashViewModel == null) {
+            btnOpenTrash.setEnabled(false);
+            return;
+        }
+        trashViewModel.getTrashedNotes().observe(getViewLifecycleOwner(), notes -> {
+            trashedNotes = notes != null ? notes : Collections.emptyList();
+            updateTrashSummary(textTrashSummary);
+        });
+        trashViewModel.getTrashedFiles().observe(getViewLifecycleOwner(), files -> {
+            trashedFiles = files != null ? files : Collections.emptyList();
+            updateTrashSummary(textTrashSummary);
+        });
+        // I nomi dei file nel cestino sono protetti dallo stesso PIN dell'archivio
+        btnOpenTrash.setOnClickListener(v -> {
+            if (viewModel.isArchivePinEnabled()) {
+                AlertDialog.Builder pinDialog = new AlertDialog.Builder(requireContext());
+                pinDialog.setTitle("PIN Archivio");
+                pinDialog.setMessage("Inserisci il PIN per aprire il cestino:");
+                final EditText pinInput = new EditText(requireContext());
+                pinInput.setInputType(android.text.InputType.TYPE_CLASS_NUMBER | android.text.InputType.TYPE_NUMBER_VARIATION_PASSWORD);
+                pinDialog.setView(pinInput);
+                pinDialog.setPositiveButton("Procedi", (dialog, which) -> {
+                    if (viewModel.verifyPin(pinInput.getText().toString())) {
+                        showTrashDialog();
+                    } else {
+                        Toast.makeText(requireContext(), "PIN errato", Toast.LENGTH_SHORT).show();
+                    }
+                });
+                pinDialog.setNegativeButton("Annulla", null);
+                pinDialog.show();
+            } else {
+                showTrashDialog();
+            }
+        });
+    }
+
+    private void updateTrashSummary(TextView textTrashSummary) {
+        long days = TrashPurgeWorker.RETENTION_MS / (24L * 60 * 60 * 1000);
+        textTrashSummary.setText(trashedNotes.size() + " note e " + trashedFiles.size() + " file nel cestino. " +
+                "Gli elementi vengono eliminati definitivamente dopo " + days + " giorni.");
+    }
+
+    // Note e file nella stessa lista: prima le note, poi i file
+    private void showTrashDialog() {
+        List<NoteSummary> notes = new ArrayList<>(trashedNotes);
+        List<SecureFile> files = new ArrayList<>(trashedFiles);
+        if (notes.isEmpty() && files.isEmpty()) {
+            Toast.makeText(requireContext(), "Il cestino è vuoto", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String[] labels = new String[notes.size() + files.size()];
+        for (int i = 0; i < notes.size(); i++) {
+            labels[i] = "Nota: " + notes.get(i).getTitle();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            labels[notes.size() + i] = "File: " + files.get(i).getOriginalFileName();
+        }
+        boolean[] checked = new boolean[labels.length];
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Cestino")
+                .setMultiChoiceItems(labels, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setPositiveButton("Ripristina", (dialog, which) -> {
+                    List<Long> noteIds = new ArrayList<>();
+                    List<Long> fileIds = new ArrayList<>();
+                    for (int i = 0; i < checked.length; i++) {
+                        if (!checked[i]) {
+                            continue;
+                        }
+                        if (i < notes.size()) {
+                            noteIds.add((long) notes.get(i).getId());
+                        } else {
+                            fileIds.add(files.get(i - notes.size()).getId());
+                        }
+                    }
+                    trashViewModel.restore(noteIds, fileIds);
+                    Toast.makeText(requireContext(), "Elementi ripristinati: " + (noteIds.size() + fileIds.size()), Toast.LENGTH_SHORT).show();
+                })
+                .setNeutralButton("Svuota cestino", (dialog, which) -> confirmEmptyTrash())
+                .setNegativeButton("Chiudi", null)
+                .show();
+    }
+
+    private void confirmEmptyTrash() {
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Svuota cestino")
+                .setMessage("Gli elementi nel cestino verranno eliminati definitivamente. Continuare?")
+                .setPositiveButton("Svuota", (dialog, which) -> {
+                    trashViewModel.emptyTrash(requireContext());
+                    Toast.makeText(requireContext(), "Svuotamento del cestino avviato", Toast.LENGTH_SHORT).show();
+                })
+                .setNegativeButton("Annulla", null)
+                .show();
+    }
+
     private void showSetPinDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(requireContext());
         builder.setTitle("Imposta PIN Archivio");
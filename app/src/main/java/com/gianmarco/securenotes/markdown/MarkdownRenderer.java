@@ -0,0 +1,295 @@
+package com.gianmarco.securenotes.markdown;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.BulletSpan;
+import android.text.style.QuoteSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
+import android.text.style.URLSpan;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renderer Markdown incrementale: il testo viene diviso in blocchi (paragrafi separati da righe vuote,
+ * blocchi di codice delimitati da ```) e ogni blocco viene convertito in span una sola volta.
+ * Gli span sono tenuti in una cache condivisa indicizzata dall'hash del blocco, quindi dopo una
+ * modifica vengono riconvertiti solo i blocchi cambiati e le anteprime della lista riusano il lavoro già fatto.
+ * Supporta titoli, elenchi puntati, citazioni, codice, grassetto, corsivo, barrato e link.
+ */
+public final class MarkdownRenderer {
+
+    // La cache è misurata in caratteri renderizzati
+    private static final int CACHE_CHARS = 1024 * 1024;
+    // Blocchi senza righe vuote (log, elenchi lunghi) vengono divisi comunque a fine riga
+    private static final int MAX_BLOCK_CHARS = 4 * 1024;
+    private static final String FENCE = "```";
+    private static final float[] HEADING_SIZES = {1.6f, 1.4f, 1.25f, 1.15f, 1.05f, 1.0f};
+    private static final int CODE_BACKGROUND = 0x22888888;
+    private static final int BULLET_GAP = 16;
+
+    private static volatile MarkdownRenderer INSTANCE;
+
+    private final LruCache<Long, Rendered> cache = new LruCache<Long, Rendered>(CACHE_CHARS) {
+        @Override
+        protected int sizeOf(Long key, Rendered value) {
+            return Math.max(value.spans.length(), 1);
+        }
+    };
+
+    private static final class Rendered {
+        final int sourceLength;
+        final CharSequence spans;
+
+        Rendered(int sourceLength, CharSequence spans) {
+            this.sourceLength = sourceLength;
+            this.spans = spans;
+        }
+    }
+
+    private MarkdownRenderer() {
+    }
+
+    public static MarkdownRenderer getInstance() {
+        if (INSTANCE == null) {
+            synchronized (MarkdownRenderer.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new MarkdownRenderer();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Divide il testo nei blocchi che vengono renderizzati e messi in cache singolarmente
+     */
+    public static List<String> splitBlocks(String text) {
+        List<String> blocks = new ArrayList<>();
+        int n = text.length();
+        int blockStart = -1;
+        boolean inFence = false;
+        int lineStart = 0;
+        while (lineStart <= n) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = n;
+            }
+            boolean fence = text.startsWith(FENCE, firstNonSpace(text, lineStart, lineEnd));
+            boolean blank = firstNonSpace(text, lineStart, lineEnd) == lineEnd;
+            if (!inFence && blank) {
+                if (blockStart >= 0) {
+                    blocks.add(text.substring(blockStart, lineStart - 1));
+                    blockStart = -1;
+                }
+            } else {
+                if (blockStart < 0) {
+                    blockStart = lineStart;
+                } else if (!inFence && !fence && lineStart - blockStart >= MAX_BLOCK_CHARS) {
+                    blocks.add(text.substring(blockStart, lineStart - 1));
+                    blockStart = lineStart;
+                }
+                if (fence) {
+                    // Un blocco di codice è sempre un blocco a sé, anche se contiene righe vuote
+                    if (!inFence && blockStart != lineStart) {
+                        blocks.add(text.substring(blockStart, lineStart - 1));
+                        blockStart = lineStart;
+                    }
+                    inFence = !inFence;
+                    if (!inFence) {
+                        blocks.add(text.substring(blockStart, lineEnd));
+                        blockStart = -1;
+                    }
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (blockStart >= 0 && blockStart < n) {
+            blocks.add(text.substring(blockStart, n));
+        }
+        return blocks;
+    }
+
+    /**
+     * Renderizza un intero documento unendo i blocchi, ognuno preso dalla cache se già convertito
+     */
+    public CharSequence render(String text) {
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        for (String block : splitBlocks(text)) {
+            if (builder.length() > 0) {
+                builder.append("\n\n");
+            }
+            builder.append(renderBlock(block));
+        }
+        return new SpannedString(builder);
+    }
+
+    /**
+     * Anteprima della lista: è una sola riga, quindi viene renderizzata come un unico blocco
+     */
+    public CharSequence renderPreview(String preview) {
+        return preview == null || preview.isEmpty() ? "" : renderBlock(preview);
+    }
+
+    public CharSequence renderBlock(String block) {
+        long key = hash(block);
+        Rendered rendered = cache.get(key);
+        if (rendered != null && rendered.sourceLength == block.length()) {
+            return rendered.spans;
+        }
+        CharSequence spans = parseBlock(block);
+        cache.put(key, new Rendered(block.length(), spans));
+        return spans;
+    }
+
+    // FNV-1a a 64 bit del testo del blocco
+    static long hash(String block) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < block.length(); i++) {
+            hash ^= block.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    static CharSequence parseBlock(String block) {
+        SpannableStringBuilder out = new SpannableStringBuilder();
+        if (block.trim().startsWith(FENCE)) {
+            appendCode(out, block);
+            return new SpannedString(out);
+        }
+        int lineStart = 0;
+        while (lineStart <= block.length()) {
+            int lineEnd = block.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = block.length();
+            }
+            if (out.length() > 0) {
+                out.append('\n');
+            }
+            appendLine(out, block.substring(lineStart, lineEnd));
+            lineStart = lineEnd + 1;
+        }
+        return new SpannedString(out);
+    }
+
+    private static void appendCode(SpannableStringBuilder out, String block) {
+        int bodyStart = block.indexOf('\n');
+        int bodyEnd = block.lastIndexOf('\n');
+        String body = bodyStart < 0 ? "" : block.substring(bodyStart + 1, bodyEnd > bodyStart ? bodyEnd : block.length());
+        if (bodyEnd > bodyStart && !block.substring(bodyEnd + 1).trim().startsWith(FENCE)) {
+            // Blocco di codice non chiuso: l'ultima riga fa parte del codice
+            body = block.substring(bodyStart + 1);
+        }
+        out.append(body);
+        out.setSpan(new TypefaceSpan("monospace"), 0, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        out.setSpan(new BackgroundColorSpan(CODE_BACKGROUND), 0, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+
+    private static void appendLine(SpannableStringBuilder out, String line) {
+        int start = out.length();
+        int level = headingLevel(line);
+        if (level > 0) {
+            appendInline(out, line.substring(level + 1).trim());
+            out.setSpan(new StyleSpan(Typeface.BOLD), start, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            out.setSpan(new RelativeSizeSpan(HEADING_SIZES[level - 1]), start, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            return;
+        }
+        String trimmed = line.trim();
+        if (trimmed.startsWith("> ") || trimmed.equals(">")) {
+            appendInline(out, trimmed.substring(1).trim());
+            out.setSpan(new QuoteSpan(), start, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            return;
+        }
+        if (trimmed.startsWith("- ") || trimmed.startsWith("* ") || trimmed.startsWith("+ ")) {
+            appendInline(out, trimmed.substring(2));
+            out.setSpan(new BulletSpan(BULLET_GAP), start, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            return;
+        }
+        appendInline(out, line);
+    }
+
+    private static int headingLevel(String line) {
+        int level = 0;
+        while (level < line.length() && level < HEADING_SIZES.length && line.charAt(level) == '#') {
+            level++;
+        }
+        return level > 0 && level < line.length() && line.charAt(level) == ' ' ? level : 0;
+    }
+
+    // Grassetto, corsivo, barrato, codice e link; un delimitatore senza chiusura resta testo normale
+    private static void appendInline(SpannableStringBuilder out, String text) {
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < n) {
+                out.append(text.charAt(i + 1));
+                i += 2;
+                continue;
+            }
+            if (c == '`') {
+                int close = text.indexOf('`', i + 1);
+                if (close > i + 1) {
+                    int start = out.length();
+                    out.append(text, i + 1, close);
+                    out.setSpan(new TypefaceSpan("monospace"), start, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    out.setSpan(new BackgroundColorSpan(CODE_BACKGROUND), start, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    i = close + 1;
+                    continue;
+                }
+            }
+            if (c == '[') {
+                int closeText = text.indexOf("](", i + 1);
+                int closeUrl = closeText < 0 ? -1 : text.indexOf(')', closeText + 2);
+                if (closeText > i + 1 && closeUrl > closeText + 2) {
+                    int start = out.length();
+                    appendInline(out, text.substring(i + 1, closeText));
+                    out.setSpan(new URLSpan(text.substring(closeText + 2, closeUrl)), start, out.length(),
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    i = closeUrl + 1;
+                    continue;
+                }
+            }
+            String delimiter = null;
+            Object span = null;
+            if (text.startsWith("**", i) || text.startsWith("__", i)) {
+                delimiter = text.substring(i, i + 2);
+                span = new StyleSpan(Typeface.BOLD);
+            } else if (text.startsWith("~~", i)) {
+                delimiter = "~~";
+                span = new StrikethroughSpan();
+            } else if (c == '*' || c == '_') {
+                delimiter = String.valueOf(c);
+                span = new StyleSpan(Typeface.ITALIC);
+            }
+            if (delimiter != null) {
+                int contentStart = i + delimiter.length();
+                int close = text.indexOf(delimiter, contentStart);
+                if (close > contentStart) {
+                    int start = out.length();
+                    appendInline(out, text.substring(contentStart, close));
+                    out.setSpan(span, start, out.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                    i = close + delimiter.length();
+                    continue;
+                }
+            }
+            out.append(c);
+            i++;
+        }
+    }
+
+    private static int firstNonSpace(String text, int from, int to) {
+        while (from < to && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+}
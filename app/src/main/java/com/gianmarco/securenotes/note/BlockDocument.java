@@ -0,0 +1,226 @@
+package com.gianmarco.securenotes.note;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Testo di una nota diviso in blocchi di paragrafo, per l'editor delle note molto grandi.
+ * I blocchi sono separati da un singolo '\n': unirli con join() restituisce esattamente il testo originale.
+ * Un blocco termina dopo una riga vuota oppure al primo a capo oltre MAX_BLOCK_CHARS caratteri.
+ * Cancellare il '\n' all'inizio di un blocco lo unisce al precedente; un blocco cresciuto oltre
+ * SPLIT_BLOCK_CHARS, ad esempio dopo un incolla, viene diviso di nuovo con le stesse regole.
+ * Va usato solo dal thread principale; snapshot() ne fa una copia da passare agli altri thread.
+ * Il documento tiene conto dei blocchi modificati: getVersion() cambia ad ogni modifica del testo e
+ * takeEdit() restituisce l'intervallo cambiato dalla chiamata precedente, per il diario delle bozze.
+ */
+public class BlockDocument {
+    // Sopra questa lunghezza un solo EditText diventa troppo lento da misurare e disegnare
+    public static final int BLOCK_EDITOR_THRESHOLD = 100_000;
+    static final int MAX_BLOCK_CHARS = 4 * 1024;
+    public static final int SPLIT_BLOCK_CHARS = 4 * MAX_BLOCK_CHARS;
+
+    private final List<String> blocks;
+    private int length;
+    private int version;
+    // Blocchi modificati dall'ultimo takeEdit(), da dirtyFrom incluso a dirtyTo escluso; -1 se nessuno
+    private int dirtyFrom = -1;
+    private int dirtyTo = -1;
+
+    /**
+     * Modifica del testo tra due chiamate a takeEdit(): i primi getStart() caratteri e gli ultimi
+     * getSuffix() sono invariati, quelli in mezzo sono stati sostituiti da getText(). Posizioni e
+     * testo vengono calcolati solo quando richiesti, anche fuori dal thread principale.
+     */
+    public static final class Edit {
+        private final List<String> blocks;
+        private final int from;
+        private final int to;
+
+        private Edit(List<String> blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        public boolean isEmpty() {
+            return from < 0;
+        }
+
+        public int getStart() {
+            int start = 0;
+            for (int i = 0; i < from; i++) {
+                start += blocks.get(i).length() + 1;
+            }
+            return start;
+        }
+
+        public int getSuffix() {
+            int suffix = 0;
+            for (int i = to; i < blocks.size(); i++) {
+                suffix += blocks.get(i).length() + 1;
+            }
+            return suffix;
+        }
+
+        public String getText() {
+            return join(blocks.subList(from, to));
+        }
+
+        /**
+         * Testo completo del documento dopo la modifica: costa O(caratteri)
+         */
+        public String getContent() {
+            return join(blocks);
+        }
+    }
+
+    private BlockDocument(List<String> blocks, int length) {
+        this.blocks = blocks;
+        this.length = length;
+    }
+
+    public static boolean needsBlockEditor(String text) {
+        return text != null && text.length() > BLOCK_EDITOR_THRESHOLD;
+    }
+
+    public static BlockDocument split(String text) {
+        List<String> blocks = new ArrayList<>(text.length() / 256 + 1);
+        int n = text.length();
+        int start = 0;
+        while (start <= n) {
+            int end = findBlockEnd(text, start);
+            blocks.add(text.substring(start, end));
+            start = end + 1;
+        }
+        return new BlockDocument(blocks, n);
+    }
+
+    // Restituisce la posizione del '\n' che chiude il blocco, o la fine del testo
+    private static int findBlockEnd(String text, int start) {
+        int from = start;
+        while (true) {
+            int newline = text.indexOf('\n', from);
+            if (newline < 0) {
+                return text.length();
+            }
+            boolean afterEmptyLine = newline > start && text.charAt(newline - 1) == '\n';
+            if (afterEmptyLine || newline - start >= MAX_BLOCK_CHARS) {
+                return newline;
+            }
+            from = newline + 1;
+        }
+    }
+
+    public static String join(List<String> blocks) {
+        int length = blocks.size() - 1;
+        for (String block : blocks) {
+            length += block.length();
+        }
+        StringBuilder builder = new StringBuilder(Math.max(length, 0));
+        for (int i = 0; i < blocks.size(); i++) {
+            if (i > 0) {
+                builder.append('\n');
+            }
+            builder.append(blocks.get(i));
+        }
+        return builder.toString();
+    }
+
+    public int size() {
+        return blocks.size();
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public String getBlock(int index) {
+        return blocks.get(index);
+    }
+
+    /**
+     * Sostituisce il testo di un blocco: il resto del documento non viene toccato
+     */
+    public void setBlock(int index, String text) {
+        length += text.length() - blocks.get(index).length();
+        blocks.set(index, text);
+        markDirty(index);
+    }
+
+    /**
+     * Unisce il blocco al precedente, come se fosse stato cancellato il '\n' che li separa
+     * @return la posizione nel blocco unito in cui iniziava il blocco
+     */
+    public int mergeWithPrevious(int index) {
+        String previous = blocks.get(index - 1);
+        blocks.set(index - 1, previous + blocks.remove(index));
+        length--;
+        // Gli indici dopo il blocco rimosso scalano di uno
+        if (dirtyFrom >= 0) {
+            dirtyFrom = dirtyFrom >= index ? dirtyFrom - 1 : dirtyFrom;
+            dirtyTo = dirtyTo > index ? dirtyTo - 1 : dirtyTo;
+        }
+        markDirty(index - 1);
+        return previous.length();
+    }
+
+    /**
+     * Divide in paragrafi un blocco più lungo di SPLIT_BLOCK_CHARS: il testo del documento non cambia
+     * @return il numero di blocchi che ora occupano il suo posto
+     */
+    public int splitBlock(int index) {
+        String text = blocks.get(index);
+        if (text.length() <= SPLIT_BLOCK_CHARS) {
+            return 1;
+        }
+        List<String> parts = split(text).blocks;
+        blocks.remove(index);
+        blocks.addAll(index, parts);
+        // Il testo non cambia, ma l'intervallo modificato va spostato sui nuovi indici
+        if (dirtyFrom >= 0) {
+            dirtyFrom = dirtyFrom > index ? dirtyFrom + parts.size() - 1 : dirtyFrom;
+            dirtyTo = dirtyTo > index ? dirtyTo + parts.size() - 1 : dirtyTo;
+        }
+        return parts.size();
+    }
+
+    /**
+     * Numero che cambia ad ogni modifica del testo: uguale tra due letture se il testo non è cambiato
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Restituisce i blocchi modificati dalla chiamata precedente e ricomincia a contarli.
+     * Costa O(blocchi), come snapshot().
+     */
+    public Edit takeEdit() {
+        Edit edit = new Edit(snapshot(), dirtyFrom, dirtyTo);
+        dirtyFrom = -1;
+        dirtyTo = -1;
+        return edit;
+    }
+
+    private void markDirty(int index) {
+        version++;
+        if (dirtyFrom < 0) {
+            dirtyFrom = index;
+            dirtyTo = index + 1;
+        } else {
+            dirtyFrom = Math.min(dirtyFrom, index);
+            dirtyTo = Math.max(dirtyTo, index + 1);
+        }
+    }
+
+    /**
+     * Copia dei riferimenti ai blocchi: costa O(blocchi), non O(caratteri)
+     */
+    public List<String> snapshot() {
+        return new ArrayList<>(blocks);
+    }
+
+    public String getText() {
+        return join(blocks);
+    }
+}
@@ -0,0 +1,327 @@
+package com.gianmarco.securenotes.note;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Diario delle modifiche non ancora salvate di una nota, in un file a sola aggiunta.
+ * Ogni record è cifrato con AES-GCM e contiene la delta di titolo, tag e contenuto rispetto allo
+ * stato precedente; il primo
+ * record riporta il checksum del testo di partenza (quello sul database), così un diario che non
+ * corrisponde più alla nota salvata viene scartato invece di essere applicato.
+ * Un record troncato da un crash in scrittura viene ignorato insieme a quelli successivi.
+ * Per l'editor a blocchi appendEdit() scrive la delta dei soli blocchi modificati, senza ricomporre
+ * né confrontare il testo completo.
+ */
+public class DraftJournal {
+    private static final String TAG = "DraftJournal";
+    private static final byte RECORD_BASE = 0;
+    private static final byte RECORD_DELTA = 1;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+    // Oltre questo numero di record il diario viene riscritto con una sola delta
+    private static final int MAX_RECORDS = 64;
+    // Separa titolo, tag e contenuto nello stato salvato nel diario
+    private static final char SEPARATOR = '\u0000';
+
+    private final File file;
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+    private String base;
+    // Ultimo stato registrato, diviso in intestazione (titolo e tag) e contenuto. Dopo appendEdit()
+    // il contenuto non è disponibile e resta solo la sua lunghezza; -1 dopo una scrittura fallita,
+    // quando le modifiche già prese dal documento sono andate perse.
+    private String lastHeader;
+    private String lastContent;
+    private int lastContentLength;
+    private int records;
+
+    /**
+     * Testo recuperato dal diario
+     */
+    public static class Draft {
+        private final String title;
+        private final String tags;
+        private final String content;
+
+        Draft(String title, String tags, String content) {
+            this.title = title;
+            this.tags = tags;
+            this.content = content;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * Tag come digitati, separati da virgola
+         */
+        public String getTags() {
+            return tags;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+
+    DraftJournal(File file, SecretKey key, String baseTitle, String baseTags, String baseContent) {
+        this.file = file;
+        this.key = key;
+        this.base = combine(baseTitle, baseTags, baseContent);
+        setLast(base);
+    }
+
+    /**
+     * Rilegge il diario a partire dal testo salvato.
+     * @return la bozza, o null se il diario è vuoto o non corrisponde alla nota salvata
+     */
+    public synchronized Draft replay() {
+        if (!file.exists()) {
+            return null;
+        }
+        String state = base;
+        int count = 0;
+        long consumed = 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            while (true) {
+                byte[] record;
+                try {
+                    record = decrypt(in);
+                } catch (EOFException | GeneralSecurityException e) {
+                    break;
+                }
+                if (record[0] == RECORD_BASE) {
+                    if (count != 0 || ByteBuffer.wrap(record, 1, 8).getLong() != NoteChunker.checksum(base)) {
+                        Log.w(TAG, "Diario non corrispondente alla nota salvata, scartato");
+                        clear();
+                        return null;
+                    }
+                } else {
+                    byte[] delta = new byte[record.length - 1];
+                    System.arraycopy(record, 1, delta, 0, delta.length);
+                    state = NoteRevisions.applyDelta(state, delta);
+                }
+                count++;
+                consumed += 4 + IV_LENGTH + record.length + TAG_LENGTH_BITS / 8;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Errore nella lettura del diario: " + e.getMessage());
+            return null;
+        }
+        setLast(state);
+        records = count;
+        if (consumed < file.length()) {
+            // Coda troncata: si riscrive il diario, altrimenti i record aggiunti dopo sarebbero illeggibili
+            try {
+                if (state.equals(base)) {
+                    clear();
+                } else {
+                    rewrite(state);
+                }
+            } catch (IOException | GeneralSecurityException e) {
+                Log.e(TAG, "Errore nella riparazione del diario: " + e.getMessage());
+            }
+        }
+        if (state.equals(base)) {
+            return null;
+        }
+        int titleEnd = state.indexOf(SEPARATOR);
+        int tagsEnd = state.indexOf(SEPARATOR, titleEnd + 1);
+        return new Draft(state.substring(0, titleEnd), state.substring(titleEnd + 1, tagsEnd),
+                state.substring(tagsEnd + 1));
+    }
+
+    /**
+     * Aggiunge lo stato corrente, se diverso dall'ultimo registrato, e forza la scrittura su disco
+     */
+    public synchronized void append(String title, String tags, String content) throws IOException, GeneralSecurityException {
+        String header = header(title, tags);
+        if (header.equals(lastHeader) && content.equals(lastContent)) {
+            return;
+        }
+        String state = header + content;
+        if (records >= MAX_RECORDS) {
+            rewrite(state);
+            return;
+        }
+        byte[] delta = lastContent != null
+                ? NoteRevisions.encodeDelta(lastHeader + lastContent, state)
+                : NoteRevisions.encodeReplacement(0, 0, state);
+        writeRecords(delta);
+        setLast(header, content, content.length());
+    }
+
+    /**
+     * Come append, per l'editor a blocchi: la delta copre solo i blocchi modificati dall'ultimo
+     * record, più l'intestazione se titolo o tag sono cambiati.
+     * @param edit modifiche del documento dall'ultima chiamata, vedi BlockDocument#takeEdit()
+     */
+    public synchronized void appendEdit(String title, String tags, BlockDocument.Edit edit)
+            throws IOException, GeneralSecurityException {
+        String header = header(title, tags);
+        boolean headerChanged = !header.equals(lastHeader);
+        if (!headerChanged && edit.isEmpty() && lastContentLength >= 0) {
+            return;
+        }
+        if (records >= MAX_RECORDS) {
+            rewrite(header + edit.getContent());
+            return;
+        }
+        int contentLength = lastContentLength;
+        byte[] headerDelta = headerChanged ? NoteRevisions.encodeReplacement(0, contentLength, header) : null;
+        byte[] contentDelta = null;
+        if (!edit.isEmpty()) {
+            int start = edit.getStart();
+            int suffix = edit.getSuffix();
+            String text = edit.getText();
+            contentDelta = NoteRevisions.encodeReplacement(header.length() + start, suffix, text);
+            contentLength = start + text.length() + suffix;
+        }
+        writeRecords(headerDelta, contentDelta);
+        setLast(header, edit.isEmpty() ? lastContent : null, contentLength);
+    }
+
+    /**
+     * Da chiamare dopo il salvataggio sul database: il testo salvato diventa il nuovo punto di partenza
+     */
+    public synchronized void checkpoint(String title, String tags, String content) {
+        base = combine(title, tags, content);
+        clear();
+    }
+
+    /**
+     * Come checkpoint(title, tags, content), per l'editor a blocchi: editorContent è il testo del
+     * documento da cui è stato ricavato content, a cui si riferiscono le modifiche successive.
+     * Se i due testi differiscono, ad esempio per gli spazi tolti ai bordi, il diario registra subito
+     * la differenza.
+     */
+    public synchronized void checkpoint(String title, String tags, String content, String editorContent)
+            throws IOException, GeneralSecurityException {
+        checkpoint(title, tags, content);
+        append(title, tags, editorContent);
+    }
+
+    public synchronized void clear() {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Eliminazione del diario fallita");
+        }
+        setLast(base);
+        records = 0;
+    }
+
+    // Scrive in coda i record non nulli, preceduti da quello di partenza se il diario è vuoto.
+    // Dopo un errore il file può finire con un record a metà: la scrittura successiva lo sostituisce
+    // per intero con rewrite().
+    private void writeRecords(byte[]... deltas) throws IOException, GeneralSecurityException {
+        boolean written = false;
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            if (records == 0) {
+                writeRecord(out, baseRecord());
+                records++;
+            }
+            for (byte[] delta : deltas) {
+                if (delta != null) {
+                    writeRecord(out, deltaRecord(delta));
+                    records++;
+                }
+            }
+            out.getFD().sync();
+            written = true;
+        } finally {
+            if (!written) {
+                records = MAX_RECORDS;
+                lastContentLength = -1;
+            }
+        }
+    }
+
+    private void setLast(String state) {
+        int headerEnd = state.indexOf(SEPARATOR, state.indexOf(SEPARATOR) + 1) + 1;
+        String content = state.substring(headerEnd);
+        setLast(state.substring(0, headerEnd), content, content.length());
+    }
+
+    private void setLast(String header, String content, int contentLength) {
+        lastHeader = header;
+        lastContent = content;
+        lastContentLength = contentLength;
+    }
+
+    // Sostituisce il diario con una sola delta dal testo di partenza, in modo atomico
+    private void rewrite(String state) throws IOException, GeneralSecurityException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            writeRecord(out, baseRecord());
+            writeRecord(out, deltaRecord(NoteRevisions.encodeDelta(base, state)));
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Impossibile sostituire il diario");
+        }
+        records = 2;
+        setLast(state);
+    }
+
+    private byte[] baseRecord() {
+        return ByteBuffer.allocate(9).put(RECORD_BASE).putLong(NoteChunker.checksum(base)).array();
+    }
+
+    private static byte[] deltaRecord(byte[] delta) {
+        byte[] record = new byte[delta.length + 1];
+        record[0] = RECORD_DELTA;
+        System.arraycopy(delta, 0, record, 1, delta.length);
+        return record;
+    }
+
+    private void writeRecord(FileOutputStream out, byte[] plain) throws IOException, GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+        byte[] encrypted = cipher.doFinal(plain);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(encrypted.length + IV_LENGTH + 4);
+        DataOutputStream data = new DataOutputStream(frame);
+        data.writeInt(IV_LENGTH + encrypted.length);
+        data.write(iv);
+        data.write(encrypted);
+        // Un solo write per record: un crash lascia al più l'ultimo record incompleto
+        out.write(frame.toByteArray());
+    }
+
+    private byte[] decrypt(DataInputStream in) throws IOException, GeneralSecurityException {
+        int length = in.readInt();
+        if (length <= IV_LENGTH || length > file.length()) {
+            throw new EOFException("Record non valido");
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, frame, 0, IV_LENGTH));
+        return cipher.doFinal(frame, IV_LENGTH, length - IV_LENGTH);
+    }
+
+    private static String combine(String title, String tags, String content) {
+        return header(title, tags) + (content != null ? content : "");
+    }
+
+    private static String header(String title, String tags) {
+        return (title != null ? title : "") + SEPARATOR + (tags != null ? tags : "") + SEPARATOR;
+    }
+}
@@ -1,9 +1,19 @@
 package com.gianmarco.securenotes.note;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "notes")
+import java.util.Locale;
+
+// Gli indici su (chiave di ordinamento, id) servono gli ordinamenti della dashboard senza ordinare in memoria
+@Entity(tableName = "notes", indices = {
+        @Index(value = {"lastModified", "id"}),
+        @Index(value = {"createdAt", "id"}),
+        @Index(value = {"titleKey", "id"}),
+        @Index(value = {"contentLength", "id"}),
+        @Index(value = {"deletedAt"})})
 public class Note {
     
     @PrimaryKey(autoGenerate = true)
@@ -11,7 +21,19 @@ public class Note {
     
     private String title;
     private String content;
+    private String preview;
     private long lastModified;
+    // Contenuto completo compresso, presente solo per le note lunghe (vedi NoteCodec)
+    private byte[] contentBlob;
+    @ColumnInfo(defaultValue = "0")
+    private long createdAt;
+    // Lunghezza del contenuto completo, anche quando content ne contiene solo l'inizio
+    @ColumnInfo(defaultValue = "0")
+    private int contentLength;
+    // Titolo in minuscolo per l'ordinamento alfabetico: un indice Room non può dichiarare COLLATE NOCASE
+    private String titleKey;
+    // Momento dello spostamento nel cestino, null per le note visibili
+    private Long deletedAt;
 
     public int getId() {
         return id;
@@ -27,6 +49,7 @@ public class Note {
 
     public void setTitle(String title) {
         this.title = title;
+        this.titleKey = title != null ? title.toLowerCase(Locale.ROOT) : null;
     }
 
     public String getContent() {
@@ -37,6 +60,14 @@ public class Note {
         this.content = content;
     }
 
+    public String getPreview() {
+        return preview;
+    }
+
+    public void setPreview(String preview) {
+        this.preview = preview;
+    }
+
     public long getLastModified() {
         return lastModified;
     }
@@ -44,4 +75,44 @@ public class Note {
     public void setLastModified(long lastModified) {
         this.lastModified = lastModified;
     }
-} 
\ No newline at end of file
+
+    public byte[] getContentBlob() {
+        return contentBlob;
+    }
+
+    public void setContentBlob(byte[] contentBlob) {
+        this.contentBlob = contentBlob;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    public void setContentLength(int contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    public String getTitleKey() {
+        return titleKey;
+    }
+
+    public void setTitleKey(String titleKey) {
+        this.titleKey = titleKey;
+    }
+
+    public Long getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(Long deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+}
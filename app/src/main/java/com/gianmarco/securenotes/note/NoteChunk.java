@@ -0,0 +1,91 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.room.Entity;
+
+/**
+ * Porzione del contenuto di una nota molto lunga. I numeri di sequenza lasciano spazi tra un
+ * pezzo e l'altro, così inserire un pezzo nel mezzo non costringe a rinumerare i successivi.
+ * Il testo è l'ultima colonna: il confronto per checksum non legge le pagine di overflow.
+ */
+@Entity(tableName = "note_chunks", primaryKeys = {"noteId", "seq"})
+public class NoteChunk {
+
+    private long noteId;
+    private long seq;
+    private long checksum;
+    private int length;
+    private String body;
+
+    public long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(long noteId) {
+        this.noteId = noteId;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(long checksum) {
+        this.checksum = checksum;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    /**
+     * Posizione e impronta di un pezzo, senza il testo
+     */
+    public static class Info {
+        private long seq;
+        private long checksum;
+        private int length;
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public void setSeq(long seq) {
+            this.seq = seq;
+        }
+
+        public long getChecksum() {
+            return checksum;
+        }
+
+        public void setChecksum(long checksum) {
+            this.checksum = checksum;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public void setLength(int length) {
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface NoteChunkDao {
+
+    @Query("SELECT seq, checksum, length FROM note_chunks WHERE noteId = :noteId ORDER BY seq")
+    List<NoteChunk.Info> getChunkInfo(long noteId);
+
+    // Lettura a blocchi in ordine, ripartendo dall'ultimo numero di sequenza letto
+    @Query("SELECT * FROM note_chunks WHERE noteId = :noteId AND seq > :afterSeq ORDER BY seq LIMIT :limit")
+    List<NoteChunk> getChunksAfter(long noteId, long afterSeq, int limit);
+
+    @Insert
+    void insertAll(List<NoteChunk> chunks);
+
+    @Query("UPDATE note_chunks SET body = :body, checksum = :checksum, length = :length " +
+            "WHERE noteId = :noteId AND seq = :seq")
+    void updateChunk(long noteId, long seq, String body, long checksum, int length);
+
+    @Query("DELETE FROM note_chunks WHERE noteId = :noteId AND seq IN (:seqs)")
+    void deleteChunks(long noteId, List<Long> seqs);
+
+    @Query("DELETE FROM note_chunks WHERE noteId = :noteId")
+    void deleteByNote(long noteId);
+
+    @Query("DELETE FROM note_chunks WHERE noteId IN (:noteIds)")
+    void deleteByNotes(List<Long> noteIds);
+}
@@ -0,0 +1,217 @@
+package com.gianmarco.securenotes.note;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Divide il contenuto delle note molto lunghe in pezzi allineati ai paragrafi e li salva
+ * riscrivendo solo quelli cambiati rispetto alla versione sul database.
+ */
+final class NoteChunker {
+
+    // Un pezzo si chiude al primo a capo dopo TARGET caratteri, o comunque a MAX
+    static final int TARGET_CHUNK_LENGTH = 2 * 1024;
+    static final int MAX_CHUNK_LENGTH = 8 * 1024;
+    // Distanza iniziale tra i numeri di sequenza, lascia spazio agli inserimenti
+    static final long SEQ_STEP = 1L << 20;
+    private static final int READ_BATCH = 16;
+    private static final int DELETE_BATCH = 500;
+
+    private NoteChunker() {
+    }
+
+    static List<String> split(String content) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        int length = content.length();
+        while (start < length) {
+            int end = Math.min(start + MAX_CHUNK_LENGTH, length);
+            int newline = content.indexOf('\n', start + TARGET_CHUNK_LENGTH - 1);
+            if (newline >= 0 && newline < end) {
+                end = newline + 1;
+            } else if (end < length && Character.isHighSurrogate(content.charAt(end - 1))) {
+                end--;
+            }
+            chunks.add(content.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    // FNV-1a a 64 bit sui caratteri: basta a riconoscere i pezzi invariati
+    static long checksum(String chunk) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < chunk.length(); i++) {
+            hash ^= chunk.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Salva il contenuto confrontandolo con i pezzi già presenti: i pezzi iniziali e finali invariati
+     * non vengono toccati, quelli nel mezzo vengono aggiornati, eliminati o inseriti.
+     * Va chiamato dentro una transazione.
+     * @return il numero di righe scritte
+     */
+    static int write(NoteChunkDao dao, long noteId, String content) {
+        List<String> chunks = split(content);
+        List<NoteChunk.Info> old = dao.getChunkInfo(noteId);
+
+        int prefix = 0;
+        while (prefix < old.size() && prefix < chunks.size() && same(old.get(prefix), chunks.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < old.size() - prefix && suffix < chunks.size() - prefix
+                && same(old.get(old.size() - 1 - suffix), chunks.get(chunks.size() - 1 - suffix))) {
+            suffix++;
+        }
+        int oldEnd = old.size() - suffix;
+        int newEnd = chunks.size() - suffix;
+        int updated = Math.min(oldEnd - prefix, newEnd - prefix);
+
+        for (int i = 0; i < updated; i++) {
+            String chunk = chunks.get(prefix + i);
+            dao.updateChunk(noteId, old.get(prefix + i).getSeq(), chunk, checksum(chunk), chunk.length());
+        }
+
+        List<Long> removed = new ArrayList<>();
+        for (int i = prefix + updated; i < oldEnd; i++) {
+            removed.add(old.get(i).getSeq());
+        }
+        for (int from = 0; from < removed.size(); from += DELETE_BATCH) {
+            dao.deleteChunks(noteId, removed.subList(from, Math.min(from + DELETE_BATCH, removed.size())));
+        }
+
+        int inserted = newEnd - prefix - updated;
+        if (inserted > 0) {
+            long low = prefix + updated > 0 ? old.get(prefix + updated - 1).getSeq() : 0;
+            boolean hasNext = oldEnd < old.size();
+            long step = hasNext ? (old.get(oldEnd).getSeq() - low) / (inserted + 1) : SEQ_STEP;
+            if (step == 0) {
+                // Nessuno spazio tra i numeri di sequenza: si riscrive la nota da capo
+                dao.deleteByNote(noteId);
+                dao.insertAll(toEntities(noteId, chunks, 0, chunks.size(), 0, SEQ_STEP));
+                return chunks.size();
+            }
+            dao.insertAll(toEntities(noteId, chunks, prefix + updated, newEnd, low, step));
+        }
+        return updated + removed.size() + inserted;
+    }
+
+    /**
+     * Indica se i pezzi salvati corrispondono già al contenuto, senza leggerne il testo
+     */
+    static boolean matches(NoteChunkDao dao, long noteId, String content) {
+        List<String> chunks = split(content);
+        List<NoteChunk.Info> old = dao.getChunkInfo(noteId);
+        if (old.size() != chunks.size()) {
+            return false;
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            if (!same(old.get(i), chunks.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Legge il contenuto completo della nota
+     */
+    static String read(NoteChunkDao dao, long noteId) {
+        StringBuilder sb = new StringBuilder();
+        try (Reader reader = new ChunkReader(dao, noteId)) {
+            char[] buffer = new char[MAX_CHUNK_LENGTH];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, count);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Lettura dei pezzi della nota fallita", e);
+        }
+        return sb.toString();
+    }
+
+    private static boolean same(NoteChunk.Info info, String chunk) {
+        return info.getLength() == chunk.length() && info.getChecksum() == checksum(chunk);
+    }
+
+    private static List<NoteChunk> toEntities(long noteId, List<String> chunks, int from, int to, long low, long step) {
+        List<NoteChunk> entities = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            NoteChunk entity = new NoteChunk();
+            entity.setNoteId(noteId);
+            entity.setSeq(low + step * (i - from + 1));
+            entity.setBody(chunks.get(i));
+            entity.setChecksum(checksum(chunks.get(i)));
+            entity.setLength(chunks.get(i).length());
+            entities.add(entity);
+        }
+        return entities;
+    }
+
+    /**
+     * Legge i pezzi in ordine, pochi alla volta, senza caricare l'intera nota in memoria
+     */
+    static class ChunkReader extends Reader {
+        private final NoteChunkDao dao;
+        private final long noteId;
+        private final List<NoteChunk> pending = new ArrayList<>();
+        private long lastSeq;
+        private String current = "";
+        private int position;
+        private boolean exhausted;
+
+        ChunkReader(NoteChunkDao dao, long noteId) {
+            this.dao = dao;
+            this.noteId = noteId;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            while (position >= current.length()) {
+                if (!nextChunk()) {
+                    return -1;
+                }
+            }
+            int count = Math.min(length, current.length() - position);
+            current.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        private boolean nextChunk() {
+            if (pending.isEmpty()) {
+                if (exhausted) {
+                    return false;
+                }
+                List<NoteChunk> batch = dao.getChunksAfter(noteId, lastSeq, READ_BATCH);
+                if (batch.size() < READ_BATCH) {
+                    exhausted = true;
+                }
+                if (batch.isEmpty()) {
+                    return false;
+                }
+                pending.addAll(batch);
+                lastSeq = batch.get(batch.size() - 1).getSeq();
+            }
+            NoteChunk chunk = pending.remove(0);
+            current = chunk.getBody() != null ? chunk.getBody() : "";
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            pending.clear();
+            exhausted = true;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.gianmarco.securenotes.note;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Formato di salvataggio del contenuto delle note. I testi oltre la soglia vengono compressi con
+ * deflate nella colonna contentBlob, preceduti da un byte che ne indica il formato; nella colonna
+ * content resta solo l'inizio del testo. L'indice full-text riceve comunque il testo completo.
+ * Le note molto lunghe vanno invece in note_chunks (vedi {@link NoteChunker}) e contentBlob
+ * contiene solo il byte di formato.
+ */
+final class NoteCodec {
+
+    static final byte FORMAT_DEFLATE = 1;
+    static final byte FORMAT_CHUNKED = 2;
+    // Soglia in caratteri oltre la quale il contenuto viene compresso
+    static final int COMPRESSION_THRESHOLD = 8 * 1024;
+    // Oltre questa soglia il contenuto viene diviso in pezzi, così una modifica riscrive solo quelli cambiati
+    static final int CHUNKING_THRESHOLD = 256 * 1024;
+    // Caratteri lasciati in chiaro nella colonna content
+    static final int HEAD_LENGTH = 4 * 1024;
+
+    private NoteCodec() {
+    }
+
+    static boolean needsCompression(String content) {
+        return content != null && content.length() > COMPRESSION_THRESHOLD;
+    }
+
+    static boolean needsChunking(String content) {
+        return content != null && content.length() > CHUNKING_THRESHOLD;
+    }
+
+    static boolean isChunked(Note note) {
+        byte[] blob = note.getContentBlob();
+        return blob != null && blob.length == 1 && blob[0] == FORMAT_CHUNKED;
+    }
+
+    /**
+     * Restituisce la copia della nota da scrivere sul database; la nota originale non viene modificata.
+     * Per le note da dividere in pezzi i pezzi vanno scritti a parte con {@link NoteChunker#write}.
+     */
+    static Note encode(Note note) {
+        Note stored = copy(note);
+        String content = note.getContent();
+        if (needsChunking(content)) {
+            stored.setContent(head(content));
+            stored.setContentBlob(new byte[]{FORMAT_CHUNKED});
+        } else if (needsCompression(content)) {
+            stored.setContent(head(content));
+            stored.setContentBlob(compress(content));
+        } else {
+            stored.setContentBlob(null);
+        }
+        return stored;
+    }
+
+    /**
+     * Ricostruisce il contenuto completo di una nota compressa letta dal database.
+     * Le note divise in pezzi restano invariate: il contenuto va letto da note_chunks.
+     */
+    static Note decode(Note note) {
+        if (note != null && note.getContentBlob() != null && !isChunked(note)) {
+            note.setContent(decompress(note.getContentBlob()));
+            note.setContentBlob(null);
+        }
+        return note;
+    }
+
+    static String head(String content) {
+        int end = Math.min(content.length(), HEAD_LENGTH);
+        // Non spezza una coppia surrogata
+        if (end > 0 && end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        return content.substring(0, end);
+    }
+
+    static byte[] compress(String content) {
+        byte[] input = content.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 3 + 16);
+            out.write(FORMAT_DEFLATE);
+            byte[] buffer = new byte[8 * 1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decompress(byte[] blob) {
+        if (blob.length == 0 || blob[0] != FORMAT_DEFLATE) {
+            throw new IllegalArgumentException("Formato del contenuto non riconosciuto");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob, 1, blob.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(blob.length * 3);
+            byte[] buffer = new byte[8 * 1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Contenuto compresso troncato");
+                }
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Contenuto compresso non valido", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static Note copy(Note note) {
+        Note copy = new Note();
+        copy.setId(note.getId());
+        copy.setTitle(note.getTitle());
+        copy.setContent(note.getContent());
+        copy.setPreview(note.getPreview());
+        copy.setLastModified(note.getLastModified());
+        copy.setContentBlob(note.getContentBlob());
+        copy.setCreatedAt(note.getCreatedAt());
+        copy.setContentLength(note.getContentLength());
+        copy.setDeletedAt(note.getDeletedAt());
+        return copy;
+    }
+}
@@ -2,35 +2,181 @@ package com.gianmarco.securenotes.note;
 
 import androidx.room.Dao;
 import androidx.room.Insert;
-import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
-import androidx.room.Update;
+import androidx.room.RawQuery;
+import androidx.room.SkipQueryVerification;
+import androidx.room.Transaction;
 import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 import java.util.List;
 
+/**
+ * Le note nel cestino sono escluse con {@code +deletedAt IS NULL}: il + unario impedisce a SQLite
+ * di scegliere l'indice su deletedAt, che lo costringerebbe a ordinare le note in un B-tree temporaneo.
+ */
 @Dao
 public interface NoteDao {
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insert(Note note);
+    // Niente REPLACE: la cancellazione implicita non attiva i trigger di cancellazione di notes
+    // (recursive_triggers è disattivato)
+    @Insert
+    long insert(Note note);
 
-    @Update
-    void update(Note note);
+    // Aggiorna solo le colonne scritte dall'editor: createdAt e deletedAt restano quelli sul
+    // database, così un salvataggio concorrente non riporta fuori dal cestino una nota appena eliminata
+    @Query("UPDATE notes SET title = :title, content = :content, preview = :preview, contentBlob = :contentBlob, " +
+            "contentLength = :contentLength, titleKey = :titleKey, lastModified = :lastModified WHERE id = :noteId")
+    int updateContent(long noteId, String title, String content, String preview, byte[] contentBlob,
+                      int contentLength, String titleKey, long lastModified);
 
-    @Query("SELECT * FROM notes ORDER BY lastModified DESC")
+    default int update(Note note) {
+        return updateContent(note.getId(), note.getTitle(), note.getContent(), note.getPreview(), note.getContentBlob(),
+                note.getContentLength(), note.getTitleKey(), note.getLastModified());
+    }
+
+    @Query("SELECT * FROM notes WHERE +deletedAt IS NULL ORDER BY lastModified DESC")
     LiveData<List<Note>> getAllNotes();
 
+    // Ordinamento stabile anche a parità di lastModified, per non duplicare righe tra una pagina e l'altra
+    @Query("SELECT id, title, preview, lastModified FROM notes WHERE +deletedAt IS NULL ORDER BY lastModified DESC, id DESC")
+    PagingSource<Integer, NoteSummary> getNoteSummariesPaged();
+
+    // CROSS JOIN fissa note_tags come tabella esterna: l'indice (tagId, lastModified, noteId)
+    // restituisce le righe già nell'ordine della dashboard, senza ordinamento temporaneo
+    @Query("SELECT notes.id, notes.title, notes.preview, notes.lastModified " +
+            "FROM note_tags CROSS JOIN notes ON notes.id = note_tags.noteId " +
+            "WHERE note_tags.tagId = :tagId AND +notes.deletedAt IS NULL " +
+            "ORDER BY note_tags.lastModified DESC, note_tags.noteId DESC")
+    PagingSource<Integer, NoteSummary> getNoteSummariesByTagPaged(long tagId);
+
+    /**
+     * Lista paginata con ordinamento e filtri scelti dall'utente
+     * @param query costruita da {@link NoteListQuery#build()}
+     */
+    @RawQuery(observedEntities = {Note.class, NoteTag.class})
+    PagingSource<Integer, NoteSummary> getNoteSummariesFiltered(SupportSQLiteQuery query);
+
+    @Query("SELECT createdAt FROM notes WHERE id = :noteId")
+    Long getCreatedAt(long noteId);
+
     @Query("SELECT * FROM notes WHERE id = :noteId")
     LiveData<Note> getNoteById(long noteId);
 
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insertOrUpdate(Note note);
+    @Query("SELECT * FROM notes WHERE id = :noteId")
+    Note getNoteByIdSync(long noteId);
+
+    /**
+     * Aggiorna la nota se esiste, altrimenti la inserisce, senza mai cancellare la riga.
+     * Non usa @Upsert: Room riconosce il conflitto solo da android.database.sqlite.SQLiteConstraintException,
+     * mentre SQLCipher lancia quella di net.sqlcipher e il salvataggio di una nota esistente fallirebbe.
+     * @return il rowid della nota inserita, -1 se è stata aggiornata
+     */
+    @Transaction
+    default long insertOrUpdate(Note note) {
+        if (note.getId() != 0 && update(note) > 0) {
+            return -1;
+        }
+        return insert(note);
+    }
 
     @Query("DELETE FROM notes WHERE id = :noteId")
     void deleteById(long noteId);
 
-    @Query("SELECT * FROM notes ORDER BY lastModified DESC")
+    // Le operazioni su liste girano in un'unica transazione generata da Room
+    @Insert
+    long[] insertAll(List<Note> notes);
+
+    @Query("DELETE FROM notes WHERE id IN (:noteIds)")
+    int deleteByIds(List<Long> noteIds);
+
+    /**
+     * Sposta le note nel cestino con deletedAt = momento attuale, o le ripristina con null
+     */
+    @Query("UPDATE notes SET deletedAt = :deletedAt WHERE id IN (:noteIds)")
+    int setDeletedAt(List<Long> noteIds, Long deletedAt);
+
+    @Query("SELECT id, title, preview, lastModified FROM notes WHERE deletedAt IS NOT NULL ORDER BY deletedAt DESC")
+    LiveData<List<NoteSummary>> getTrashedNotes();
+
+    @Query("SELECT id FROM notes WHERE deletedAt < :cutoff")
+    List<Long> getTrashedNoteIdsBefore(long cutoff);
+
+    @Query("SELECT * FROM notes WHERE +deletedAt IS NULL ORDER BY lastModified DESC")
     List<Note> getAllNotesSync();
 
+    // Caricamento di NoteStore: la stessa lettura della dashboard, tutta in una volta
+    @Query("SELECT id, title, preview, lastModified FROM notes WHERE +deletedAt IS NULL " +
+            "ORDER BY lastModified DESC, id DESC LIMIT :limit")
+    List<NoteSummary> getNoteSummariesSync(int limit);
+
+    @Query("SELECT id, title, preview, lastModified FROM notes WHERE id IN (:noteIds) AND +deletedAt IS NULL")
+    List<NoteSummary> getNoteSummariesByIds(List<Long> noteIds);
+
+    // Usata solo dalla compressione in background delle note salvate prima di contentBlob
+    @Query("SELECT id FROM notes WHERE contentBlob IS NULL AND length(content) > :threshold LIMIT :limit")
+    List<Long> getUncompressedNoteIds(int threshold, int limit);
+
+    @Query("UPDATE notes SET content = :content, contentBlob = :contentBlob WHERE id = :noteId")
+    void updateStoredContent(long noteId, String content, byte[] contentBlob);
+
+    // L'indice full-text va scritto dal repository con il testo completo (vedi NoteFts).
+    // notes_fts è creata a mano, quindi Room non può verificare le query che la usano.
+    @SkipQueryVerification
+    @Query("INSERT INTO notes_fts(rowid, title, content) VALUES (:noteId, :title, :content)")
+    void insertFts(long noteId, String title, String content);
+
+    @SkipQueryVerification
+    @Query("DELETE FROM notes_fts WHERE rowid = :noteId")
+    void deleteFtsRow(long noteId);
+
+    @SkipQueryVerification
+    @Query("INSERT OR REPLACE INTO notes_fts_text(rowid, content) VALUES (:noteId, :content)")
+    void insertFtsText(long noteId, String content);
+
+    @SkipQueryVerification
+    @Query("DELETE FROM notes_fts_text WHERE rowid = :noteId")
+    void deleteFtsText(long noteId);
+
+    /**
+     * Toglie la nota dall'indice full-text. Va chiamata prima di modificare o cancellare la riga
+     * in notes: FTS4 rilegge dalla vista i termini da rimuovere.
+     * @param fullContent testo completo di una nota compressa o divisa in pezzi, null se
+     *                    notes.content contiene già tutto il testo
+     */
+    @Transaction
+    default void deleteFts(long noteId, String fullContent) {
+        if (fullContent == null) {
+            deleteFtsRow(noteId);
+            return;
+        }
+        insertFtsText(noteId, fullContent);
+        deleteFtsRow(noteId);
+        deleteFtsText(noteId);
+    }
+
+    @SkipQueryVerification
+    @Query("SELECT notes.id AS id, notes.title AS title, notes.lastModified AS lastModified, " +
+            "snippet(notes_fts, char(2), char(3), '...', -1, 16) AS snippet, " +
+            "matchinfo(notes_fts, 'pcnalx') AS matchInfo " +
+            "FROM notes_fts JOIN notes ON notes.id = notes_fts.rowid " +
+            "WHERE notes_fts MATCH :query AND +notes.deletedAt IS NULL")
+    List<NoteSearchResult> searchUnranked(String query);
+
+    @Query("SELECT * FROM notes WHERE id IN (:noteIds) AND +deletedAt IS NULL")
+    List<Note> getNotesByIdsSync(List<Long> noteIds);
+
+    @Query("SELECT id, title, lastModified FROM notes WHERE id IN (:noteIds) AND +deletedAt IS NULL")
+    List<NoteSearchResult> getSearchResultsByIds(List<Long> noteIds);
+
+    /**
+     * Ricerca full-text ordinata per rilevanza (BM25).
+     * @param query espressione MATCH di FTS4
+     */
+    default List<NoteSearchResult> search(String query) {
+        List<NoteSearchResult> results = searchUnranked(query);
+        NoteSearchRanker.rank(results);
+        return results;
+    }
 } 
\ No newline at end of file
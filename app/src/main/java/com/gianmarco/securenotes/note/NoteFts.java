@@ -0,0 +1,36 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Indice full-text delle note, con rowid uguale all'id della nota. L'indice non conserva una
+ * copia del testo: notes_fts è una tabella FTS4 a contenuto esterno sulla vista notes_fts_content,
+ * che legge titolo e content da notes. Per le note compresse o divise in pezzi content ne ha solo
+ * l'inizio, quindi il repository indicizza il testo completo decodificato e, per toglierlo
+ * dall'indice, lo appoggia in notes_fts_text per la durata della transazione: la vista lo
+ * preferisce a notes.content. Gli snippet di queste note vengono dall'inizio salvato in content.
+ * <p>
+ * Room non accetta una vista come contenuto esterno, quindi le tabelle sono create qui e le query
+ * che le usano sono marcate con @SkipQueryVerification. Il comando 'rebuild' di FTS4 non va usato:
+ * rileggerebbe dalla vista solo l'inizio delle note compresse.
+ */
+public final class NoteFts {
+
+    private NoteFts() {
+    }
+
+    /**
+     * Ricrea indice, vista e tabella di appoggio, vuoti
+     */
+    public static void create(SupportSQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS notes_fts");
+        db.execSQL("DROP VIEW IF EXISTS notes_fts_content");
+        db.execSQL("CREATE TABLE IF NOT EXISTS notes_fts_text (rowid INTEGER PRIMARY KEY, content TEXT)");
+        db.execSQL("DELETE FROM notes_fts_text");
+        db.execSQL("CREATE VIEW notes_fts_content AS SELECT notes.id AS rowid, notes.title AS title, " +
+                "coalesce(notes_fts_text.content, notes.content) AS content " +
+                "FROM notes LEFT JOIN notes_fts_text ON notes_fts_text.rowid = notes.id");
+        db.execSQL("CREATE VIRTUAL TABLE notes_fts USING FTS4(title, content, " +
+                "content=notes_fts_content, tokenize=unicode61)");
+    }
+}
@@ -0,0 +1,224 @@
+package com.gianmarco.securenotes.note;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.security.crypto.EncryptedFile;
+import androidx.security.crypto.MasterKey;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prime righe della dashboard salvate in un file cifrato, per disegnare la lista subito dopo lo
+ * sblocco senza aspettare la chiave e l'apertura di SQLCipher. Il file segue le istantanee di
+ * NoteStore ed è riscritto solo quando le prime righe cambiano, al più una volta per WRITE_DELAY_MS.
+ * Appena arriva la lista vera la dashboard la sostituisce a queste righe.
+ */
+public final class NoteListCache {
+    private static final String TAG = "NoteListCache";
+    private static final String FILE_NAME = "note_list.cache";
+    private static final int FORMAT_VERSION = 1;
+    // Poco più di una schermata: basta per il primo disegno
+    static final int MAX_ROWS = 30;
+    private static final long WRITE_DELAY_MS = 1_000;
+
+    private static volatile NoteListCache instance;
+
+    private final Context context;
+    private final File file;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final MutableLiveData<List<NoteSummary>> cachedRows = new MutableLiveData<>();
+    private MasterKey masterKey;
+    // Stato del thread principale
+    private boolean preloadStarted;
+    private boolean attached;
+    // Stato del thread del file
+    private List<NoteSummary> pendingRows;
+    private boolean writeScheduled;
+    private List<NoteSummary> writtenRows;
+
+    private NoteListCache(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new File(this.context.getFilesDir(), FILE_NAME);
+    }
+
+    public static NoteListCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (NoteListCache.class) {
+                if (instance == null) {
+                    instance = new NoteListCache(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Avvia la lettura del file in background; da chiamare il prima possibile, anche durante lo sblocco
+     */
+    public void preload() {
+        if (preloadStarted) {
+            return;
+        }
+        preloadStarted = true;
+        executor.execute(() -> {
+            List<NoteSummary> rows = read();
+            writtenRows = rows;
+            cachedRows.postValue(rows);
+        });
+    }
+
+    /**
+     * Righe salvate all'ultima modifica della lista, vuota se il file manca o non è leggibile
+     */
+    LiveData<List<NoteSummary>> getCachedRows() {
+        preload();
+        return cachedRows;
+    }
+
+    /**
+     * Tiene il file allineato alle istantanee della lista. Da chiamare sul thread principale.
+     */
+    void attach(LiveData<NoteStore.Snapshot> snapshots) {
+        if (attached) {
+            return;
+        }
+        attached = true;
+        snapshots.observeForever(snapshot -> {
+            List<NoteSummary> notes = snapshot.getNotes();
+            List<NoteSummary> rows = snapshot.isAvailable()
+                    ? new ArrayList<>(notes.subList(0, Math.min(MAX_ROWS, notes.size())))
+                    : null;
+            executor.execute(() -> scheduleWrite(rows));
+        });
+    }
+
+    // Le modifiche ravvicinate (l'autosalvataggio dell'editor) producono una sola scrittura
+    private void scheduleWrite(List<NoteSummary> rows) {
+        pendingRows = rows;
+        if (writeScheduled) {
+            return;
+        }
+        writeScheduled = true;
+        executor.schedule(() -> {
+            writeScheduled = false;
+            List<NoteSummary> latest = pendingRows;
+            if (latest == null) {
+                // Lista non tenuta in memoria: un file non più aggiornato mostrerebbe note sbagliate
+                delete();
+            } else if (!sameRows(latest, writtenRows)) {
+                write(latest);
+            }
+        }, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private List<NoteSummary> read() {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(encryptedFile().openFileInput()))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return Collections.emptyList();
+            }
+            int count = Math.min(in.readInt(), MAX_ROWS);
+            List<NoteSummary> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                NoteSummary row = new NoteSummary();
+                row.setId(in.readInt());
+                row.setTitle(readString(in));
+                row.setPreview(readString(in));
+                row.setLastModified(in.readLong());
+                rows.add(row);
+            }
+            return Collections.unmodifiableList(rows);
+        } catch (Exception e) {
+            Log.w(TAG, "Lista salvata non leggibile, viene ignorata: " + e.getMessage());
+            delete();
+            return Collections.emptyList();
+        }
+    }
+
+    private void write(List<NoteSummary> rows) {
+        // EncryptedFile non sovrascrive: il file va eliminato prima. Se la scrittura si interrompe
+        // il file manca o è troncato e al prossimo avvio la lista arriva solo dal database.
+        delete();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(encryptedFile().openFileOutput()))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(rows.size());
+            for (NoteSummary row : rows) {
+                out.writeInt(row.getId());
+                writeString(out, row.getTitle());
+                writeString(out, row.getPreview());
+                out.writeLong(row.getLastModified());
+            }
+            writtenRows = rows;
+        } catch (Exception e) {
+            Log.e(TAG, "Errore nel salvataggio della lista: " + e.getMessage());
+            delete();
+        }
+    }
+
+    private void delete() {
+        writtenRows = null;
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Eliminazione della lista salvata fallita");
+        }
+    }
+
+    private EncryptedFile encryptedFile() throws GeneralSecurityException, IOException {
+        if (masterKey == null) {
+            masterKey = new MasterKey.Builder(context)
+                    .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
+                    .build();
+        }
+        return new EncryptedFile.Builder(context, file, masterKey,
+                EncryptedFile.FileEncryptionScheme.AES256_GCM_HKDF_4KB).build();
+    }
+
+    private static boolean sameRows(List<NoteSummary> a, List<NoteSummary> b) {
+        if (b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            NoteSummary x = a.get(i);
+            NoteSummary y = b.get(i);
+            if (x.getId() != y.getId() || x.getLastModified() != y.getLastModified()
+                    || !Objects.equals(x.getTitle(), y.getTitle()) || !Objects.equals(x.getPreview(), y.getPreview())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 1 << 20) {
+            throw new IOException("Lunghezza non valida");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
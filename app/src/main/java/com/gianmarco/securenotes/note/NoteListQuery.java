@@ -0,0 +1,98 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import com.gianmarco.securenotes.ListSort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query della lista note con ordinamento, filtro per tag e intervallo di date di modifica.
+ * Ogni ordinamento ha un indice (chiave, id) su notes; i filtri sulle altre colonne sono scritti
+ * con il + unario, così SQLite legge l'indice dell'ordinamento invece di ordinare un B-tree temporaneo.
+ */
+public class NoteListQuery {
+
+    private static final String COLUMNS = "notes.id, notes.title, notes.preview, notes.lastModified";
+
+    private final ListSort sort;
+    private final Long tagId;
+    private final Long modifiedFrom;
+    private final Long modifiedTo;
+
+    /**
+     * @param modifiedFrom inizio incluso dell'intervallo, null per nessun limite
+     * @param modifiedTo fine esclusa dell'intervallo, null per nessun limite
+     */
+    public NoteListQuery(ListSort sort, Long tagId, Long modifiedFrom, Long modifiedTo) {
+        this.sort = sort;
+        this.tagId = tagId;
+        this.modifiedFrom = modifiedFrom;
+        this.modifiedTo = modifiedTo;
+    }
+
+    public ListSort getSort() {
+        return sort;
+    }
+
+    public Long getTagId() {
+        return tagId;
+    }
+
+    public Long getModifiedFrom() {
+        return modifiedFrom;
+    }
+
+    public Long getModifiedTo() {
+        return modifiedTo;
+    }
+
+    public SimpleSQLiteQuery build() {
+        List<Object> args = new ArrayList<>();
+        return new SimpleSQLiteQuery(toSql(args), args.toArray());
+    }
+
+    private String toSql(List<Object> args) {
+        if (tagId != null && sort == ListSort.MODIFIED) {
+            // note_tags ha già lastModified in ordine per tag: la stessa forma di getNoteSummariesByTagPaged
+            StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS)
+                    .append(" FROM note_tags CROSS JOIN notes ON notes.id = note_tags.noteId WHERE note_tags.tagId = ? AND +notes.deletedAt IS NULL");
+            args.add(tagId);
+            appendRange(sql, args, "note_tags.lastModified");
+            return sql.append(" ORDER BY note_tags.lastModified DESC, note_tags.noteId DESC").toString();
+        }
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM notes WHERE +notes.deletedAt IS NULL");
+        if (tagId != null) {
+            sql.append(" AND +notes.id IN (SELECT noteId FROM note_tags WHERE tagId = ?)");
+            args.add(tagId);
+        }
+        appendRange(sql, args, sort == ListSort.MODIFIED ? "notes.lastModified" : "+notes.lastModified");
+        return sql.append(" ORDER BY ").append(orderBy()).toString();
+    }
+
+    private void appendRange(StringBuilder sql, List<Object> args, String column) {
+        if (modifiedFrom != null) {
+            sql.append(" AND ").append(column).append(" >= ?");
+            args.add(modifiedFrom);
+        }
+        if (modifiedTo != null) {
+            sql.append(" AND ").append(column).append(" < ?");
+            args.add(modifiedTo);
+        }
+    }
+
+    private String orderBy() {
+        switch (sort) {
+            case TITLE:
+                return "notes.titleKey, notes.id";
+            case CREATED:
+                return "notes.createdAt DESC, notes.id DESC";
+            case SIZE:
+                return "notes.contentLength DESC, notes.id DESC";
+            case MODIFIED:
+            default:
+                return "notes.lastModified DESC, notes.id DESC";
+        }
+    }
+}
@@ -1,58 +1,867 @@
 package com.gianmarco.securenotes.note;
 
 import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
+import android.util.LruCache;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.paging.PagingSource;
 
+import com.gianmarco.securenotes.PassphraseManager;
 import com.gianmarco.securenotes.SecureNoteDB;
+import com.gianmarco.securenotes.ZipExportWriter;
+import com.gianmarco.securenotes.search.TrigramDao;
+import com.gianmarco.securenotes.search.TrigramEntry;
+import com.gianmarco.securenotes.search.TrigramIndex;
+import com.gianmarco.securenotes.search.TrigramMatch;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
 public class NoteRepository {
     private static final String TAG = "NoteRepository";
+    private static final int FUZZY_LIMIT = 10;
+    // Gli id vengono passati come parametri di IN (...): restiamo ben sotto il limite di variabili di SQLite
+    private static final int BATCH_SIZE = 500;
+    // Note lette insieme durante un'esportazione: il contenuto completo resta in memoria solo per un blocco
+    private static final int EXPORT_BATCH_SIZE = 50;
+    // Lunghezza dell'anteprima salvata: basta per le due righe mostrate in lista
+    static final int PREVIEW_LENGTH = 200;
+
+    // Note caricate in anticipo alla pressione di una riga, condivise tra i repository
+    private static final LruCache<Long, Note> prefetchedNotes = new LruCache<>(4);
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final String DRAFTS_DIR = "drafts";
+    private static volatile SecretKey draftKey;
     
+    private final SecureNoteDB db;
     private final NoteDao noteDao;
-    private final ExecutorService executorService;
+    private final NoteChunkDao noteChunkDao;
+    private final NoteRevisionDao noteRevisionDao;
+    private final TrigramDao trigramDao;
+    private final TagDao tagDao;
+    private final NoteStore noteStore;
+    private final NoteListCache listCache;
+    // Creato al primo metodo asincrono: i worker usano solo quelli sincroni e non lasciano thread aperti
+    private ExecutorService executorService;
     private final Context context;
 
     public NoteRepository(Context context) {
+        this(context, SecureNoteDB.getInstance(context.getApplicationContext()));
+    }
+
+    // Per i test, su un database separato da quello dell'app
+    NoteRepository(Context context, SecureNoteDB db) {
         this.context = context.getApplicationContext();
-        SecureNoteDB db = SecureNoteDB.getInstance(this.context);
+        this.db = db;
         this.noteDao = db.noteDao();
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.noteChunkDao = db.noteChunkDao();
+        this.noteRevisionDao = db.noteRevisionDao();
+        this.trigramDao = db.trigramDao();
+        this.tagDao = db.tagDao();
+        this.noteStore = NoteStore.getInstance();
+        this.listCache = NoteListCache.getInstance(this.context);
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executorService == null) {
+            executorService = Executors.newSingleThreadExecutor();
+        }
+        return executorService;
+    }
+
+    /**
+     * Apre il database sull'executor del repository, così la prima query della dashboard lo trova
+     * già aperto. Va chiamato solo dopo lo sblocco: la chiave viene letta quando il repository nasce.
+     */
+    public void openDatabase() {
+        executor().execute(() -> {
+            try {
+                db.getOpenHelper().getWritableDatabase();
+            } catch (Exception e) {
+                Log.e(TAG, "Apertura del database fallita: " + e.getMessage());
+            }
+        });
     }
 
     public void insertOrUpdate(Note note) {
-        executorService.execute(() -> {
+        // La lista in memoria si aggiorna subito; una nota nuova vi entra quando il database le assegna l'id
+        if (note.getId() != 0) {
+            noteStore.put(toSummary(note, note.getId()));
+        }
+        executor().execute(() -> {
             try {
-                noteDao.insertOrUpdate(note);
+                insertOrUpdateSync(note);
             } catch (Exception e) {
                 Log.e(TAG, "Error e durante l'inserimento/aggiornamento della nota: " + e.getMessage());
             }
         });
     }
 
+    /**
+     * Salva la nota nel thread corrente e restituisce il suo id (anche quando è appena stata creata)
+     */
+    public long insertOrUpdateSync(Note note) {
+        return insertOrUpdateSync(note, true);
+    }
+
+    /**
+     * Come {@link #insertOrUpdateSync(Note)}; con recordRevision false lo storico delle versioni
+     * non viene aggiornato, per i salvataggi automatici durante la digitazione
+     * (vedi {@link #recordRevisionSync}).
+     */
+    public long insertOrUpdateSync(Note note, boolean recordRevision) {
+        keepCreatedAt(note);
+        prepareForStorage(note);
+        prefetchedNotes.remove((long) note.getId());
+        Note stored = NoteCodec.encode(note);
+        if (note.getId() != 0) {
+            noteStore.put(toSummary(note, note.getId()));
+        }
+        long savedId;
+        try {
+            savedId = db.runInTransaction(() -> writeNote(note, stored, recordRevision));
+        } catch (RuntimeException e) {
+            // La copia in memoria anticipava una scrittura che non è avvenuta
+            noteStore.reload(noteDao);
+            throw e;
+        }
+        if (note.getDeletedAt() != null) {
+            // Spostata nel cestino mentre l'editor era aperto: resta fuori dalla lista
+            noteStore.removeAll(Collections.singletonList(savedId));
+        } else {
+            noteStore.put(toSummary(note, savedId));
+        }
+        return savedId;
+    }
+
+    /**
+     * Aggiunge allo storico una versione della nota già salvata senza revisione, ad esempio
+     * con l'ultimo salvataggio automatico quando l'editor viene chiuso
+     */
+    public void recordRevisionSync(long noteId, String content, long lastModified) {
+        db.runInTransaction(() -> recordRevision(noteId, content, lastModified));
+    }
+
+    /**
+     * Apre il diario delle modifiche non salvate della nota (o della nuova nota, con id non valido).
+     * Da usare fuori dal thread principale.
+     */
+    public DraftJournal openDraftJournal(long noteId, String savedTitle, String savedTags, String savedContent) {
+        File dir = new File(context.getFilesDir(), DRAFTS_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        String name = noteId > 0 ? String.valueOf(noteId) : "new";
+        return new DraftJournal(new File(dir, name + ".journal"), getDraftKey(), savedTitle, savedTags, savedContent);
+    }
+
+    private void deleteDraftJournal(long noteId) {
+        File journal = new File(new File(context.getFilesDir(), DRAFTS_DIR), noteId + ".journal");
+        if (journal.exists() && !journal.delete()) {
+            Log.w(TAG, "Eliminazione del diario della nota fallita");
+        }
+    }
+
+    // Chiave dei diari derivata dalla passphrase del database, distinta da questa
+    private SecretKey getDraftKey() {
+        if (draftKey == null) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(PassphraseManager.getPassphrase(context), "HmacSHA256"));
+                draftKey = new SecretKeySpec(mac.doFinal("draft_journal".getBytes(StandardCharsets.UTF_8)), "AES");
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("Could not derive draft key", e);
+            }
+        }
+        return draftKey;
+    }
+
+    /**
+     * Inserisce più note nuove in un'unica transazione
+     */
+    public void insertAll(List<Note> notes) {
+        executor().execute(() -> {
+            try {
+                insertAllSync(notes);
+            } catch (Exception e) {
+                Log.e(TAG, "Errore durante l'inserimento delle note: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Versione sincrona di {@link #insertAll(List)}, per i worker: un solo commit per tutto il blocco
+     */
+    public void insertAllSync(List<Note> notes) {
+        if (notes.isEmpty()) {
+            return;
+        }
+        for (Note note : notes) {
+            prepareForStorage(note);
+        }
+        List<Note> stored = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            stored.add(NoteCodec.encode(note));
+        }
+        long[] ids = db.runInTransaction(() -> {
+            long[] inserted = noteDao.insertAll(stored);
+            List<TrigramEntry> entries = new ArrayList<>();
+            for (int i = 0; i < inserted.length; i++) {
+                if (NoteCodec.isChunked(stored.get(i))) {
+                    NoteChunker.write(noteChunkDao, inserted[i], notes.get(i).getContent());
+                }
+                noteDao.insertFts(inserted[i], notes.get(i).getTitle(), notes.get(i).getContent());
+                entries.addAll(TrigramIndex.entries(TrigramEntry.KIND_NOTE, inserted[i], notes.get(i).getTitle()));
+            }
+            if (!entries.isEmpty()) {
+                trigramDao.insertAll(entries);
+            }
+            return inserted;
+        });
+        List<NoteSummary> summaries = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            summaries.add(toSummary(notes.get(i), ids[i]));
+        }
+        noteStore.putAll(summaries);
+    }
+
+    /**
+     * Inserisce o aggiorna più note in un'unica transazione
+     */
+    public void upsertAll(List<Note> notes) {
+        if (notes.isEmpty()) {
+            return;
+        }
+        List<NoteSummary> known = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            prefetchedNotes.remove((long) note.getId());
+            if (note.getId() != 0) {
+                known.add(toSummary(note, note.getId()));
+            }
+        }
+        noteStore.putAll(known);
+        executor().execute(() -> {
+            try {
+                for (Note note : notes) {
+                    keepCreatedAt(note);
+                    prepareForStorage(note);
+                }
+                List<Note> stored = new ArrayList<>(notes.size());
+                for (Note note : notes) {
+                    stored.add(NoteCodec.encode(note));
+                }
+                List<NoteSummary> summaries = new ArrayList<>(notes.size());
+                List<Long> trashed = new ArrayList<>();
+                db.runInTransaction(() -> {
+                    for (int i = 0; i < notes.size(); i++) {
+                        long noteId = writeNote(notes.get(i), stored.get(i), true);
+                        if (notes.get(i).getDeletedAt() != null) {
+                            trashed.add(noteId);
+                        } else {
+                            summaries.add(toSummary(notes.get(i), noteId));
+                        }
+                    }
+                });
+                noteStore.putAll(summaries);
+                noteStore.removeAll(trashed);
+            } catch (Exception e) {
+                Log.e(TAG, "Errore durante l'aggiornamento delle note: " + e.getMessage());
+                noteStore.reload(noteDao);
+            }
+        });
+    }
+
+    /**
+     * Sposta più note nel cestino in un'unica transazione; l'eliminazione vera avviene
+     * in background alla scadenza (vedi TrashPurgeWorker)
+     * @return il numero di note spostate a operazione conclusa, -1 in caso di errore
+     */
+    public LiveData<Integer> deleteByIds(List<Long> noteIds) {
+        MutableLiveData<Integer> result = new MutableLiveData<>();
+        for (Long noteId : noteIds) {
+            prefetchedNotes.remove(noteId);
+        }
+        noteStore.removeAll(noteIds);
+        executor().execute(() -> {
+            try {
+                setDeletedAtSync(noteIds, System.currentTimeMillis());
+                noteStore.removeAll(noteIds);
+                result.postValue(noteIds.size());
+            } catch (Exception e) {
+                Log.e(TAG, "Errore durante lo spostamento delle note nel cestino: " + e.getMessage());
+                noteStore.reload(noteDao);
+                result.postValue(-1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Aggiunge dei tag, creandoli se serve, a più note in un'unica transazione
+     * @return il numero di note elaborate a operazione conclusa, -1 in caso di errore
+     */
+    public LiveData<Integer> addTagsToNotes(List<String> tagNames, List<Long> noteIds) {
+        MutableLiveData<Integer> result = new MutableLiveData<>();
+        executor().execute(() -> {
+            try {
+                db.runInTransaction(() -> {
+                    for (String tagName : tagNames) {
+                        long tagId = tagDao.getOrCreateTag(tagName);
+                        for (int from = 0; from < noteIds.size(); from += BATCH_SIZE) {
+                            tagDao.addTagToNotes(tagId, noteIds.subList(from, Math.min(from + BATCH_SIZE, noteIds.size())));
+                        }
+                    }
+                });
+                result.postValue(noteIds.size());
+            } catch (Exception e) {
+                Log.e(TAG, "Errore durante l'aggiunta dei tag alle note: " + e.getMessage());
+                result.postValue(-1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Esporta le note in un archivio zip in chiaro, un file Markdown per nota, scritto
+     * in streaming a blocchi di note
+     * @return il numero di note esportate a operazione conclusa, -1 in caso di errore
+     */
+    public LiveData<Integer> exportNotes(List<Long> noteIds, Uri destination) {
+        MutableLiveData<Integer> result = new MutableLiveData<>();
+        executor().execute(() -> {
+            int exported = 0;
+            try (OutputStream out = context.getContentResolver().openOutputStream(destination)) {
+                if (out == null) {
+                    throw new IOException("Impossibile aprire la destinazione");
+                }
+                try (ZipExportWriter zip = new ZipExportWriter(out)) {
+                    for (int from = 0; from < noteIds.size(); from += EXPORT_BATCH_SIZE) {
+                        List<Long> batch = noteIds.subList(from, Math.min(from + EXPORT_BATCH_SIZE, noteIds.size()));
+                        for (Note note : noteDao.getNotesByIdsSync(batch)) {
+                            loadFullContent(note);
+                            zip.putText(note.getTitle() + ".md", note.getContent());
+                            exported++;
+                        }
+                    }
+                }
+                result.postValue(exported);
+            } catch (Exception e) {
+                Log.e(TAG, "Errore durante l'esportazione delle note: " + e.getMessage());
+                result.postValue(-1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Riporta le note dal cestino alla lista
+     */
+    public void restore(List<Long> noteIds) {
+        if (noteIds.isEmpty()) {
+            return;
+        }
+        executor().execute(() -> {
+            try {
+                setDeletedAtSync(noteIds, null);
+                for (int from = 0; from < noteIds.size(); from += BATCH_SIZE) {
+                    noteStore.putAll(noteDao.getNoteSummariesByIds(noteIds.subList(from, Math.min(from + BATCH_SIZE, noteIds.size()))));
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Errore durante il ripristino delle note: " + e.getMessage());
+            }
+        });
+    }
+
+    private void setDeletedAtSync(List<Long> noteIds, Long deletedAt) {
+        db.runInTransaction(() -> {
+            for (int from = 0; from < noteIds.size(); from += BATCH_SIZE) {
+                noteDao.setDeletedAt(noteIds.subList(from, Math.min(from + BATCH_SIZE, noteIds.size())), deletedAt);
+            }
+        });
+    }
+
+    public LiveData<List<NoteSummary>> getTrashedNotes() {
+        return noteDao.getTrashedNotes();
+    }
+
+    /**
+     * Elimina definitivamente, in un'unica transazione, le note nel cestino da prima di cutoff
+     * insieme a pezzi, versioni e trigrammi. Da usare fuori dal thread principale.
+     * @return il numero di note eliminate
+     */
+    public int purgeTrashSync(long cutoff) {
+        // Lettura e cancellazione nella stessa transazione: un ripristino concorrente non va perso
+        List<Long> noteIds = db.runInTransaction(() -> {
+            List<Long> expired = noteDao.getTrashedNoteIdsBefore(cutoff);
+            for (int from = 0; from < expired.size(); from += BATCH_SIZE) {
+                List<Long> batch = expired.subList(from, Math.min(from + BATCH_SIZE, expired.size()));
+                // L'indice full-text rilegge il testo da togliere dalle righe ancora presenti
+                for (Long noteId : batch) {
+                    unindex(noteDao.getNoteByIdSync(noteId));
+                }
+                noteDao.deleteByIds(batch);
+                noteChunkDao.deleteByNotes(batch);
+                noteRevisionDao.deleteByNotes(batch);
+                trigramDao.deleteOwners(TrigramEntry.KIND_NOTE, batch);
+            }
+            return expired;
+        });
+        for (Long noteId : noteIds) {
+            prefetchedNotes.remove(noteId);
+            deleteDraftJournal(noteId);
+        }
+        return noteIds.size();
+    }
+
+    /**
+     * Lista della dashboard dalla copia in memoria condivisa dal processo: la prima richiesta
+     * la carica con una sola query, le successive ricevono subito l'ultima istantanea
+     */
+    public LiveData<NoteStore.Snapshot> getNoteListSnapshot() {
+        noteStore.loadIfNeeded(noteDao);
+        listCache.attach(noteStore.getSnapshot());
+        return noteStore.getSnapshot();
+    }
+
+    /**
+     * Prime righe della lista salvate cifrate all'ultima modifica: disponibili senza aprire il
+     * database, da mostrare finché non arriva {@link #getNoteListSnapshot()}
+     */
+    public LiveData<List<NoteSummary>> getCachedNoteList() {
+        return listCache.getCachedRows();
+    }
+
     public LiveData<List<Note>> getAllNotes() {
         return noteDao.getAllNotes();
     }
 
+    /**
+     * Sorgente paginata dei riepiloghi delle note: Room la invalida ad ogni modifica della tabella
+     */
+    public PagingSource<Integer, NoteSummary> getNoteSummariesPagingSource() {
+        return noteDao.getNoteSummariesPaged();
+    }
+
+    /**
+     * Come getNoteSummariesPagingSource, con ordinamento e filtri eseguiti da SQLite
+     */
+    public PagingSource<Integer, NoteSummary> getNoteSummariesPagingSource(NoteListQuery query) {
+        return noteDao.getNoteSummariesFiltered(query.build());
+    }
+
+    public LiveData<List<Tag>> getTags() {
+        return tagDao.getTags();
+    }
+
+    public List<String> getTagNamesSync(long noteId) {
+        List<String> names = new ArrayList<>();
+        for (Tag tag : tagDao.getTagsForNoteSync(noteId)) {
+            names.add(tag.getName());
+        }
+        Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    public void setNoteTagsSync(long noteId, List<String> names) {
+        tagDao.setNoteTags(noteId, names);
+    }
+
+    /**
+     * Divide il testo digitato in nomi di tag: separati da virgole, senza spazi ai bordi e senza doppioni
+     */
+    public static List<String> parseTags(String input) {
+        List<String> names = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        if (input == null) {
+            return names;
+        }
+        for (String part : input.split(",")) {
+            String name = part.trim();
+            if (!name.isEmpty() && seen.add(name.toLowerCase())) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Carica in background la nota completa, così l'editor la trova già pronta
+     */
+    public void prefetch(long noteId) {
+        if (prefetchedNotes.get(noteId) != null) {
+            return;
+        }
+        executor().execute(() -> {
+            try {
+                Note note = loadFullContent(noteDao.getNoteByIdSync(noteId));
+                if (note != null) {
+                    prefetchedNotes.put(noteId, note);
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Prefetch della nota fallito: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Restituisce la nota caricata in anticipo, se disponibile
+     */
+    public Note getPrefetchedNote(long noteId) {
+        return prefetchedNotes.get(noteId);
+    }
+
+    /**
+     * Nota completa: il contenuto compresso viene decompresso in background solo quando serve
+     */
     public LiveData<Note> getNoteById(long noteId) {
-        return noteDao.getNoteById(noteId);
+        MediatorLiveData<Note> result = new MediatorLiveData<>();
+        // Numero dell'ultima emissione: una decompressione finita dopo un'emissione più recente
+        // viene scartata invece di sovrascriverla. Letto e scritto solo sul thread principale.
+        int[] latest = {0};
+        result.addSource(noteDao.getNoteById(noteId), note -> {
+            int emission = ++latest[0];
+            if (note == null || note.getContentBlob() == null) {
+                result.setValue(note);
+            } else {
+                executor().execute(() -> {
+                    Note full = loadFullContent(note);
+                    mainHandler.post(() -> {
+                        if (latest[0] == emission) {
+                            result.setValue(full);
+                        }
+                    });
+                });
+            }
+        });
+        return result;
     }
 
+    /**
+     * Sposta la nota nel cestino, da cui si può ripristinare fino alla scadenza
+     */
     public void delete(long noteId) {
-        executorService.execute(() -> {
+        deleteByIds(Collections.singletonList(noteId));
+    }
+
+    public List<Note> getAllNotesSync() {
+        List<Note> notes = noteDao.getAllNotesSync();
+        for (Note note : notes) {
+            loadFullContent(note);
+        }
+        return notes;
+    }
+
+    /**
+     * Versioni salvate della nota, dalla più recente
+     */
+    public LiveData<List<NoteRevision.Info>> getRevisions(long noteId) {
+        return noteRevisionDao.getRevisions(noteId);
+    }
+
+    /**
+     * Testo di una versione, ricostruito in background dalla snapshot precedente e dalle delta
+     */
+    public LiveData<String> getRevisionContent(long revisionId) {
+        MutableLiveData<String> result = new MutableLiveData<>();
+        executor().execute(() -> {
             try {
-                noteDao.deleteById(noteId);
+                result.postValue(NoteRevisions.reconstruct(noteRevisionDao, revisionId));
             } catch (Exception e) {
-                Log.e(TAG, "Errore durante la cancellazione della nota: " + e.getMessage());
+                Log.e(TAG, "Errore nella ricostruzione della versione: " + e.getMessage());
+                result.postValue(null);
             }
         });
+        return result;
     }
 
-    public List<Note> getAllNotesSync() {
-        return noteDao.getAllNotesSync();
+    /**
+     * Applica la politica di conservazione delle versioni a tutte le note che ne hanno bisogno.
+     * @return il numero di versioni eliminate
+     */
+    public int compactRevisionsSync() {
+        long now = System.currentTimeMillis();
+        long cutoff = now - NoteRevisions.RETENTION_MS;
+        Set<Long> noteIds = new HashSet<>(noteRevisionDao.getNoteIdsWithRevisionsBefore(cutoff));
+        noteIds.addAll(noteRevisionDao.getNoteIdsWithMoreRevisionsSince(cutoff, NoteRevisions.MAX_REVISIONS_PER_NOTE));
+        int removed = 0;
+        for (long noteId : noteIds) {
+            // Una catena illeggibile resta com'è e non ferma la compattazione delle altre note
+            try {
+                removed += db.runInTransaction(() -> NoteRevisions.compact(noteRevisionDao, noteId, now));
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Compattazione delle versioni fallita: " + e.getMessage());
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Apre in lettura il contenuto completo della nota; per le note divise in pezzi
+     * i pezzi vengono letti in ordine man mano. Da usare fuori dal thread principale.
+     */
+    public Reader openContentReader(long noteId) {
+        Note note = noteDao.getNoteByIdSync(noteId);
+        if (note == null) {
+            return new StringReader("");
+        }
+        if (NoteCodec.isChunked(note)) {
+            return new NoteChunker.ChunkReader(noteChunkDao, noteId);
+        }
+        String content = NoteCodec.decode(note).getContent();
+        return new StringReader(content != null ? content : "");
+    }
+
+    // Ricostruisce il testo completo di una nota compressa o divisa in pezzi
+    private Note loadFullContent(Note note) {
+        if (note != null && NoteCodec.isChunked(note)) {
+            note.setContent(NoteChunker.read(noteChunkDao, note.getId()));
+            note.setContentBlob(null);
+            return note;
+        }
+        return NoteCodec.decode(note);
+    }
+
+    // Scrive la nota con pezzi, indice full-text, versione e trigrammi; va chiamato dentro una
+    // transazione. L'indice e i trigrammi vengono riscritti solo se titolo o testo sono cambiati.
+    private long writeNote(Note note, Note stored, boolean recordRevision) {
+        Note previous = note.getId() != 0 ? noteDao.getNoteByIdSync(note.getId()) : null;
+        boolean textChanged = previous == null || !sameText(previous, note, stored);
+        if (previous != null) {
+            // update non scrive deletedAt: la nota resta nel cestino se vi è stata spostata nel frattempo
+            note.setDeletedAt(previous.getDeletedAt());
+        }
+        if (previous != null && textChanged) {
+            // FTS4 legge i termini da togliere dalla riga attuale: va fatto prima di aggiornarla
+            unindex(previous);
+        }
+        // La riga esistente viene aggiornata senza cancellarla e insertOrUpdate restituisce -1
+        long rowId = noteDao.insertOrUpdate(stored);
+        long noteId = rowId != -1 ? rowId : note.getId();
+        storeChunks(noteId, stored, note.getContent());
+        if (textChanged) {
+            noteDao.insertFts(noteId, note.getTitle(), note.getContent());
+        }
+        if (recordRevision) {
+            recordRevision(noteId, note.getContent(), note.getLastModified());
+        }
+        if (previous == null || !Objects.equals(previous.getTitle(), note.getTitle())) {
+            trigramDao.replaceOwner(TrigramEntry.KIND_NOTE, noteId,
+                    TrigramIndex.entries(TrigramEntry.KIND_NOTE, noteId, note.getTitle()));
+        }
+        return noteId;
+    }
+
+    // Confronta la nota salvata con quella da salvare senza decomprimerla: i blob compressi
+    // si confrontano byte per byte, i pezzi con lunghezza e checksum
+    private boolean sameText(Note previous, Note note, Note stored) {
+        if (!Objects.equals(previous.getTitle(), note.getTitle())) {
+            return false;
+        }
+        if (NoteCodec.isChunked(previous)) {
+            return NoteCodec.isChunked(stored) && NoteChunker.matches(noteChunkDao, previous.getId(), note.getContent());
+        }
+        if (previous.getContentBlob() != null) {
+            return Arrays.equals(previous.getContentBlob(), stored.getContentBlob());
+        }
+        return stored.getContentBlob() == null && Objects.equals(previous.getContent(), note.getContent());
+    }
+
+    // Toglie la nota dall'indice full-text; per le note compresse o divise in pezzi la riga
+    // contiene solo l'inizio del testo, quindi il testo indicizzato va ricostruito
+    private void unindex(Note note) {
+        if (note == null) {
+            return;
+        }
+        String fullContent = null;
+        if (NoteCodec.isChunked(note)) {
+            fullContent = NoteChunker.read(noteChunkDao, note.getId());
+        } else if (note.getContentBlob() != null) {
+            fullContent = NoteCodec.decode(note).getContent();
+        }
+        noteDao.deleteFts(note.getId(), fullContent);
+    }
+
+    // Lo storico non deve mai impedire il salvataggio della nota: record scrive solo con l'inserimento
+    // finale, quindi un errore lascia la transazione del salvataggio intatta
+    private void recordRevision(long noteId, String content, long lastModified) {
+        try {
+            NoteRevisions.record(noteRevisionDao, noteId, content, lastModified);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Revisione della nota non registrata: " + e.getMessage());
+        }
+    }
+
+    // Scrive solo i pezzi cambiati delle note molto lunghe; per le altre elimina
+    // gli eventuali pezzi rimasti da una versione più lunga
+    private void storeChunks(long noteId, Note stored, String content) {
+        if (NoteCodec.isChunked(stored)) {
+            NoteChunker.write(noteChunkDao, noteId, content);
+        } else {
+            noteChunkDao.deleteByNote(noteId);
+        }
+    }
+
+    /**
+     * Comprime fino a limit note lunghe salvate prima dell'introduzione di contentBlob.
+     * @return il numero di note compresse, 0 quando non ne restano
+     */
+    public int compressStoredNotesSync(int limit) {
+        List<Long> ids = noteDao.getUncompressedNoteIds(NoteCodec.COMPRESSION_THRESHOLD, limit);
+        for (long noteId : ids) {
+            db.runInTransaction(() -> {
+                Note note = noteDao.getNoteByIdSync(noteId);
+                if (note != null && note.getContentBlob() == null && NoteCodec.needsCompression(note.getContent())) {
+                    Note stored = NoteCodec.encode(note);
+                    noteDao.updateStoredContent(noteId, stored.getContent(), stored.getContentBlob());
+                    storeChunks(noteId, stored, note.getContent());
+                }
+            });
+            prefetchedNotes.remove(noteId);
+        }
+        return ids.size();
+    }
+
+    /**
+     * Ricerca full-text nelle note, eseguita in background sull'indice FTS.
+     * Ai risultati esatti seguono i titoli simili trovati con l'indice a trigrammi.
+     */
+    public LiveData<List<NoteSearchResult>> search(String query) {
+        MutableLiveData<List<NoteSearchResult>> results = new MutableLiveData<>();
+        String matchQuery = toMatchQuery(query);
+        if (matchQuery.isEmpty()) {
+            results.setValue(Collections.emptyList());
+            return results;
+        }
+        executor().execute(() -> {
+            try {
+                List<NoteSearchResult> found = noteDao.search(matchQuery);
+                found.addAll(searchSimilarTitles(query, found));
+                results.postValue(found);
+            } catch (Exception e) {
+                Log.e(TAG, "Errore durante la ricerca delle note: " + e.getMessage());
+                results.postValue(Collections.emptyList());
+            }
+        });
+        return results;
+    }
+
+    private List<NoteSearchResult> searchSimilarTitles(String query, List<NoteSearchResult> exclude) {
+        Set<Long> excludedIds = new HashSet<>();
+        for (NoteSearchResult result : exclude) {
+            excludedIds.add((long) result.getId());
+        }
+        List<Long> ids = new ArrayList<>();
+        Map<Long, Double> scores = new HashMap<>();
+        for (TrigramMatch match : TrigramIndex.search(trigramDao, TrigramEntry.KIND_NOTE, query, FUZZY_LIMIT)) {
+            if (!excludedIds.contains(match.getOwnerId())) {
+                ids.add(match.getOwnerId());
+                scores.put(match.getOwnerId(), match.getScore());
+            }
+        }
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<NoteSearchResult> similar = noteDao.getSearchResultsByIds(ids);
+        for (NoteSearchResult result : similar) {
+            result.setScore(scores.get((long) result.getId()));
+        }
+        Collections.sort(similar, (a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return similar;
+    }
+
+    // Campi derivati dal contenuto completo, da calcolare prima che NoteCodec lo accorci
+    private static void prepareForStorage(Note note) {
+        note.setPreview(buildPreview(note.getContent()));
+        note.setContentLength(note.getContent() != null ? note.getContent().length() : 0);
+        if (note.getCreatedAt() == 0) {
+            note.setCreatedAt(note.getLastModified());
+        }
+    }
+
+    // Riga della lista per la nota salvata, con la stessa anteprima scritta nel database
+    private static NoteSummary toSummary(Note note, long noteId) {
+        NoteSummary summary = new NoteSummary();
+        summary.setId((int) noteId);
+        summary.setTitle(note.getTitle());
+        summary.setPreview(buildPreview(note.getContent()));
+        summary.setLastModified(note.getLastModified());
+        return summary;
+    }
+
+    // L'editor salva una Note nuova anche per le note esistenti: la data di creazione va riletta
+    private void keepCreatedAt(Note note) {
+        if (note.getId() != 0 && note.getCreatedAt() == 0) {
+            Long createdAt = noteDao.getCreatedAt(note.getId());
+            if (createdAt != null) {
+                note.setCreatedAt(createdAt);
+            }
+        }
+    }
+
+    // Prime righe del contenuto con gli a capo compressi in spazi
+    static String buildPreview(String content) {
+        if (content == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(Math.min(content.length(), PREVIEW_LENGTH));
+        boolean lastWasSpace = false;
+        for (int i = 0; i < content.length() && sb.length() < PREVIEW_LENGTH; i++) {
+            char c = content.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (!lastWasSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                lastWasSpace = true;
+            } else {
+                sb.append(c);
+                lastWasSpace = false;
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    // Converte il testo digitato in una query MATCH: ogni parola diventa un prefisso,
+    // la punteggiatura viene scartata per non finire nella sintassi di FTS
+    static String toMatchQuery(String input) {
+        if (input == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String token : input.trim().split("\\s+")) {
+            String clean = token.replaceAll("[^\\p{L}\\p{N}]", "");
+            if (clean.isEmpty()) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(clean).append('*');
+        }
+        return sb.toString();
     }
 } 
\ No newline at end of file
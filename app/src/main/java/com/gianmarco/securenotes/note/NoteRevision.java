@@ -0,0 +1,126 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Versione salvata del contenuto di una nota. Le revisioni di una nota formano una catena
+ * ordinata per id, cioè per ordine di inserimento: createdAt viene dall'orologio del dispositivo
+ * e può tornare indietro. Una SNAPSHOT contiene il testo completo compresso, una DELTA
+ * solo le differenze rispetto alla revisione precedente (vedi {@link NoteRevisions}).
+ */
+@Entity(tableName = "note_revisions", indices = {@Index(value = {"noteId", "createdAt"}), @Index(value = {"noteId", "id"})})
+public class NoteRevision {
+
+    public static final int KIND_SNAPSHOT = 0;
+    public static final int KIND_DELTA = 1;
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+    private long noteId;
+    private long createdAt;
+    private int kind;
+    // Lunghezza in caratteri del testo della revisione
+    private int length;
+    private byte[] data;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(long noteId) {
+        this.noteId = noteId;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    public void setKind(int kind) {
+        this.kind = kind;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Revisione senza il contenuto, per gli elenchi
+     */
+    public static class Info {
+        private long id;
+        private long noteId;
+        private long createdAt;
+        private int kind;
+        private int length;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public long getNoteId() {
+            return noteId;
+        }
+
+        public void setNoteId(long noteId) {
+            this.noteId = noteId;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public void setCreatedAt(long createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        public void setKind(int kind) {
+            this.kind = kind;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public void setLength(int length) {
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface NoteRevisionDao {
+
+    @Insert
+    long insert(NoteRevision revision);
+
+    // Dalla più recente, per l'elenco delle versioni
+    @Query("SELECT id, noteId, createdAt, kind, length FROM note_revisions WHERE noteId = :noteId " +
+            "ORDER BY id DESC")
+    LiveData<List<NoteRevision.Info>> getRevisions(long noteId);
+
+    // Nell'ordine della catena, dalla più vecchia: per id e non per createdAt, che segue l'orologio
+    @Query("SELECT id, noteId, createdAt, kind, length FROM note_revisions WHERE noteId = :noteId " +
+            "ORDER BY id")
+    List<NoteRevision.Info> getRevisionInfoSync(long noteId);
+
+    @Query("SELECT * FROM note_revisions WHERE noteId = :noteId ORDER BY id")
+    List<NoteRevision> getRevisionsSync(long noteId);
+
+    @Query("SELECT * FROM note_revisions WHERE id IN (:ids)")
+    List<NoteRevision> getByIds(List<Long> ids);
+
+    @Query("SELECT id, noteId, createdAt, kind, length FROM note_revisions WHERE id = :revisionId")
+    NoteRevision.Info getInfoById(long revisionId);
+
+    @Query("SELECT DISTINCT noteId FROM note_revisions WHERE createdAt < :cutoff")
+    List<Long> getNoteIdsWithRevisionsBefore(long cutoff);
+
+    // Il limite vale solo per le revisioni del periodo di conservazione (vedi NoteRevisions.compact)
+    @Query("SELECT noteId FROM note_revisions WHERE createdAt >= :since GROUP BY noteId HAVING COUNT(*) > :max")
+    List<Long> getNoteIdsWithMoreRevisionsSince(long since, int max);
+
+    @Query("UPDATE note_revisions SET kind = :kind, data = :data WHERE id = :id")
+    void updateRevision(long id, int kind, byte[] data);
+
+    @Query("DELETE FROM note_revisions WHERE id IN (:ids)")
+    void deleteByIds(List<Long> ids);
+
+    @Query("DELETE FROM note_revisions WHERE noteId = :noteId")
+    void deleteByNote(long noteId);
+
+    @Query("DELETE FROM note_revisions WHERE noteId IN (:noteIds)")
+    void deleteByNotes(List<Long> noteIds);
+}
@@ -0,0 +1,248 @@
+package com.gianmarco.securenotes.note;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storico delle versioni delle note: una snapshot compressa ogni {@link #SNAPSHOT_INTERVAL}
+ * revisioni e, tra una snapshot e l'altra, delta binari che contengono solo la parte modificata.
+ * Lo spazio occupato cresce quindi con la dimensione delle modifiche, non con il numero di salvataggi.
+ */
+final class NoteRevisions {
+
+    static final int SNAPSHOT_INTERVAL = 20;
+    // Le revisioni più vecchie di così vengono ridotte all'ultima di ogni giorno
+    static final long RETENTION_MS = 30L * 24 * 60 * 60 * 1000;
+    static final int MAX_REVISIONS_PER_NOTE = 200;
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final int DELETE_BATCH = 500;
+
+    private NoteRevisions() {
+    }
+
+    /**
+     * Aggiunge una revisione con il contenuto appena salvato, se è cambiato.
+     * Va chiamato dentro la transazione che salva la nota; l'unica scrittura è l'inserimento finale.
+     */
+    static void record(NoteRevisionDao dao, long noteId, String content, long createdAt) {
+        String text = content != null ? content : "";
+        List<NoteRevision.Info> chain = dao.getRevisionInfoSync(noteId);
+
+        NoteRevision revision = new NoteRevision();
+        revision.setNoteId(noteId);
+        revision.setCreatedAt(createdAt);
+        revision.setLength(text.length());
+
+        String previous = chain.isEmpty() ? null : reconstructChecked(dao, chain, chain.size() - 1);
+        if (previous == null) {
+            // Prima revisione, o catena precedente illeggibile: si riparte da una snapshot
+            setSnapshot(revision, text);
+        } else {
+            if (previous.equals(text)) {
+                return;
+            }
+            int sinceSnapshot = 0;
+            for (int i = chain.size() - 1; i >= 0 && chain.get(i).getKind() == NoteRevision.KIND_DELTA; i--) {
+                sinceSnapshot++;
+            }
+            byte[] delta = encodeDelta(previous, text);
+            // Una delta grande quasi quanto il testo non conviene: meglio ripartire da una snapshot
+            if (sinceSnapshot + 1 >= SNAPSHOT_INTERVAL || delta.length > text.length() / 2 + 64) {
+                setSnapshot(revision, text);
+            } else {
+                revision.setKind(NoteRevision.KIND_DELTA);
+                revision.setData(delta);
+            }
+        }
+        dao.insert(revision);
+    }
+
+    /**
+     * Ricostruisce il testo di una revisione partendo dalla snapshot che la precede
+     */
+    static String reconstruct(NoteRevisionDao dao, long revisionId) {
+        NoteRevision.Info info = dao.getInfoById(revisionId);
+        if (info == null) {
+            return null;
+        }
+        List<NoteRevision.Info> chain = dao.getRevisionInfoSync(info.getNoteId());
+        for (int i = 0; i < chain.size(); i++) {
+            if (chain.get(i).getId() == revisionId) {
+                return reconstruct(dao, chain, i);
+            }
+        }
+        return null;
+    }
+
+    // Come reconstruct, ma null se la catena non produce un testo della lunghezza registrata
+    private static String reconstructChecked(NoteRevisionDao dao, List<NoteRevision.Info> chain, int index) {
+        try {
+            String text = reconstruct(dao, chain, index);
+            return text.length() == chain.get(index).getLength() ? text : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String reconstruct(NoteRevisionDao dao, List<NoteRevision.Info> chain, int index) {
+        int start = index;
+        while (start > 0 && chain.get(start).getKind() == NoteRevision.KIND_DELTA) {
+            start--;
+        }
+        List<Long> ids = new ArrayList<>(index - start + 1);
+        for (int i = start; i <= index; i++) {
+            ids.add(chain.get(i).getId());
+        }
+        Map<Long, NoteRevision> byId = new HashMap<>();
+        for (NoteRevision revision : dao.getByIds(ids)) {
+            byId.put(revision.getId(), revision);
+        }
+        String text = "";
+        for (long id : ids) {
+            text = apply(byId.get(id), text);
+        }
+        return text;
+    }
+
+    /**
+     * Riduce le revisioni più vecchie del periodo di conservazione all'ultima di ogni giorno e
+     * limita a {@link #MAX_REVISIONS_PER_NOTE} quelle del periodo, ricodificando la catena delle
+     * revisioni rimaste. L'ultima revisione di ogni giorno resta sempre: i salvataggi ravvicinati
+     * di oggi non possono cancellare le versioni dei giorni precedenti.
+     * @return il numero di revisioni eliminate
+     */
+    static int compact(NoteRevisionDao dao, long noteId, long now) {
+        List<NoteRevision> revisions = dao.getRevisionsSync(noteId);
+        int count = revisions.size();
+        boolean[] keep = new boolean[count];
+        long cutoff = now - RETENTION_MS;
+        int kept = 0;
+        int recentKept = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            NoteRevision revision = revisions.get(i);
+            boolean recent = revision.getCreatedAt() >= cutoff;
+            boolean lastOfDay = i == count - 1
+                    || revisions.get(i + 1).getCreatedAt() / DAY_MS != revision.getCreatedAt() / DAY_MS;
+            keep[i] = lastOfDay || (recent && recentKept < MAX_REVISIONS_PER_NOTE);
+            if (keep[i]) {
+                kept++;
+                if (recent) {
+                    recentKept++;
+                }
+            }
+        }
+        if (kept == count) {
+            return 0;
+        }
+
+        List<Long> removed = new ArrayList<>();
+        String text = "";
+        String previousKept = null;
+        int sinceSnapshot = 0;
+        for (int i = 0; i < count; i++) {
+            NoteRevision revision = revisions.get(i);
+            text = apply(revision, text);
+            if (!keep[i]) {
+                removed.add(revision.getId());
+                continue;
+            }
+            int kind;
+            byte[] data;
+            byte[] delta = previousKept != null ? encodeDelta(previousKept, text) : null;
+            if (delta == null || sinceSnapshot + 1 >= SNAPSHOT_INTERVAL || delta.length > text.length() / 2 + 64) {
+                kind = NoteRevision.KIND_SNAPSHOT;
+                data = revision.getKind() == NoteRevision.KIND_SNAPSHOT ? revision.getData() : NoteCodec.compress(text);
+                sinceSnapshot = 0;
+            } else {
+                kind = NoteRevision.KIND_DELTA;
+                data = delta;
+                sinceSnapshot++;
+            }
+            // Le righe già codificate allo stesso modo non vengono riscritte
+            if (kind != revision.getKind() || (kind == NoteRevision.KIND_DELTA && !Arrays.equals(data, revision.getData()))) {
+                dao.updateRevision(revision.getId(), kind, data);
+            }
+            previousKept = text;
+        }
+        for (int from = 0; from < removed.size(); from += DELETE_BATCH) {
+            dao.deleteByIds(removed.subList(from, Math.min(from + DELETE_BATCH, removed.size())));
+        }
+        return removed.size();
+    }
+
+    private static void setSnapshot(NoteRevision revision, String text) {
+        revision.setKind(NoteRevision.KIND_SNAPSHOT);
+        revision.setData(NoteCodec.compress(text));
+    }
+
+    private static String apply(NoteRevision revision, String previous) {
+        if (revision.getKind() == NoteRevision.KIND_SNAPSHOT) {
+            return NoteCodec.decompress(revision.getData());
+        }
+        return applyDelta(previous, revision.getData());
+    }
+
+    // Delta: lunghezza del prefisso comune, lunghezza del suffisso comune e testo sostituito in UTF-8
+    static byte[] encodeDelta(String from, String to) {
+        int max = Math.min(from.length(), to.length());
+        int prefix = 0;
+        while (prefix < max && from.charAt(prefix) == to.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix > 0 && Character.isHighSurrogate(from.charAt(prefix - 1))) {
+            prefix--;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && from.charAt(from.length() - 1 - suffix) == to.charAt(to.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(to.charAt(to.length() - suffix))) {
+            suffix--;
+        }
+        return encodeReplacement(prefix, suffix, to.substring(prefix, to.length() - suffix));
+    }
+
+    // Delta con prefisso e suffisso già noti, ad esempio dai blocchi modificati nell'editor
+    static byte[] encodeReplacement(int prefix, int suffix, String middle) {
+        byte[] bytes = middle.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + 10);
+        writeVarInt(out, prefix);
+        writeVarInt(out, suffix);
+        out.write(bytes, 0, bytes.length);
+        return out.toByteArray();
+    }
+
+    static String applyDelta(String from, byte[] delta) {
+        int[] position = {0};
+        int prefix = readVarInt(delta, position);
+        int suffix = readVarInt(delta, position);
+        String middle = new String(delta, position[0], delta.length - position[0], StandardCharsets.UTF_8);
+        return from.substring(0, prefix) + middle + from.substring(from.length() - suffix);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,65 @@
+package com.gianmarco.securenotes.note;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordina i risultati FTS4 con BM25 calcolato sul blob matchinfo('pcnalx'),
+ * dato che FTS4 non espone una funzione di ranking.
+ */
+public final class NoteSearchRanker {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Pesi per colonna, nello stesso ordine di NoteFts: title, content
+    private static final double[] COLUMN_WEIGHTS = {2.0, 1.0};
+
+    private NoteSearchRanker() {}
+
+    public static void rank(List<NoteSearchResult> results) {
+        for (NoteSearchResult result : results) {
+            result.setScore(bm25(result.getMatchInfo()));
+            result.setMatchInfo(null);
+        }
+        Collections.sort(results, (a, b) -> {
+            int byScore = Double.compare(b.getScore(), a.getScore());
+            return byScore != 0 ? byScore : Long.compare(b.getLastModified(), a.getLastModified());
+        });
+    }
+
+    static double bm25(byte[] matchInfo) {
+        if (matchInfo == null || matchInfo.length < 12) {
+            return 0;
+        }
+        IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        int rows = info.get(2);
+
+        double score = 0;
+        for (int p = 0; p < phrases; p++) {
+            for (int c = 0; c < columns; c++) {
+                int x = 3 + 2 * columns + 3 * (c + p * columns);
+                int termFrequency = info.get(x);
+                if (termFrequency == 0) {
+                    continue;
+                }
+                int docsWithTerm = info.get(x + 2);
+                double avgLength = Math.max(1, info.get(3 + c));
+                double docLength = info.get(3 + columns + c);
+
+                double idf = Math.log((rows - docsWithTerm + 0.5) / (docsWithTerm + 0.5));
+                if (idf <= 0) {
+                    idf = 1e-6;
+                }
+                double weight = c < COLUMN_WEIGHTS.length ? COLUMN_WEIGHTS[c] : 1.0;
+                score += weight * idf * (termFrequency * (K1 + 1))
+                        / (termFrequency + K1 * (1 - B + B * docLength / avgLength));
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,70 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.room.Ignore;
+
+/**
+ * Risultato di una ricerca full-text: id, titolo e snippet evidenziato.
+ * Lo snippet delimita i termini trovati con HIGHLIGHT_START/HIGHLIGHT_END.
+ */
+public class NoteSearchResult {
+
+    public static final char HIGHLIGHT_START = '\u0002';
+    public static final char HIGHLIGHT_END = '\u0003';
+
+    private int id;
+    private String title;
+    private String snippet;
+    private long lastModified;
+    private byte[] matchInfo;
+
+    @Ignore
+    private double score;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public byte[] getMatchInfo() {
+        return matchInfo;
+    }
+
+    public void setMatchInfo(byte[] matchInfo) {
+        this.matchInfo = matchInfo;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+}
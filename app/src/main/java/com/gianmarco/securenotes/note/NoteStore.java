@@ -0,0 +1,225 @@
+package com.gianmarco.securenotes.note;
+
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Copia in memoria della lista note, condivisa da tutto il processo, nell'ordine della dashboard
+ * (ultima modifica, poi id, decrescenti). Viene caricata una sola volta e poi aggiornata sul posto
+ * da NoteRepository prima che la scrittura raggiunga il database: SQLCipher resta la fonte di
+ * verità e, se una scrittura fallisce, la copia viene ricaricata da lì.
+ * Gli osservatori ricevono istantanee immutabili; le NoteSummary pubblicate non vengono più modificate.
+ */
+public final class NoteStore {
+    private static final String TAG = "NoteStore";
+    // Oltre questa soglia la lista resta paginata da SQLite: le anteprime occuperebbero troppa memoria
+    static final int MAX_NOTES = 5000;
+    private static final Comparator<NoteSummary> DASHBOARD_ORDER = (a, b) -> {
+        if (a.getLastModified() != b.getLastModified()) {
+            return Long.compare(b.getLastModified(), a.getLastModified());
+        }
+        return Integer.compare(b.getId(), a.getId());
+    };
+
+    private static final NoteStore INSTANCE = new NoteStore();
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    private final MutableLiveData<Snapshot> snapshot = new MutableLiveData<>();
+
+    // Stato protetto da this
+    private final Map<Integer, NoteSummary> byId = new HashMap<>();
+    private final TreeSet<NoteSummary> ordered = new TreeSet<>(DASHBOARD_ORDER);
+    // Note scritte durante il caricamento: la loro versione in memoria è più recente di quella letta
+    private final Set<Integer> changedBeforeLoad = new HashSet<>();
+    private boolean loading;
+    private boolean loaded;
+    private boolean unavailable;
+
+    /**
+     * Istantanea della lista. Se non è disponibile (troppe note o errore di lettura)
+     * la lista va letta da SQLite.
+     */
+    public static final class Snapshot {
+        private final List<NoteSummary> notes;
+        private final boolean available;
+
+        private Snapshot(List<NoteSummary> notes, boolean available) {
+            this.notes = notes;
+            this.available = available;
+        }
+
+        public List<NoteSummary> getNotes() {
+            return notes;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+    }
+
+    private NoteStore() {}
+
+    static NoteStore getInstance() {
+        return INSTANCE;
+    }
+
+    LiveData<Snapshot> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Avvia il caricamento alla prima richiesta; le chiamate successive non rileggono nulla
+     */
+    void loadIfNeeded(NoteDao noteDao) {
+        synchronized (this) {
+            if (loading || loaded || unavailable) {
+                return;
+            }
+            loading = true;
+        }
+        loader.execute(() -> load(noteDao));
+    }
+
+    /**
+     * Scarta la copia in memoria e la rilegge dal database, ad esempio dopo una scrittura fallita
+     */
+    void reload(NoteDao noteDao) {
+        synchronized (this) {
+            byId.clear();
+            ordered.clear();
+            changedBeforeLoad.clear();
+            loaded = false;
+            unavailable = false;
+            if (loading) {
+                return;
+            }
+            loading = true;
+        }
+        loader.execute(() -> load(noteDao));
+    }
+
+    private void load(NoteDao noteDao) {
+        List<NoteSummary> rows;
+        try {
+            // Una riga in più per sapere se la soglia è stata superata
+            rows = noteDao.getNoteSummariesSync(MAX_NOTES + 1);
+        } catch (Exception e) {
+            Log.e(TAG, "Errore nel caricamento delle note in memoria: " + e.getMessage());
+            // Niente istantanea valida: la lista viene letta da SQLite e il prossimo accesso riprova
+            synchronized (this) {
+                loading = false;
+                snapshot.postValue(new Snapshot(Collections.emptyList(), false));
+            }
+            return;
+        }
+        synchronized (this) {
+            loading = false;
+            if (rows.size() > MAX_NOTES) {
+                disable();
+                return;
+            }
+            for (NoteSummary row : rows) {
+                if (!changedBeforeLoad.contains(row.getId())) {
+                    putLocked(row);
+                }
+            }
+            changedBeforeLoad.clear();
+            loaded = true;
+            publishLocked();
+        }
+    }
+
+    synchronized void put(NoteSummary summary) {
+        if (!isTracking()) {
+            return;
+        }
+        putLocked(summary);
+        if (loading) {
+            changedBeforeLoad.add(summary.getId());
+        }
+        if (byId.size() > MAX_NOTES) {
+            disable();
+            return;
+        }
+        publishLocked();
+    }
+
+    synchronized void putAll(List<NoteSummary> summaries) {
+        if (!isTracking() || summaries.isEmpty()) {
+            return;
+        }
+        for (NoteSummary summary : summaries) {
+            putLocked(summary);
+            if (loading) {
+                changedBeforeLoad.add(summary.getId());
+            }
+        }
+        if (byId.size() > MAX_NOTES) {
+            disable();
+            return;
+        }
+        publishLocked();
+    }
+
+    synchronized void removeAll(List<Long> noteIds) {
+        if (!isTracking() || noteIds.isEmpty()) {
+            return;
+        }
+        for (Long noteId : noteIds) {
+            NoteSummary old = byId.remove(noteId.intValue());
+            if (old != null) {
+                ordered.remove(old);
+            }
+            if (loading) {
+                changedBeforeLoad.add(noteId.intValue());
+            }
+        }
+        publishLocked();
+    }
+
+    // Prima della prima richiesta le scritture vengono ignorate: il caricamento leggerà il database.
+    // NoteRepository ripete ogni aggiornamento dopo il commit, così nessuna scrittura si perde
+    // tra la lettura del caricamento e il commit.
+    private boolean isTracking() {
+        return (loading || loaded) && !unavailable;
+    }
+
+    private void putLocked(NoteSummary summary) {
+        NoteSummary old = byId.put(summary.getId(), summary);
+        if (old != null) {
+            ordered.remove(old);
+        }
+        ordered.add(summary);
+    }
+
+    private void disable() {
+        Log.i(TAG, "Più di " + MAX_NOTES + " note: la lista resta paginata dal database");
+        byId.clear();
+        ordered.clear();
+        changedBeforeLoad.clear();
+        unavailable = true;
+        snapshot.postValue(new Snapshot(Collections.emptyList(), false));
+    }
+
+    // postValue sotto il lock: l'ultima istantanea pubblicata è sempre la più recente
+    private void publishLocked() {
+        if (!loaded) {
+            return;
+        }
+        snapshot.postValue(new Snapshot(Collections.unmodifiableList(new ArrayList<>(ordered)), true));
+    }
+}
@@ -0,0 +1,44 @@
+package com.gianmarco.securenotes.note;
+
+/**
+ * Proiezione leggera di una nota per le liste: non contiene il contenuto completo
+ */
+public class NoteSummary {
+
+    private int id;
+    private String title;
+    private String preview;
+    private long lastModified;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getPreview() {
+        return preview;
+    }
+
+    public void setPreview(String preview) {
+        this.preview = preview;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+}
@@ -0,0 +1,43 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * Associazione nota-tag. La chiave primaria serve le letture per nota; l'indice su
+ * (tagId, lastModified, noteId) serve il filtro per tag già nell'ordine della dashboard.
+ * lastModified è una copia di quello della nota, aggiornata dai trigger su notes.
+ */
+@Entity(tableName = "note_tags",
+        primaryKeys = {"noteId", "tagId"},
+        indices = {@Index(value = {"tagId", "lastModified", "noteId"})})
+public class NoteTag {
+
+    private long noteId;
+    private long tagId;
+    private long lastModified;
+
+    public long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(long noteId) {
+        this.noteId = noteId;
+    }
+
+    public long getTagId() {
+        return tagId;
+    }
+
+    public void setTagId(long tagId) {
+        this.tagId = tagId;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+}
@@ -0,0 +1,49 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Etichetta per raggruppare le note. noteCount è mantenuto dai trigger su note_tags
+ * (vedi SecureNoteDB.createTagTriggers), così l'elenco dei tag non conta mai le righe.
+ */
+@Entity(tableName = "tags", indices = {@Index(value = {"name"}, unique = true)})
+public class Tag {
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+    // Il confronto senza maiuscole vale anche per l'indice univoco e per l'ordinamento
+    @NonNull
+    @ColumnInfo(collate = ColumnInfo.NOCASE)
+    private String name = "";
+    @ColumnInfo(defaultValue = "0")
+    private int noteCount;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    public void setName(@NonNull String name) {
+        this.name = name;
+    }
+
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    public void setNoteCount(int noteCount) {
+        this.noteCount = noteCount;
+    }
+}
@@ -0,0 +1,70 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Dao
+public interface TagDao {
+
+    // name ha collazione NOCASE: l'ordinamento legge direttamente l'indice univoco
+    @Query("SELECT * FROM tags ORDER BY name")
+    LiveData<List<Tag>> getTags();
+
+    @Query("SELECT id FROM tags WHERE name = :name")
+    Long getTagIdByName(String name);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insertTag(Tag tag);
+
+    @Query("SELECT tags.* FROM note_tags JOIN tags ON tags.id = note_tags.tagId WHERE note_tags.noteId = :noteId")
+    List<Tag> getTagsForNoteSync(long noteId);
+
+    // lastModified viene copiato dalla nota al momento dell'associazione
+    @Query("INSERT OR IGNORE INTO note_tags (noteId, tagId, lastModified) " +
+            "SELECT id, :tagId, lastModified FROM notes WHERE id IN (:noteIds)")
+    void addTagToNotes(long tagId, List<Long> noteIds);
+
+    @Query("DELETE FROM note_tags WHERE noteId = :noteId")
+    void clearNoteTags(long noteId);
+
+    @Query("DELETE FROM note_tags WHERE tagId = :tagId AND noteId IN (:noteIds)")
+    void removeTagFromNotes(long tagId, List<Long> noteIds);
+
+    // Le associazioni del tag vengono rimosse dal trigger tags_ad
+    @Query("DELETE FROM tags WHERE id = :tagId")
+    void deleteTag(long tagId);
+
+    /**
+     * Restituisce l'id del tag con quel nome, creandolo se non esiste
+     */
+    @Transaction
+    default long getOrCreateTag(String name) {
+        Long id = getTagIdByName(name);
+        if (id != null) {
+            return id;
+        }
+        Tag tag = new Tag();
+        tag.setName(name);
+        return insertTag(tag);
+    }
+
+    /**
+     * Sostituisce i tag di una nota; i contatori si aggiornano tramite i trigger
+     */
+    @Transaction
+    default void setNoteTags(long noteId, List<String> names) {
+        clearNoteTags(noteId);
+        List<Long> noteIds = new ArrayList<>(1);
+        noteIds.add(noteId);
+        for (String name : names) {
+            addTagToNotes(getOrCreateTag(name), noteIds);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.gianmarco.securenotes.search;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+@Dao
+public interface TrigramDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<TrigramEntry> entries);
+
+    @Query("DELETE FROM trigrams WHERE kind = :kind AND ownerId = :ownerId")
+    void deleteOwner(int kind, long ownerId);
+
+    @Query("DELETE FROM trigrams WHERE kind = :kind AND ownerId IN (:ownerIds)")
+    void deleteOwners(int kind, List<Long> ownerIds);
+
+    @Transaction
+    default void replaceOwner(int kind, long ownerId, List<TrigramEntry> entries) {
+        deleteOwner(kind, ownerId);
+        if (!entries.isEmpty()) {
+            insertAll(entries);
+        }
+    }
+
+    // Primi :limit proprietari della posting list di un trigramma, nell'ordine della chiave primaria
+    @Query("SELECT ownerId FROM trigrams WHERE kind = :kind AND trigram = :trigram LIMIT :limit")
+    List<Long> getPostings(int kind, String trigram, int limit);
+
+    // Una ricerca sulla chiave primaria per ogni coppia (trigramma, proprietario): il costo dipende
+    // solo dal numero di candidati, non da quanto sono comuni i trigrammi
+    @Query("SELECT * FROM trigrams WHERE kind = :kind AND trigram IN (:trigrams) AND ownerId IN (:ownerIds)")
+    List<TrigramEntry> getEntries(int kind, List<String> trigrams, List<Long> ownerIds);
+}
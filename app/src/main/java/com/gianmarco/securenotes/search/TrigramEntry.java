@@ -0,0 +1,57 @@
+package com.gianmarco.securenotes.search;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * Riga dell'indice a trigrammi: un trigramma del titolo di una nota
+ * o del nome di un file, con il numero totale di trigrammi del proprietario.
+ */
+@Entity(tableName = "trigrams",
+        primaryKeys = {"kind", "trigram", "ownerId"},
+        indices = {@Index(value = {"kind", "ownerId"})})
+public class TrigramEntry {
+
+    public static final int KIND_NOTE = 0;
+    public static final int KIND_FILE = 1;
+
+    private int kind;
+    @NonNull
+    private String trigram = "";
+    private long ownerId;
+    private int gramCount;
+
+    public int getKind() {
+        return kind;
+    }
+
+    public void setKind(int kind) {
+        this.kind = kind;
+    }
+
+    @NonNull
+    public String getTrigram() {
+        return trigram;
+    }
+
+    public void setTrigram(@NonNull String trigram) {
+        this.trigram = trigram;
+    }
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+
+    public void setOwnerId(long ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    public int getGramCount() {
+        return gramCount;
+    }
+
+    public void setGramCount(int gramCount) {
+        this.gramCount = gramCount;
+    }
+}
@@ -0,0 +1,118 @@
+package com.gianmarco.securenotes.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estrazione dei trigrammi e punteggio di similarità per la ricerca tollerante agli errori.
+ * Ogni parola viene normalizzata (minuscole, senza accenti) e delimitata da spazi,
+ * così anche i prefissi e le parole corte producono trigrammi.
+ */
+public final class TrigramIndex {
+
+    // Numero di candidati letti dal DB per ogni risultato richiesto
+    private static final int CANDIDATE_FACTOR = 4;
+    private static final double MIN_SCORE = 0.3;
+    // Righe lette al massimo per ogni trigramma: oltre questo numero di proprietari un trigramma
+    // è comune (es. il trigramma iniziale di una parola presente in migliaia di titoli)
+    static final int MAX_POSTINGS = 1000;
+
+    private TrigramIndex() {}
+
+    public static Set<String> trigrams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (text == null) {
+            return grams;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+        for (String word : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                grams.add(padded.substring(i, i + 3));
+            }
+        }
+        return grams;
+    }
+
+    public static List<TrigramEntry> entries(int kind, long ownerId, String text) {
+        Set<String> grams = trigrams(text);
+        List<TrigramEntry> entries = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            TrigramEntry entry = new TrigramEntry();
+            entry.setKind(kind);
+            entry.setTrigram(gram);
+            entry.setOwnerId(ownerId);
+            entry.setGramCount(grams.size());
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Cerca i proprietari più simili alla query, ordinati per coefficiente di Dice.
+     * I candidati vengono scelti contando i trigrammi in comune con la query, leggendo al massimo
+     * {@link #MAX_POSTINGS} righe per trigramma: dei trigrammi comuni contano solo i primi
+     * proprietari, ma non vengono scartati, così una parola con un errore di battitura ritrova
+     * anche i titoli con cui condivide solo trigrammi frequenti. Il punteggio conta poi tutti i trigrammi.
+     */
+    public static List<TrigramMatch> search(TrigramDao dao, int kind, String query, int limit) {
+        Set<String> grams = trigrams(query);
+        if (grams.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Integer> hits = new HashMap<>();
+        for (String gram : grams) {
+            countHits(hits, dao.getPostings(kind, gram, MAX_POSTINGS));
+        }
+        if (hits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Map.Entry<Long, Integer>> ranked = new ArrayList<>(hits.entrySet());
+        Collections.sort(ranked, (a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        List<Long> candidates = new ArrayList<>();
+        for (int i = 0; i < ranked.size() && i < limit * CANDIDATE_FACTOR; i++) {
+            candidates.add(ranked.get(i).getKey());
+        }
+
+        Map<Long, TrigramMatch> byOwner = new HashMap<>();
+        for (TrigramEntry entry : dao.getEntries(kind, new ArrayList<>(grams), candidates)) {
+            TrigramMatch match = byOwner.get(entry.getOwnerId());
+            if (match == null) {
+                match = new TrigramMatch();
+                match.setOwnerId(entry.getOwnerId());
+                match.setGramCount(entry.getGramCount());
+                byOwner.put(entry.getOwnerId(), match);
+            }
+            match.setHits(match.getHits() + 1);
+        }
+        List<TrigramMatch> matches = new ArrayList<>();
+        for (TrigramMatch candidate : byOwner.values()) {
+            double score = 2.0 * candidate.getHits() / (grams.size() + candidate.getGramCount());
+            if (score >= MIN_SCORE) {
+                candidate.setScore(score);
+                matches.add(candidate);
+            }
+        }
+        Collections.sort(matches, (a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private static void countHits(Map<Long, Integer> hits, List<Long> postings) {
+        for (Long ownerId : postings) {
+            Integer count = hits.get(ownerId);
+            hits.put(ownerId, count == null ? 1 : count + 1);
+        }
+    }
+}
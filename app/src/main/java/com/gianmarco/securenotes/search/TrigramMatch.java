@@ -0,0 +1,48 @@
+package com.gianmarco.securenotes.search;
+
+import androidx.room.Ignore;
+
+/**
+ * Candidato restituito dall'indice a trigrammi con il numero di trigrammi in comune
+ */
+public class TrigramMatch {
+
+    private long ownerId;
+    private int hits;
+    private int gramCount;
+
+    @Ignore
+    private double score;
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+
+    public void setOwnerId(long ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public void setHits(int hits) {
+        this.hits = hits;
+    }
+
+    public int getGramCount() {
+        return gramCount;
+    }
+
+    public void setGramCount(int gramCount) {
+        this.gramCount = gramCount;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+}
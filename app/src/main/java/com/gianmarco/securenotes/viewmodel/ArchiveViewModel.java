@@ -1,28 +1,146 @@
 package com.gianmarco.securenotes.viewmodel;
 
+import android.net.Uri;
+
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
 import androidx.lifecycle.ViewModel;
+import com.gianmarco.securenotes.ListSort;
+import com.gianmarco.securenotes.ListSortPreferences;
+import com.gianmarco.securenotes.adapter.ItemSelection;
+import com.gianmarco.securenotes.adapter.SecureFileItem;
+import com.gianmarco.securenotes.file.FileListQuery;
 import com.gianmarco.securenotes.file.SecureFile;
 import com.gianmarco.securenotes.file.SecureFileRepository;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ArchiveViewModel extends ViewModel {
     private final SecureFileRepository fileRepository;
+    private final MutableLiveData<String> searchQuery = new MutableLiveData<>("");
+    private final MutableLiveData<FileListQuery> listQuery = new MutableLiveData<>();
+    private final MediatorLiveData<Boolean> queryChanged = new MediatorLiveData<>();
+    private final ListSortPreferences sortPreferences;
     private final LiveData<List<SecureFile>> filesLiveData;
+    private final MediatorLiveData<List<SecureFileItem>> fileItemsLiveData = new MediatorLiveData<>();
+    // Formattazione delle righe fuori dal main thread, una lista alla volta
+    private final ExecutorService itemExecutor = Executors.newSingleThreadExecutor();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy", Locale.getDefault());
+    // File selezionati per le azioni multiple: sopravvive alla ricreazione del fragment
+    private final ItemSelection selection = new ItemSelection();
 
-    public ArchiveViewModel(SecureFileRepository fileRepository) {
+    public ArchiveViewModel(SecureFileRepository fileRepository, ListSortPreferences sortPreferences) {
         this.fileRepository = fileRepository;
-        this.filesLiveData = fileRepository.getAllFiles();
+        this.sortPreferences = sortPreferences;
+        listQuery.setValue(new FileListQuery(sortPreferences.getSort(), null, null, null));
+        queryChanged.addSource(searchQuery, query -> queryChanged.setValue(true));
+        queryChanged.addSource(listQuery, query -> queryChanged.setValue(true));
+        // Senza ricerca mostra l'archivio ordinato e filtrato da SQLite, altrimenti i nomi più simili alla query
+        this.filesLiveData = Transformations.switchMap(queryChanged, changed -> {
+            String query = searchQuery.getValue();
+            return query == null || query.trim().isEmpty()
+                    ? fileRepository.getFiles(listQuery.getValue())
+                    : fileRepository.searchFiles(query);
+        });
+        fileItemsLiveData.addSource(filesLiveData, files -> {
+            if (files == null) {
+                return;
+            }
+            itemExecutor.execute(() -> {
+                List<SecureFileItem> items = new ArrayList<>(files.size());
+                for (SecureFile file : files) {
+                    items.add(SecureFileItem.from(file, dateFormat));
+                }
+                fileItemsLiveData.postValue(items);
+            });
+        });
     }
 
     public LiveData<List<SecureFile>> getFiles() {
         return filesLiveData;
     }
 
+    /**
+     * Righe dell'archivio pronte per il bind
+     */
+    public LiveData<List<SecureFileItem>> getFileItems() {
+        return fileItemsLiveData;
+    }
+
+    public void setSearchQuery(String query) {
+        if (!Objects.equals(query, searchQuery.getValue())) {
+            searchQuery.setValue(query);
+        }
+    }
+
+    public LiveData<FileListQuery> getListQuery() {
+        return listQuery;
+    }
+
+    /**
+     * Cambia l'ordinamento dell'archivio e lo ricorda per la prossima apertura
+     */
+    public void setSort(ListSort sort) {
+        FileListQuery current = listQuery.getValue();
+        if (current.getSort() == sort) {
+            return;
+        }
+        sortPreferences.setSort(sort);
+        listQuery.setValue(new FileListQuery(sort, current.getMimeFamily(), current.getUploadedFrom(), current.getUploadedTo()));
+    }
+
+    /**
+     * Mostra solo i file della famiglia MIME indicata (es. "image/"), null per tutti
+     */
+    public void setMimeFamily(String mimeFamily) {
+        FileListQuery current = listQuery.getValue();
+        if (Objects.equals(current.getMimeFamily(), mimeFamily)) {
+            return;
+        }
+        listQuery.setValue(new FileListQuery(current.getSort(), mimeFamily, current.getUploadedFrom(), current.getUploadedTo()));
+    }
+
+    /**
+     * Mostra solo i file caricati nell'intervallo [from, to); null per togliere il limite
+     */
+    public void setUploadRange(Long from, Long to) {
+        FileListQuery current = listQuery.getValue();
+        if (Objects.equals(current.getUploadedFrom(), from) && Objects.equals(current.getUploadedTo(), to)) {
+            return;
+        }
+        listQuery.setValue(new FileListQuery(current.getSort(), current.getMimeFamily(), from, to));
+    }
+
     public void deleteFile(com.gianmarco.securenotes.file.SecureFile file) {
         fileRepository.deleteFile(file);
     }
 
+    public void restoreFiles(List<Long> ids) {
+        fileRepository.restoreFiles(ids);
+    }
+
+    public ItemSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * Sposta i file nel cestino con un'unica transazione
+     */
+    public LiveData<Integer> deleteFiles(List<Long> ids) {
+        return fileRepository.deleteFiles(ids);
+    }
+
+    public LiveData<Integer> exportFiles(List<Long> ids, Uri destination) {
+        return fileRepository.exportFiles(ids, destination);
+    }
+
     public void uploadFile(android.net.Uri fileUri, String originalFileName, String mimeType) {
         fileRepository.uploadFile(fileUri, originalFileName, mimeType);
     }
@@ -30,4 +148,10 @@ public class ArchiveViewModel extends ViewModel {
     public java.io.InputStream loadFile(String fileId) throws java.io.IOException, java.security.GeneralSecurityException {
         return fileRepository.loadFile(fileId);
     }
-} 
\ No newline at end of file
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        itemExecutor.shutdown();
+    }
+}
@@ -1,25 +1,211 @@
 package com.gianmarco.securenotes.viewmodel;
 
+import android.net.Uri;
+
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
 import androidx.lifecycle.ViewModel;
-import com.gianmarco.securenotes.note.Note;
+import androidx.lifecycle.ViewModelKt;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+import androidx.paging.PagingSource;
+import com.gianmarco.securenotes.ListSort;
+import com.gianmarco.securenotes.ListSortPreferences;
+import com.gianmarco.securenotes.adapter.ItemSelection;
+import com.gianmarco.securenotes.note.NoteListQuery;
 import com.gianmarco.securenotes.note.NoteRepository;
+import com.gianmarco.securenotes.note.NoteSearchResult;
+import com.gianmarco.securenotes.note.NoteStore;
+import com.gianmarco.securenotes.note.NoteSummary;
+import com.gianmarco.securenotes.note.Tag;
 import java.util.List;
+import java.util.Objects;
 
 public class DashboardViewModel extends ViewModel {
+    // Una pagina copre circa due schermate di note
+    private static final int PAGE_SIZE = 30;
+    private static final int PREFETCH_DISTANCE = 15;
+
     private final NoteRepository noteRepository;
-    private final LiveData<List<Note>> notesLiveData;
+    // Lista mostrata: dalla copia in memoria per la vista predefinita, altrimenti paginata da SQLite
+    private final MediatorLiveData<PagingData<NoteSummary>> shownNotes = new MediatorLiveData<>();
+    private final LiveData<PagingData<NoteSummary>> pagedNotes;
+    private final LiveData<NoteStore.Snapshot> storedNotes;
+    private final LiveData<List<NoteSummary>> cachedNotes;
+    private boolean pagerAttached;
+    private final MutableLiveData<String> searchQuery = new MutableLiveData<>("");
+    private final LiveData<List<NoteSearchResult>> searchResults;
+    private final MutableLiveData<Long> tagFilter = new MutableLiveData<>(null);
+    private final MutableLiveData<ListSort> sort = new MutableLiveData<>();
+    private final ListSortPreferences sortPreferences;
+    // Note selezionate per le azioni multiple: sopravvive alla ricreazione del fragment
+    private final ItemSelection selection = new ItemSelection();
+    // Intervallo di modifica mostrato, null per nessun limite
+    private volatile Long modifiedFrom;
+    private volatile Long modifiedTo;
+    // Sorgente corrente della lista: cambiando ordinamento o filtro viene invalidata
+    // e il Pager ne crea una nuova con la nuova query, senza ordinare nulla in memoria
+    private PagingSource<Integer, NoteSummary> currentSource;
 
-    public DashboardViewModel(NoteRepository noteRepository) {
+    public DashboardViewModel(NoteRepository noteRepository, ListSortPreferences sortPreferences) {
         this.noteRepository = noteRepository;
-        this.notesLiveData = noteRepository.getAllNotes();
+        this.sortPreferences = sortPreferences;
+        this.sort.setValue(sortPreferences.getSort());
+        Pager<Integer, NoteSummary> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE, PREFETCH_DISTANCE, true),
+                () -> {
+                    currentSource = noteRepository.getNoteSummariesPagingSource(new NoteListQuery(
+                            sort.getValue(), tagFilter.getValue(), modifiedFrom, modifiedTo));
+                    return currentSource;
+                });
+        this.pagedNotes = PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), ViewModelKt.getViewModelScope(this));
+        this.cachedNotes = noteRepository.getCachedNoteList();
+        this.storedNotes = noteRepository.getNoteListSnapshot();
+        this.searchResults = Transformations.switchMap(searchQuery, noteRepository::search);
+        shownNotes.addSource(storedNotes, snapshot -> updateSource());
+        shownNotes.addSource(cachedNotes, rows -> updateSource());
+        updateSource();
+    }
+
+    public LiveData<PagingData<NoteSummary>> getPagedNotes() {
+        return shownNotes;
+    }
+
+    /**
+     * Ultima modifica senza filtri è l'ordine della copia in memoria: la lista arriva senza query.
+     * Gli altri ordinamenti e filtri restano sulle query indicizzate di NoteListQuery.
+     * Il Pager viene osservato solo quando serve, così non esegue query mentre è staccato.
+     */
+    private void updateSource() {
+        boolean storeView = sort.getValue() == ListSort.MODIFIED && tagFilter.getValue() == null
+                && modifiedFrom == null && modifiedTo == null;
+        NoteStore.Snapshot snapshot = storedNotes.getValue();
+        if (storeView && snapshot == null) {
+            // Copia ancora in caricamento, senza interrogare anche il Pager: intanto le righe salvate
+            // all'ultima modifica della lista, che quella vera sostituisce con un diff appena arriva
+            List<NoteSummary> cached = cachedNotes.getValue();
+            if (cached != null && !cached.isEmpty()) {
+                shownNotes.setValue(PagingData.from(cached));
+            }
+            return;
+        }
+        if (storeView && snapshot.isAvailable()) {
+            if (pagerAttached) {
+                shownNotes.removeSource(pagedNotes);
+                pagerAttached = false;
+            }
+            shownNotes.setValue(PagingData.from(snapshot.getNotes()));
+        } else if (!pagerAttached) {
+            pagerAttached = true;
+            shownNotes.addSource(pagedNotes, shownNotes::setValue);
+        }
+    }
+
+    public LiveData<List<Tag>> getTags() {
+        return noteRepository.getTags();
+    }
+
+    public LiveData<Long> getTagFilter() {
+        return tagFilter;
+    }
+
+    /**
+     * Mostra solo le note con il tag indicato, o tutte con null
+     */
+    public void setTagFilter(Long tagId) {
+        if (Objects.equals(tagId, tagFilter.getValue())) {
+            return;
+        }
+        tagFilter.setValue(tagId);
+        reload();
+    }
+
+    public LiveData<ListSort> getSort() {
+        return sort;
+    }
+
+    /**
+     * Cambia l'ordinamento della lista e lo ricorda per la prossima apertura
+     */
+    public void setSort(ListSort newSort) {
+        if (newSort == sort.getValue()) {
+            return;
+        }
+        sort.setValue(newSort);
+        sortPreferences.setSort(newSort);
+        reload();
+    }
+
+    /**
+     * Mostra solo le note modificate nell'intervallo [from, to); null per togliere il limite
+     */
+    public void setModifiedRange(Long from, Long to) {
+        if (Objects.equals(from, modifiedFrom) && Objects.equals(to, modifiedTo)) {
+            return;
+        }
+        modifiedFrom = from;
+        modifiedTo = to;
+        reload();
+    }
+
+    public boolean hasModifiedRange() {
+        return modifiedFrom != null || modifiedTo != null;
+    }
+
+    private void reload() {
+        if (currentSource != null) {
+            currentSource.invalidate();
+        }
+        updateSource();
+    }
+
+    public LiveData<List<NoteSearchResult>> getSearchResults() {
+        return searchResults;
     }
 
-    public LiveData<List<Note>> getNotes() {
-        return notesLiveData;
+    public void setSearchQuery(String query) {
+        if (!Objects.equals(query, searchQuery.getValue())) {
+            searchQuery.setValue(query);
+        }
     }
 
-    public void deleteNote(Note note) {
+    public boolean isSearching() {
+        String query = searchQuery.getValue();
+        return query != null && !query.trim().isEmpty();
+    }
+
+    public void deleteNote(NoteSummary note) {
         noteRepository.delete(note.getId());
     }
-} 
\ No newline at end of file
+
+    public void restoreNotes(List<Long> noteIds) {
+        noteRepository.restore(noteIds);
+    }
+
+    public ItemSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * Sposta le note nel cestino con un'unica transazione
+     */
+    public LiveData<Integer> deleteNotes(List<Long> noteIds) {
+        return noteRepository.deleteByIds(noteIds);
+    }
+
+    public LiveData<Integer> addTagsToNotes(List<String> tagNames, List<Long> noteIds) {
+        return noteRepository.addTagsToNotes(tagNames, noteIds);
+    }
+
+    public LiveData<Integer> exportNotes(List<Long> noteIds, Uri destination) {
+        return noteRepository.exportNotes(noteIds, destination);
+    }
+
+    public void prefetchNote(long noteId) {
+        noteRepository.prefetch(noteId);
+    }
+}
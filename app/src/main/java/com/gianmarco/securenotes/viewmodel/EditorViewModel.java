@@ -1,28 +1,424 @@
 package com.gianmarco.securenotes.viewmodel;
 
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModel;
+import com.gianmarco.securenotes.file.SecureFile;
+import com.gianmarco.securenotes.file.SecureFileRepository;
+import com.gianmarco.securenotes.markdown.MarkdownRenderer;
+import com.gianmarco.securenotes.note.BlockDocument;
+import com.gianmarco.securenotes.note.DraftJournal;
 import com.gianmarco.securenotes.note.Note;
 import com.gianmarco.securenotes.note.NoteRepository;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class EditorViewModel extends ViewModel {
+    private static final String TAG = "EditorViewModel";
+    public static final long INVALID_NOTE_ID = -1;
+    // Al massimo una scrittura sul database per intervallo, qualunque sia la velocità di battitura
+    private static final long AUTOSAVE_INTERVAL_MS = 2_000;
+    // Il diario si aggiorna più spesso: ogni aggiornamento è una piccola delta in coda al file
+    private static final long JOURNAL_INTERVAL_MS = 300;
+
     private final NoteRepository noteRepository;
+    private final SecureFileRepository fileRepository;
     private final MutableLiveData<Note> noteLiveData = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> draftRestoredLiveData = new MutableLiveData<>();
+    private final MutableLiveData<List<String>> markdownBlocksLiveData = new MutableLiveData<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Salvataggi e diario in un solo thread, così vengono eseguiti nell'ordine in cui sono richiesti
+    private final ExecutorService autosaveExecutor = Executors.newSingleThreadExecutor();
+    private final Runnable journalRunnable = this::appendJournal;
+    private final Runnable saveRunnable = () -> persist(false);
+    // Thread separato, così la modalità lettura non aspetta i salvataggi in coda
+    private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor();
 
-    public EditorViewModel(NoteRepository noteRepository) {
+    // Stato del thread principale
+    private boolean loadStarted;
+    private String pendingTitle;
+    private String pendingContent;
+    private String pendingTags = "";
+    // Presente solo per le note molto grandi, modificate con l'editor a blocchi
+    private BlockDocument blockDocument;
+    private boolean journalDirty;
+    private boolean saveDirty;
+    private boolean journalScheduled;
+    private boolean saveScheduled;
+    private boolean cleared;
+    // Solo l'ultima richiesta di lettura aggiorna i blocchi Markdown
+    private int markdownRequest;
+
+    // Stato del thread di salvataggio
+    private long noteId = INVALID_NOTE_ID;
+    private DraftJournal journal;
+    private String lastSavedTitle = "";
+    private String lastSavedContent = "";
+    private List<String> lastSavedTags = new ArrayList<>();
+    private long lastSavedModified;
+    // Per l'editor a blocchi: versione del documento il cui testo, senza spazi ai bordi, è
+    // lastSavedContent, e ultimo testo ricomposto; se la versione non cambia non si ricompone nulla
+    private int savedVersion = -1;
+    private String editorContent;
+    // I salvataggi automatici non aggiornano lo storico: l'ultimo finisce nello storico al prossimo flush
+    private boolean revisionPending;
+
+    public EditorViewModel(NoteRepository noteRepository, SecureFileRepository fileRepository) {
         this.noteRepository = noteRepository;
+        this.fileRepository = fileRepository;
+    }
+
+    public LiveData<List<SecureFile>> getAttachments(long noteId) {
+        return fileRepository.getAttachments(noteId);
+    }
+
+    /**
+     * Cifra il file nell'archivio e lo allega alla nota
+     */
+    public void attachFile(long noteId, Uri fileUri, String fileName, String mimeType) {
+        fileRepository.uploadAttachment(fileUri, fileName, mimeType, noteId);
+    }
+
+    public void detachFile(long noteId, SecureFile secureFile) {
+        fileRepository.detachFile(noteId, secureFile.getId());
     }
 
     public LiveData<Note> getNote() {
         return noteLiveData;
     }
 
-    public LiveData<Note> getNoteById(long noteId) {
-        return noteRepository.getNoteById(noteId);
+    public LiveData<Boolean> isDraftRestored() {
+        return draftRestoredLiveData;
+    }
+
+    public void onDraftRestoredShown() {
+        draftRestoredLiveData.setValue(false);
+    }
+
+    public LiveData<List<String>> getMarkdownBlocks() {
+        return markdownBlocksLiveData;
+    }
+
+    /**
+     * Prepara i blocchi Markdown della modalità lettura fuori dal thread principale. Per le note a
+     * blocchi il testo viene ricomposto in background a partire dallo snapshot; altrimenti si usa
+     * editorContent, il testo dell'EditText.
+     */
+    public void renderMarkdown(String editorContent) {
+        List<String> blocks = blockDocument != null ? blockDocument.snapshot() : null;
+        int request = ++markdownRequest;
+        renderExecutor.execute(() -> {
+            String content = blocks != null ? BlockDocument.join(blocks) : editorContent;
+            List<String> markdown = MarkdownRenderer.splitBlocks(content);
+            handler.post(() -> {
+                if (request == markdownRequest) {
+                    markdownBlocksLiveData.setValue(markdown);
+                }
+            });
+        });
+    }
+
+    /**
+     * Carica la nota una sola volta per ViewModel: le emissioni successive del database non
+     * sovrascrivono il testo in modifica. Se esiste un diario di modifiche non salvate viene riapplicato.
+     */
+    public LiveData<Note> loadNote(long noteId) {
+        if (loadStarted) {
+            return noteLiveData;
+        }
+        loadStarted = true;
+        Note prefetched = noteId != INVALID_NOTE_ID ? noteRepository.getPrefetchedNote(noteId) : null;
+        if (noteId == INVALID_NOTE_ID) {
+            onLoaded(null);
+        } else if (prefetched != null) {
+            onLoaded(prefetched);
+        } else {
+            LiveData<Note> source = noteRepository.getNoteById(noteId);
+            source.observeForever(new Observer<Note>() {
+                @Override
+                public void onChanged(Note note) {
+                    source.removeObserver(this);
+                    onLoaded(note);
+                }
+            });
+        }
+        return noteLiveData;
+    }
+
+    private void onLoaded(Note note) {
+        String baseTitle = note != null && note.getTitle() != null ? note.getTitle() : "";
+        String baseContent = note != null && note.getContent() != null ? note.getContent() : "";
+        long loadedId = note != null ? note.getId() : INVALID_NOTE_ID;
+        autosaveExecutor.execute(() -> {
+            noteId = loadedId;
+            lastSavedTitle = baseTitle.trim();
+            lastSavedContent = baseContent.trim();
+            if (loadedId != INVALID_NOTE_ID) {
+                lastSavedTags = noteRepository.getTagNamesSync(loadedId);
+            }
+            String tags = String.join(", ", lastSavedTags);
+            journal = noteRepository.openDraftJournal(loadedId, baseTitle, tags, baseContent);
+            DraftJournal.Draft draft = journal.replay();
+            String content = draft != null ? draft.getContent() : baseContent;
+            // La divisione in blocchi di un testo di qualche MB avviene fuori dal thread principale
+            BlockDocument document = BlockDocument.needsBlockEditor(content) ? BlockDocument.split(content) : null;
+            if (document != null) {
+                editorContent = content;
+                savedVersion = draft == null ? document.getVersion() : -1;
+            }
+            handler.post(() -> {
+                blockDocument = document;
+                Note shown = new Note();
+                if (note != null) {
+                    shown.setId(note.getId());
+                    shown.setLastModified(note.getLastModified());
+                }
+                shown.setTitle(baseTitle);
+                shown.setContent(baseContent);
+                pendingTitle = baseTitle;
+                pendingContent = baseContent;
+                pendingTags = tags;
+                if (draft != null) {
+                    pendingTags = draft.getTags();
+                    shown.setTitle(draft.getTitle());
+                    shown.setContent(draft.getContent());
+                    onTextChanged(draft.getTitle(), draft.getContent());
+                    draftRestoredLiveData.setValue(true);
+                }
+                noteLiveData.setValue(shown);
+            });
+        });
+    }
+
+    /**
+     * Titolo da mostrare: quello in modifica se presente, altrimenti quello caricato
+     */
+    public String getCurrentTitle(Note loaded) {
+        return pendingTitle != null ? pendingTitle : loaded.getTitle();
+    }
+
+    public String getCurrentContent(Note loaded) {
+        return pendingContent != null ? pendingContent : loaded.getContent();
+    }
+
+    public String getCurrentTags() {
+        return pendingTags;
+    }
+
+    /**
+     * Documento a blocchi della nota, o null se la nota è abbastanza piccola per un solo EditText.
+     * Sopravvive alla ricreazione del fragment insieme alle modifiche non ancora salvate.
+     */
+    public BlockDocument getBlockDocument() {
+        return blockDocument;
+    }
+
+    /**
+     * Registra il testo digitato: il diario e il database vengono aggiornati al più una volta per intervallo
+     */
+    public void onTextChanged(String title, String content) {
+        pendingTitle = title;
+        pendingContent = content;
+        scheduleWrites();
+    }
+
+    /**
+     * Come onTextChanged, per l'editor a blocchi: il testo completo viene ricomposto solo al momento della scrittura
+     */
+    public void onDocumentChanged(String title) {
+        pendingTitle = title;
+        scheduleWrites();
+    }
+
+    /**
+     * Tag digitati, separati da virgola: vengono salvati insieme alla nota
+     */
+    public void onTagsChanged(String tags) {
+        pendingTags = tags;
+        scheduleWrites();
+    }
+
+    private void scheduleWrites() {
+        if (cleared) {
+            return;
+        }
+        journalDirty = true;
+        saveDirty = true;
+        if (!journalScheduled) {
+            journalScheduled = true;
+            handler.postDelayed(journalRunnable, JOURNAL_INTERVAL_MS);
+        }
+        if (!saveScheduled) {
+            saveScheduled = true;
+            handler.postDelayed(saveRunnable, AUTOSAVE_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Scrive subito le modifiche in attesa, ad esempio al salvataggio esplicito o quando l'editor
+     * va in pausa, e aggiunge la nota allo storico delle versioni
+     */
+    public void flush() {
+        handler.removeCallbacks(journalRunnable);
+        handler.removeCallbacks(saveRunnable);
+        appendJournal();
+        persist(true);
+    }
+
+    private void appendJournal() {
+        journalScheduled = false;
+        if (!journalDirty) {
+            return;
+        }
+        journalDirty = false;
+        String title = pendingTitle;
+        String content = pendingContent;
+        String rawTags = pendingTags;
+        // Solo i blocchi modificati dall'ultimo aggiornamento del diario
+        BlockDocument.Edit edit = blockDocument != null ? blockDocument.takeEdit() : null;
+        autosaveExecutor.execute(() -> {
+            if (journal == null) {
+                return;
+            }
+            try {
+                if (edit != null) {
+                    journal.appendEdit(title, journalTags(rawTags), edit);
+                } else {
+                    journal.append(title, journalTags(rawTags), content);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Errore nella scrittura del diario: " + e.getMessage());
+            }
+        });
+    }
+
+    // Con checkpoint la versione salvata entra anche nello storico; i salvataggi automatici ogni
+    // AUTOSAVE_INTERVAL_MS non ricostruiscono e confrontano il testo precedente
+    private void persist(boolean checkpoint) {
+        saveScheduled = false;
+        if (!saveDirty && !checkpoint) {
+            return;
+        }
+        saveDirty = false;
+        if (blockDocument != null) {
+            // Il diario raggiunge la versione del documento che viene salvata, così dopo il
+            // checkpoint le modifiche successive partono dal testo salvato
+            handler.removeCallbacks(journalRunnable);
+            appendJournal();
+        }
+        String rawTitle = pendingTitle;
+        String rawContent = pendingContent;
+        String rawTags = pendingTags;
+        List<String> blocks = blockDocument != null ? blockDocument.snapshot() : null;
+        int version = blockDocument != null ? blockDocument.getVersion() : -1;
+        long lastModified = System.currentTimeMillis();
+        autosaveExecutor.execute(() -> {
+            String title = rawTitle.trim();
+            String content;
+            boolean contentChanged;
+            if (blocks != null && version == savedVersion) {
+                // Nessun blocco modificato dall'ultimo salvataggio: niente join né confronto
+                content = lastSavedContent;
+                contentChanged = false;
+            } else {
+                if (blocks != null) {
+                    editorContent = BlockDocument.join(blocks);
+                }
+                content = (blocks != null ? editorContent : rawContent).trim();
+                contentChanged = !content.equals(lastSavedContent);
+                if (blocks != null && !contentChanged) {
+                    savedVersion = version;
+                }
+            }
+            List<String> tags = NoteRepository.parseTags(rawTags);
+            boolean noteChanged = !title.equals(lastSavedTitle) || contentChanged;
+            boolean tagsChanged = !tags.equals(lastSavedTags);
+            boolean revisionDue = checkpoint && revisionPending;
+            // Una nota senza titolo non viene salvata: il testo resta comunque nel diario
+            if (title.isEmpty() || (!noteChanged && !tagsChanged && !revisionDue)) {
+                return;
+            }
+            try {
+                if (noteChanged || noteId == INVALID_NOTE_ID) {
+                    saveNote(title, content, lastModified, checkpoint);
+                    if (blocks != null) {
+                        savedVersion = version;
+                    }
+                } else if (revisionDue) {
+                    noteRepository.recordRevisionSync(noteId, lastSavedContent, lastSavedModified);
+                    revisionPending = false;
+                }
+                if (tagsChanged) {
+                    noteRepository.setNoteTagsSync(noteId, tags);
+                    lastSavedTags = tags;
+                }
+                if ((noteChanged || tagsChanged) && journal != null) {
+                    // Titolo, contenuto e tag salvati diventano il nuovo punto di partenza del diario,
+                    // con i tag letti come in onLoaded così il diario resta valido alla riapertura
+                    String savedTags = String.join(", ", noteRepository.getTagNamesSync(noteId));
+                    if (blocks != null) {
+                        journal.checkpoint(title, savedTags, content, editorContent);
+                    } else {
+                        journal.checkpoint(title, savedTags, content);
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Errore nel salvataggio automatico: " + e.getMessage());
+                // Si riprova con un nuovo salvataggio programmato, anche se non si digita altro
+                handler.post(this::scheduleWrites);
+            }
+        });
+    }
+
+    // Sul thread di salvataggio
+    private void saveNote(String title, String content, long lastModified, boolean recordRevision) {
+        Note note = new Note();
+        if (noteId != INVALID_NOTE_ID) {
+            note.setId((int) noteId);
+        }
+        note.setTitle(title);
+        note.setContent(content);
+        note.setLastModified(lastModified);
+        long savedId = noteRepository.insertOrUpdateSync(note, recordRevision);
+        lastSavedTitle = title;
+        lastSavedContent = content;
+        lastSavedModified = lastModified;
+        revisionPending = !recordRevision;
+        if (noteId == INVALID_NOTE_ID) {
+            // La nuova nota ora ha un id: il diario "new" lascia il posto a quello della nota
+            if (journal != null) {
+                journal.clear();
+            }
+            noteId = savedId;
+            journal = noteRepository.openDraftJournal(savedId, title, "", content);
+        }
+    }
+
+    // Tag nella stessa forma del punto di partenza del diario, così riordinare o spaziare i tag
+    // non produce una bozza
+    private static String journalTags(String rawTags) {
+        List<String> names = NoteRepository.parseTags(rawTags);
+        Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+        return String.join(", ", names);
     }
 
-    public void saveNote(Note note) {
-        noteRepository.insertOrUpdate(note);
+    @Override
+    protected void onCleared() {
+        flush();
+        cleared = true;
+        handler.removeCallbacksAndMessages(null);
+        // I salvataggi già in coda vengono completati prima dello spegnimento
+        autosaveExecutor.shutdown();
+        renderExecutor.shutdownNow();
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package com.gianmarco.securenotes.viewmodel;
+
+import android.content.Context;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.ViewModel;
+
+import com.gianmarco.securenotes.TrashPurgeWorker;
+import com.gianmarco.securenotes.file.SecureFile;
+import com.gianmarco.securenotes.file.SecureFileRepository;
+import com.gianmarco.securenotes.note.NoteRepository;
+import com.gianmarco.securenotes.note.NoteSummary;
+
+import java.util.List;
+
+public class TrashViewModel extends ViewModel {
+    private final NoteRepository noteRepository;
+    private final SecureFileRepository fileRepository;
+
+    public TrashViewModel(NoteRepository noteRepository, SecureFileRepository fileRepository) {
+        this.noteRepository = noteRepository;
+        this.fileRepository = fileRepository;
+    }
+
+    public LiveData<List<NoteSummary>> getTrashedNotes() {
+        return noteRepository.getTrashedNotes();
+    }
+
+    public LiveData<List<SecureFile>> getTrashedFiles() {
+        return fileRepository.getTrashedFiles();
+    }
+
+    public void restore(List<Long> noteIds, List<Long> fileIds) {
+        noteRepository.restore(noteIds);
+        fileRepository.restoreFiles(fileIds);
+    }
+
+    /**
+     * Elimina definitivamente tutto il cestino in background
+     */
+    public void emptyTrash(Context context) {
+        TrashPurgeWorker.emptyNow(context.getApplicationContext());
+    }
+}
@@ -0,0 +1,289 @@
+package com.gianmarco.securenotes.note;
+
+import androidx.lifecycle.LiveData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Codifica delle delta, catena delle revisioni e compattazione, su un DAO in memoria
+ */
+public class NoteRevisionsTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    // Mezzogiorno: i salvataggi dell'ultima ora cadono nello stesso giorno
+    private static final long NOW = 400 * DAY + DAY / 2;
+    private static final long NOTE_ID = 1;
+
+    @Test
+    public void deltaRoundTrips() {
+        String[][] pairs = {
+                {"", ""}, {"", "abc"}, {"abc", ""}, {"abc", "abc"},
+                {"hello world", "hello brave world"}, {"abcdef", "abXdef"},
+                {"aaaa", "aaa"}, {"aaa", "aaaa"}, {"città", "cittadina"}, {"prima riga\nseconda", "seconda"}
+        };
+        for (String[] pair : pairs) {
+            assertRoundTrip(pair[0], pair[1]);
+        }
+    }
+
+    @Test
+    public void deltaRoundTripsLongCommonParts() {
+        // Prefisso e suffisso oltre i 2 byte di varint
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40_000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String text = sb.toString();
+        assertRoundTrip(text, text.substring(0, 20_000) + "inserito" + text.substring(20_000));
+        assertRoundTrip(text, text.substring(0, 300) + text.substring(30_000));
+    }
+
+    @Test
+    public void deltaKeepsSurrogatePairsWhole() {
+        String grin = "😀";
+        String smile = "😁";
+        String[][] pairs = {
+                {"a" + grin + "b", "a" + smile + "b"},
+                {grin, smile},
+                {"😀", "🈀"},
+                {grin + grin, grin + grin + grin},
+                {grin + "x" + grin, grin + grin},
+                {"x" + grin, "y" + grin},
+                {"testo " + grin, "testo"}
+        };
+        for (String[] pair : pairs) {
+            assertRoundTrip(pair[0], pair[1]);
+        }
+    }
+
+    @Test
+    public void deltaRoundTripsRandomEdits() {
+        Random random = new Random(7);
+        String[] alphabet = {"a", "b", " ", "\n", "è", "😀", "😁", "🎉"};
+        String text = "";
+        for (int round = 0; round < 2_000; round++) {
+            StringBuilder next = new StringBuilder(text);
+            int at = randomBoundary(random, text);
+            if (random.nextBoolean() && text.length() > 0) {
+                int end = Math.min(text.length(), at + 1 + random.nextInt(4));
+                if (end < text.length() && Character.isLowSurrogate(text.charAt(end))) {
+                    end++;
+                }
+                next.delete(at, end);
+            } else {
+                for (int i = random.nextInt(4); i >= 0; i--) {
+                    next.insert(at, alphabet[random.nextInt(alphabet.length)]);
+                }
+            }
+            assertRoundTrip(text, next.toString());
+            text = next.toString();
+        }
+    }
+
+    @Test
+    public void chainFollowsInsertionOrderWhenTheClockGoesBack() {
+        FakeRevisionDao dao = new FakeRevisionDao();
+        long[] times = {NOW, NOW - DAY, NOW + 1_000, NOW - 2 * DAY};
+        Map<Long, String> texts = new HashMap<>();
+        for (int i = 0; i < times.length; i++) {
+            String text = "versione " + i + " della nota";
+            NoteRevisions.record(dao, NOTE_ID, text, times[i]);
+            texts.put(dao.lastId(), text);
+        }
+        assertTexts(dao, texts);
+    }
+
+    @Test
+    public void compactKeepsLastRevisionOfEachOldDay() {
+        FakeRevisionDao dao = new FakeRevisionDao();
+        Map<Long, String> lastOfDay = new HashMap<>();
+        for (int day = 0; day < 5; day++) {
+            for (int save = 0; save < 3; save++) {
+                String text = "giorno " + day + " salvataggio " + save;
+                NoteRevisions.record(dao, NOTE_ID, text, (100 + day) * DAY + save * 1_000);
+                if (save == 2) {
+                    lastOfDay.put(dao.lastId(), text);
+                }
+            }
+        }
+
+        assertEquals(10, NoteRevisions.compact(dao, NOTE_ID, NOW));
+        assertEquals(lastOfDay.keySet(), dao.ids());
+        assertTexts(dao, lastOfDay);
+    }
+
+    @Test
+    public void frequentRecentSavesDoNotEvictEarlierDays() {
+        FakeRevisionDao dao = new FakeRevisionDao();
+        Map<Long, String> texts = new HashMap<>();
+        List<Long> earlierDays = new ArrayList<>();
+        for (int day = 40; day >= 1; day--) {
+            String text = "ultimo salvataggio di " + day + " giorni fa";
+            NoteRevisions.record(dao, NOTE_ID, text, NOW - day * DAY);
+            texts.put(dao.lastId(), text);
+            earlierDays.add(dao.lastId());
+        }
+        int todaySaves = NoteRevisions.MAX_REVISIONS_PER_NOTE + 50;
+        for (int save = 0; save < todaySaves; save++) {
+            String text = "autosave " + save + " di oggi";
+            NoteRevisions.record(dao, NOTE_ID, text, NOW - 60 * 60 * 1000 + save * 2_000L);
+            texts.put(dao.lastId(), text);
+        }
+
+        NoteRevisions.compact(dao, NOTE_ID, NOW);
+
+        assertTrue(dao.ids().containsAll(earlierDays));
+        assertEquals(earlierDays.size() + NoteRevisions.MAX_REVISIONS_PER_NOTE, dao.ids().size());
+        texts.keySet().retainAll(dao.ids());
+        assertTexts(dao, texts);
+        // Una seconda compattazione non trova nulla da togliere
+        assertEquals(0, NoteRevisions.compact(dao, NOTE_ID, NOW));
+    }
+
+    @Test
+    public void compactedChainStillAcceptsNewRevisions() {
+        FakeRevisionDao dao = new FakeRevisionDao();
+        for (int i = 0; i < 60; i++) {
+            NoteRevisions.record(dao, NOTE_ID, "testo numero " + i, (100 + i / 3) * DAY + i);
+        }
+        NoteRevisions.compact(dao, NOTE_ID, NOW);
+        NoteRevisions.record(dao, NOTE_ID, "testo dopo la compattazione", NOW);
+        assertEquals("testo dopo la compattazione", NoteRevisions.reconstruct(dao, dao.lastId()));
+    }
+
+    private static void assertRoundTrip(String from, String to) {
+        byte[] delta = NoteRevisions.encodeDelta(from, to);
+        assertEquals(to, NoteRevisions.applyDelta(from, delta));
+    }
+
+    private static int randomBoundary(Random random, String text) {
+        int at = random.nextInt(text.length() + 1);
+        if (at > 0 && at < text.length() && Character.isLowSurrogate(text.charAt(at))) {
+            at--;
+        }
+        return at;
+    }
+
+    private static void assertTexts(FakeRevisionDao dao, Map<Long, String> texts) {
+        for (Map.Entry<Long, String> entry : texts.entrySet()) {
+            assertEquals(entry.getValue(), NoteRevisions.reconstruct(dao, entry.getKey()));
+        }
+    }
+
+    // Tabella note_revisions in memoria, con id crescenti come AUTOINCREMENT
+    private static class FakeRevisionDao implements NoteRevisionDao {
+        private final TreeMap<Long, NoteRevision> rows = new TreeMap<>();
+        private long nextId = 1;
+
+        long lastId() {
+            return rows.lastKey();
+        }
+
+        Set<Long> ids() {
+            return rows.keySet();
+        }
+
+        @Override
+        public long insert(NoteRevision revision) {
+            revision.setId(nextId++);
+            rows.put(revision.getId(), revision);
+            return revision.getId();
+        }
+
+        @Override
+        public LiveData<List<NoteRevision.Info>> getRevisions(long noteId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<NoteRevision.Info> getRevisionInfoSync(long noteId) {
+            List<NoteRevision.Info> infos = new ArrayList<>();
+            for (NoteRevision revision : getRevisionsSync(noteId)) {
+                infos.add(info(revision));
+            }
+            return infos;
+        }
+
+        @Override
+        public List<NoteRevision> getRevisionsSync(long noteId) {
+            List<NoteRevision> revisions = new ArrayList<>();
+            for (NoteRevision revision : rows.values()) {
+                if (revision.getNoteId() == noteId) {
+                    revisions.add(revision);
+                }
+            }
+            return revisions;
+        }
+
+        @Override
+        public List<NoteRevision> getByIds(List<Long> ids) {
+            List<NoteRevision> revisions = new ArrayList<>();
+            for (long id : ids) {
+                if (rows.containsKey(id)) {
+                    revisions.add(rows.get(id));
+                }
+            }
+            return revisions;
+        }
+
+        @Override
+        public NoteRevision.Info getInfoById(long revisionId) {
+            NoteRevision revision = rows.get(revisionId);
+            return revision != null ? info(revision) : null;
+        }
+
+        @Override
+        public List<Long> getNoteIdsWithRevisionsBefore(long cutoff) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Long> getNoteIdsWithMoreRevisionsSince(long since, int max) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void updateRevision(long id, int kind, byte[] data) {
+            rows.get(id).setKind(kind);
+            rows.get(id).setData(data);
+        }
+
+        @Override
+        public void deleteByIds(List<Long> ids) {
+            for (long id : ids) {
+                rows.remove(id);
+            }
+        }
+
+        @Override
+        public void deleteByNote(long noteId) {
+            rows.values().removeIf(revision -> revision.getNoteId() == noteId);
+        }
+
+        @Override
+        public void deleteByNotes(List<Long> noteIds) {
+            rows.values().removeIf(revision -> noteIds.contains(revision.getNoteId()));
+        }
+
+        private static NoteRevision.Info info(NoteRevision revision) {
+            NoteRevision.Info info = new NoteRevision.Info();
+            info.setId(revision.getId());
+            info.setNoteId(revision.getNoteId());
+            info.setCreatedAt(revision.getCreatedAt());
+            info.setKind(revision.getKind());
+            info.setLength(revision.getLength());
+            return info;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.gianmarco.securenotes.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Scelta dei candidati quando i trigrammi della query sono comuni, su un DAO in memoria
+ */
+public class TrigramIndexTest {
+
+    @Test
+    public void typoFindsTitleSharingOnlyCommonTrigrams() {
+        MemoryTrigramDao dao = new MemoryTrigramDao();
+        // Il titolo cercato ha l'id più basso: è tra le prime righe lette di ogni trigramma comune
+        dao.insertAll(TrigramIndex.entries(TrigramEntry.KIND_NOTE, 1, "cartella"));
+        long id = 2;
+        // Ogni trigramma che "cartella" ha in comune con la query supera MAX_POSTINGS
+        for (String word : new String[]{"carta", "stella", "forte"}) {
+            for (int i = 0; i <= TrigramIndex.MAX_POSTINGS; i++, id++) {
+                dao.insertAll(TrigramIndex.entries(TrigramEntry.KIND_NOTE, id, word));
+            }
+        }
+        // Unico proprietario di un trigramma raro della query, troppo diverso per essere un risultato
+        dao.insertAll(TrigramIndex.entries(TrigramEntry.KIND_NOTE, id, "filx"));
+
+        List<TrigramMatch> matches = TrigramIndex.search(dao, TrigramEntry.KIND_NOTE, "cartellx", 5);
+        assertFalse(matches.isEmpty());
+        assertEquals(1, matches.get(0).getOwnerId());
+    }
+
+    // Righe ordinate per (trigramma, proprietario) come la chiave primaria di trigrams
+    private static class MemoryTrigramDao implements TrigramDao {
+        private final Map<String, TreeMap<Long, TrigramEntry>> rows = new TreeMap<>();
+
+        @Override
+        public void insertAll(List<TrigramEntry> entries) {
+            for (TrigramEntry entry : entries) {
+                postings(entry.getKind(), entry.getTrigram()).put(entry.getOwnerId(), entry);
+            }
+        }
+
+        @Override
+        public void deleteOwner(int kind, long ownerId) {
+            for (Map.Entry<String, TreeMap<Long, TrigramEntry>> gram : rows.entrySet()) {
+                if (gram.getKey().startsWith(kind + ":")) {
+                    gram.getValue().remove(ownerId);
+                }
+            }
+        }
+
+        @Override
+        public void deleteOwners(int kind, List<Long> ownerIds) {
+            for (Long ownerId : ownerIds) {
+                deleteOwner(kind, ownerId);
+            }
+        }
+
+        @Override
+        public List<Long> getPostings(int kind, String trigram, int limit) {
+            List<Long> owners = new ArrayList<>();
+            for (Long ownerId : postings(kind, trigram).keySet()) {
+                if (owners.size() == limit) {
+                    break;
+                }
+                owners.add(ownerId);
+            }
+            return owners;
+        }
+
+        @Override
+        public List<TrigramEntry> getEntries(int kind, List<String> trigrams, List<Long> ownerIds) {
+            List<TrigramEntry> entries = new ArrayList<>();
+            for (String trigram : new TreeSet<>(trigrams)) {
+                TreeMap<Long, TrigramEntry> postings = postings(kind, trigram);
+                for (Long ownerId : ownerIds) {
+                    TrigramEntry entry = postings.get(ownerId);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
+            }
+            return entries;
+        }
+
+        private TreeMap<Long, TrigramEntry> postings(int kind, String trigram) {
+            return rows.computeIfAbsent(kind + ":" + trigram, key -> new TreeMap<>());
+        }
+    }
+}